@@ -0,0 +1,10 @@
+import org.lenskit.api.ItemBasedItemRecommender
+import org.lenskit.mooc.nonpers.ModelFile
+import org.lenskit.mooc.nonpers.assoc.AssociationItemBasedItemRecommender
+import org.lenskit.mooc.nonpers.assoc.AssociationModel
+import org.lenskit.mooc.nonpers.assoc.MappedAssociationModelProvider
+
+bind ItemBasedItemRecommender to AssociationItemBasedItemRecommender
+// map the model from a file, building it first if the file is missing
+bind AssociationModel toProvider MappedAssociationModelProvider
+set ModelFile to "build/models/basic-assoc.bin"
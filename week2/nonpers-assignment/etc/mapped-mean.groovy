@@ -0,0 +1,10 @@
+import org.lenskit.api.ItemBasedItemRecommender
+import org.lenskit.mooc.nonpers.ModelFile
+import org.lenskit.mooc.nonpers.mean.ItemMeanModel
+import org.lenskit.mooc.nonpers.mean.MappedItemMeanModelProvider
+import org.lenskit.mooc.nonpers.mean.MeanItemBasedItemRecommender
+
+bind ItemBasedItemRecommender to MeanItemBasedItemRecommender
+// map the model from a file, building it first if the file is missing
+bind ItemMeanModel toProvider MappedItemMeanModelProvider
+set ModelFile to "build/models/item-means.bin"
@@ -0,0 +1,167 @@
+package org.lenskit.mooc.nonpers;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read a model file written by {@link BinaryModelWriter}, memory-mapping its arrays.
+ *
+ * <p>The reader walks the file sequentially.  Small values, such as header fields and key arrays, are read
+ * onto the heap; value arrays are mapped read-only, so loading a model does not copy them and processes on
+ * the same host share one copy of them through the page cache.  The mappings remain valid after the reader
+ * is closed.</p>
+ *
+ * <p>A single mapping cannot exceed 2GB; {@link #mapDoubleRows(int, int)} maps a matrix in several chunks so
+ * that only each row has to fit.</p>
+ */
+public final class BinaryModelReader implements Closeable {
+    private static final long MAX_MAPPING = Integer.MAX_VALUE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private long position;
+
+    /**
+     * Open a model file.
+     * @param path The file to read.
+     * @throws IOException if the file cannot be opened.
+     */
+    public BinaryModelReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * Read and check a model file header.
+     * @param magic The expected magic number.
+     * @param version The expected format version.
+     * @throws IOException if the header does not match or cannot be read.
+     */
+    public void readHeader(int magic, int version) throws IOException {
+        int m = readInt();
+        if (m != magic) {
+            throw new IOException(String.format("%s: bad magic number %08x (expected %08x)", path, m, magic));
+        }
+        int v = readInt();
+        if (v != version) {
+            throw new IOException(String.format("%s: unsupported format version %d", path, v));
+        }
+    }
+
+    /**
+     * Read an int value.
+     * @return The value.
+     * @throws IOException if there is an error reading the file.
+     */
+    public int readInt() throws IOException {
+        return read(4).getInt();
+    }
+
+    /**
+     * Read an array of longs onto the heap.
+     * @param n The number of values.
+     * @return The values.
+     * @throws IOException if there is an error reading the file.
+     */
+    public long[] readLongs(int n) throws IOException {
+        long[] values = new long[n];
+        map(8L * n).asLongBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Map an array of doubles.
+     * @param n The number of values.
+     * @return A read-only buffer of the values.
+     * @throws IOException if there is an error mapping the file.
+     */
+    public DoubleBuffer mapDoubles(int n) throws IOException {
+        return map(8L * n).asDoubleBuffer();
+    }
+
+    /**
+     * Map an array of ints.
+     * @param n The number of values.
+     * @return A read-only buffer of the values.
+     * @throws IOException if there is an error mapping the file.
+     */
+    public IntBuffer mapInts(int n) throws IOException {
+        return map(4L * n).asIntBuffer();
+    }
+
+    /**
+     * Map an array of floats.
+     * @param n The number of values.
+     * @return A read-only buffer of the values.
+     * @throws IOException if there is an error mapping the file.
+     */
+    public FloatBuffer mapFloats(int n) throws IOException {
+        return map(4L * n).asFloatBuffer();
+    }
+
+    /**
+     * Map a row-major matrix of doubles.
+     * @param nrows The number of rows.
+     * @param ncols The number of columns.
+     * @return A read-only buffer for each row.
+     * @throws IOException if there is an error mapping the file.
+     */
+    public DoubleBuffer[] mapDoubleRows(int nrows, int ncols) throws IOException {
+        DoubleBuffer[] rows = new DoubleBuffer[nrows];
+        long rowBytes = 8L * ncols;
+        int rowsPerChunk = rowBytes == 0 ? nrows : (int) Math.min(nrows, MAX_MAPPING / rowBytes);
+        if (nrows > 0 && rowsPerChunk == 0) {
+            throw new IOException(path + ": matrix row too large to map");
+        }
+        for (int start = 0; start < nrows; start += rowsPerChunk) {
+            int end = Math.min(nrows, start + rowsPerChunk);
+            DoubleBuffer chunk = map(rowBytes * (end - start)).asDoubleBuffer();
+            for (int r = start; r < end; r++) {
+                int offset = (r - start) * ncols;
+                chunk.limit(offset + ncols).position(offset);
+                rows[r] = chunk.slice();
+            }
+        }
+        return rows;
+    }
+
+    private ByteBuffer read(int bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException(path + ": unexpected end of file");
+            }
+        }
+        position += bytes;
+        buf.flip();
+        return buf;
+    }
+
+    private ByteBuffer map(long bytes) throws IOException {
+        if (bytes > MAX_MAPPING) {
+            throw new IOException(path + ": array too large to map");
+        }
+        if (position + bytes > size) {
+            throw new EOFException(path + ": unexpected end of file");
+        }
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+        position += bytes;
+        return buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,110 @@
+package org.lenskit.mooc.nonpers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write a model in the binary model file format read by {@link BinaryModelReader}.
+ *
+ * <p>Values are written sequentially in little-endian byte order, through a fixed-size buffer.  Model classes
+ * lay their files out as a header followed by their key and value arrays; see their {@code writeTo} methods.</p>
+ *
+ * <p>Serving processes map these files, and truncating a mapped file can crash them, so a new model should
+ * be written to a fresh file and then renamed over the old one.</p>
+ */
+public final class BinaryModelWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Create a new writer.
+     * @param path The file to write.  It is created, or truncated if it already exists.
+     * @throws IOException if the file cannot be opened.
+     */
+    public BinaryModelWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Write a model file header.
+     * @param magic The magic number identifying the model type.
+     * @param version The file format version.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeHeader(int magic, int version) throws IOException {
+        writeInt(magic);
+        writeInt(version);
+    }
+
+    /**
+     * Write a int value.
+     * @param value The value.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeInt(int value) throws IOException {
+        reserve(4);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Write a long value.
+     * @param value The value.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeLong(long value) throws IOException {
+        reserve(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Write a float value.
+     * @param value The value.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeFloat(float value) throws IOException {
+        reserve(4);
+        buffer.putFloat(value);
+    }
+
+    /**
+     * Write a double value.
+     * @param value The value.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeDouble(double value) throws IOException {
+        reserve(8);
+        buffer.putDouble(value);
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
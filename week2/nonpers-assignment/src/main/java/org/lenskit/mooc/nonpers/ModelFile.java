@@ -0,0 +1,18 @@
+package org.lenskit.mooc.nonpers;
+
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The path of a binary model file for a file-backed model provider to memory-map.  If the file does not exist,
+ * the provider builds the model and writes it there first.
+ */
+@Documented
+@Qualifier
+@Parameter(String.class)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ModelFile {
+}
@@ -0,0 +1,134 @@
+package org.lenskit.mooc.nonpers;
+
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.results.Results;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Select the top-scoring items from a stream of scored items.
+ *
+ * <p>The selector keeps a bounded min-heap in parallel {@code long} and {@code double} arrays, with the
+ * lowest-ranked retained item at the top.  Adding an item costs O(log n), and no {@link Result} objects are
+ * created until {@link #finish()} produces the final list.  Items with equal scores are ranked by ID, so the
+ * output does not depend on the order items were added in.</p>
+ *
+ * <p>Selectors can be reused; {@link #finish()} clears the selector.</p>
+ */
+public final class TopNSelector {
+    private final int limit;
+    private long[] items;
+    private double[] scores;
+    private int size;
+
+    /**
+     * Create a new selector.
+     * @param n The number of items to select.  If negative, all items are retained.
+     */
+    public TopNSelector(int n) {
+        limit = n;
+        int cap = n >= 0 ? n : 16;
+        items = new long[cap];
+        scores = new double[cap];
+    }
+
+    /**
+     * Get the number of items currently retained.
+     * @return The number of retained items.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Offer an item to the selector.
+     * @param item The item ID.
+     * @param score The item's score.
+     */
+    public void add(long item, double score) {
+        if (limit < 0 || size < limit) {
+            if (size == items.length) {
+                int cap = Math.max(16, items.length * 2);
+                items = Arrays.copyOf(items, cap);
+                scores = Arrays.copyOf(scores, cap);
+            }
+            siftUp(size, item, score);
+            size++;
+        } else if (size > 0 && ranksBefore(item, score, items[0], scores[0])) {
+            siftDown(item, score, size);
+        }
+    }
+
+    /**
+     * Finish the selection and clear the selector.
+     * @return The retained items, in decreasing order of score.
+     */
+    public ResultList finish() {
+        int n = size;
+        long[] outItems = new long[n];
+        double[] outScores = new double[n];
+        // repeatedly remove the lowest-ranked item, filling the output from the back
+        for (int i = n - 1; i >= 0; i--) {
+            outItems[i] = items[0];
+            outScores[i] = scores[0];
+            size = i;
+            if (i > 0) {
+                siftDown(items[i], scores[i], i);
+            }
+        }
+
+        List<Result> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(Results.create(outItems[i], outScores[i]));
+        }
+        return Results.newResultList(results);
+    }
+
+    private static boolean ranksBefore(long i1, double s1, long i2, double s2) {
+        return s1 > s2 || (s1 == s2 && i1 < i2);
+    }
+
+    /**
+     * Move an item up from a position until its parent does not rank before it.
+     */
+    private void siftUp(int pos, long item, double score) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!ranksBefore(items[parent], scores[parent], item, score)) {
+                break;
+            }
+            items[pos] = items[parent];
+            scores[pos] = scores[parent];
+            pos = parent;
+        }
+        items[pos] = item;
+        scores[pos] = score;
+    }
+
+    /**
+     * Replace the top of the heap with an item and move it down to its place.
+     */
+    private void siftDown(long item, double score, int n) {
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && ranksBefore(items[child], scores[child], items[child + 1], scores[child + 1])) {
+                child++;
+            }
+            if (!ranksBefore(item, score, items[child], scores[child])) {
+                break;
+            }
+            items[pos] = items[child];
+            scores[pos] = scores[child];
+            pos = child;
+        }
+        items[pos] = item;
+        scores[pos] = score;
+    }
+}
@@ -4,14 +4,18 @@ import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultList;
 import org.lenskit.basic.AbstractItemBasedItemRecommender;
+import org.lenskit.mooc.nonpers.TopNSelector;
 import org.lenskit.results.Results;
 import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * An item-based item scorer that uses association rules.
@@ -19,15 +23,19 @@ import java.util.*;
 public class AssociationItemBasedItemRecommender extends AbstractItemBasedItemRecommender {
     private static final Logger logger = LoggerFactory.getLogger(AssociationItemBasedItemRecommender.class);
     private final AssociationModel model;
+    private final BasketAggregate aggregate;
 
     /**
      * Construct the item scorer.
      *
      * @param m The association rule model.
+     * @param agg How to combine the associations of a basket with several items (see {@link BasketAggregate}).
      */
     @Inject
-    public AssociationItemBasedItemRecommender(AssociationModel m) {
+    public AssociationItemBasedItemRecommender(AssociationModel m,
+                                               @BasketAggregation String agg) {
         model = m;
+        aggregate = BasketAggregate.fromName(agg);
     }
 
     @Override
@@ -45,40 +53,87 @@ public class AssociationItemBasedItemRecommender extends AbstractItemBasedItemRe
 
         if (basket.isEmpty()) {
             return Results.newResultList();
-        } else if (basket.size() > 1) {
-            logger.warn("Reference set has more than 1 item, picking arbitrarily.");
+        } else if (basket.size() == 1 && model.isSparse()) {
+            return recommendFromRow(n, basket.iterator().next(), items);
         }
 
-        long refItem = basket.iterator().next();
-
-        return recommendItems(n, refItem, items);
+        return recommendItems(n, LongUtils.asLongSet(basket), items);
     }
 
     /**
-     * Recommend items with an association rule.
-     * @param n The number of recommendations to produce.
+     * Recommend items by reading the reference item's precomputed row from a sparse model.  The row is already
+     * ranked, so this just walks it and keeps the first {@code n} candidates.
+     * @param n The number of recommendations to produce.  If negative, produce all available recommendations.
      * @param refItem The reference item.
      * @param candidates The candidate items (set of items that can possibly be recommended).
      * @return The list of results.
      */
-    private ResultList recommendItems(int n, long refItem, LongSet candidates) {
+    private ResultList recommendFromRow(int n, long refItem, LongSet candidates) {
+        SortedKeyIndex index = model.getIndex();
+        int ref = index.tryGetIndex(refItem);
+        if (ref < 0) {
+            return Results.newResultList();
+        }
+
         List<Result> results = new ArrayList<>();
+        for (int i = model.getRowStart(ref), end = model.getRowEnd(ref); i < end; i++) {
+            if (n >= 0 && results.size() >= n) {
+                break;
+            }
+            long id = index.getKey(model.getNeighbor(i));
+            if (candidates.contains(id)) {
+                results.add(Results.create(id, model.getNeighborScore(i)));
+            }
+        }
+        return Results.newResultList(results);
+    }
+
+    /**
+     * Recommend items with association rules from a basket of reference items.  The association rows of the basket
+     * items are combined into a dense accumulator, one pass per basket item, and the top candidates are then
+     * selected from it.  Basket items are not recommended.
+     * @param n The number of recommendations to produce.  If negative, produce all available recommendations.
+     * @param basket The reference items.
+     * @param candidates The candidate items (set of items that can possibly be recommended).
+     * @return The list of results.
+     */
+    private ResultList recommendItems(int n, LongSet basket, LongSet candidates) {
+        SortedKeyIndex index = model.getIndex();
+        double[] scores = new double[index.size()];
 
-        for(long id : candidates) {
-            if(model.hasItem(id)) {
-                results.add(Results.create(id,model.getItemAssociation(refItem, id)));
+        int nrefs = 0;
+        for (long ref: basket) {
+            int refIndex = index.tryGetIndex(ref);
+            if (refIndex < 0) {
+                logger.debug("ignoring unknown basket item {}", ref);
+                continue;
             }
+            nrefs++;
+            if (aggregate == BasketAggregate.MAX) {
+                model.maxRowInto(refIndex, scores);
+            } else {
+                model.addRowTo(refIndex, scores);
+            }
+        }
+        if (nrefs == 0) {
+            return Results.newResultList();
         }
-        Collections.sort(results,new Comparator<Result>() {
-            @Override
-            public int compare(Result o1, Result o2) {
-                double diff = o1.getScore()-o2.getScore();
-                if(diff > 0) return -1;
-                else if (diff < 0) return 1;
-                else return 0;
+
+        double scale = aggregate == BasketAggregate.MEAN ? 1.0 / nrefs : 1.0;
+        TopNSelector selector = new TopNSelector(n);
+        for (long id: candidates) {
+            int idx = index.tryGetIndex(id);
+            if (idx < 0 || basket.contains(id)) {
+                continue;
+            }
+            double score = scores[idx];
+            // a sparse model has no association for pairs outside the stored rows
+            if (model.isSparse() && score == 0) {
+                continue;
             }
-        });
-        //logger.debug(" top 5:"+results.subList(0,5));
-        return Results.newResultList(results.subList(0,n));
+            selector.add(id, score * scale);
+        }
+
+        return selector.finish();
     }
 }
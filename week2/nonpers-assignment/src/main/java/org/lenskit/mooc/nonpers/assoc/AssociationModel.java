@@ -3,11 +3,20 @@ package org.lenskit.mooc.nonpers.assoc;
 import com.google.common.base.Preconditions;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.inject.Shareable;
+import org.lenskit.mooc.nonpers.BinaryModelReader;
+import org.lenskit.mooc.nonpers.BinaryModelWriter;
 import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.Map;
 
 /**
@@ -15,14 +24,32 @@ import java.util.Map;
  *
  * <p>You <strong>should note</strong> need to change this class.  It has some internal optimizations to reduce
  * the memory requirements after the model is built.</p>
+ *
+ * <p>The scores are stored either densely, with a score for every pair of items, or sparsely, keeping only the top
+ * associations for each reference item (see {@link AssociationNeighborCount}).  The sparse layout stores the rows
+ * in compressed sparse row form: the neighbors of item {@code i} are at positions {@code rowOffsets[i]} up to
+ * {@code rowOffsets[i+1]} of the neighbor and score arrays, in decreasing order of score.</p>
+ *
+ * <p>A model can be saved in a compact binary format with {@link #writeTo(Path)}, and loaded with
+ * {@link #map(Path)}.  The file holds a header, the sorted item IDs, and then either the dense score matrix in
+ * row-major order or the three sparse arrays, all little-endian.  A loaded model memory-maps the score arrays
+ * read-only instead of copying them onto the heap; only the item IDs are read into memory.
+ * {@link MappedAssociationModelProvider} serves a model from such a file.</p>
  */
 @Shareable
 public class AssociationModel implements Serializable {
     private static final Logger logger = LoggerFactory.getLogger(AssociationModel.class);
     private static final long serialVersionUID = 1L;
+    private static final int FILE_MAGIC = 0x4C4B414D; // LKAM
+    private static final int FILE_VERSION = 1;
+    private static final int DENSE_LAYOUT = 0;
+    private static final int SPARSE_LAYOUT = 1;
 
     private final SortedKeyIndex index;
-    private final double[][] scores;
+    private final DoubleBuffer[] scores;
+    private final IntBuffer rowOffsets;
+    private final IntBuffer neighbors;
+    private final FloatBuffer neighborScores;
 
     /**
      * Construct a new association model.
@@ -34,7 +61,7 @@ public class AssociationModel implements Serializable {
         index = SortedKeyIndex.fromCollection(assocScores.keySet());
         int n = index.size();
         logger.debug("transforming input map for {} items into log data", n);
-        scores = new double[n][n];
+        double[][] matrix = new double[n][n];
         for (int i = 0; i < n; i++) {
             long itemX = index.getKey(i);
             for (int j = 0; j < n; j++) {
@@ -49,7 +76,117 @@ public class AssociationModel implements Serializable {
                     String msg = String.format("no score found for x=%d, y=%d", itemX, itemY);
                     throw new IllegalArgumentException(msg);
                 }
-                scores[i][j] = score;
+                matrix[i][j] = score;
+            }
+        }
+        scores = wrapRows(matrix);
+        rowOffsets = null;
+        neighbors = null;
+        neighborScores = null;
+    }
+
+    /**
+     * Construct a dense association model.
+     * @param idx The item index.
+     * @param scores The association scores, indexed by X and then Y index.
+     */
+    AssociationModel(SortedKeyIndex idx, double[][] scores) {
+        this(idx, wrapRows(scores));
+    }
+
+    private AssociationModel(SortedKeyIndex idx, DoubleBuffer[] rows) {
+        index = idx;
+        scores = rows;
+        rowOffsets = null;
+        neighbors = null;
+        neighborScores = null;
+    }
+
+    /**
+     * Construct a sparse association model.
+     * @param idx The item index.
+     * @param offsets The row offsets, with one more element than there are items.
+     * @param nbrs The neighbor indexes of each row.
+     * @param nbrScores The neighbor scores of each row, in decreasing order within each row.
+     */
+    AssociationModel(SortedKeyIndex idx, int[] offsets, int[] nbrs, float[] nbrScores) {
+        this(idx, IntBuffer.wrap(offsets), IntBuffer.wrap(nbrs), FloatBuffer.wrap(nbrScores));
+    }
+
+    private AssociationModel(SortedKeyIndex idx, IntBuffer offsets, IntBuffer nbrs, FloatBuffer nbrScores) {
+        Preconditions.checkArgument(offsets.limit() == idx.size() + 1, "invalid row offset count");
+        Preconditions.checkArgument(nbrs.limit() == nbrScores.limit(), "neighbor array size mismatch");
+        index = idx;
+        scores = null;
+        rowOffsets = offsets;
+        neighbors = nbrs;
+        neighborScores = nbrScores;
+    }
+
+    private static DoubleBuffer[] wrapRows(double[][] matrix) {
+        DoubleBuffer[] rows = new DoubleBuffer[matrix.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = DoubleBuffer.wrap(matrix[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * Load a model by memory-mapping a file written by {@link #writeTo(Path)}.
+     * @param path The model file.
+     * @return The model.
+     * @throws IOException if the file cannot be read or is not an association model.
+     */
+    public static AssociationModel map(Path path) throws IOException {
+        try (BinaryModelReader reader = new BinaryModelReader(path)) {
+            reader.readHeader(FILE_MAGIC, FILE_VERSION);
+            int layout = reader.readInt();
+            int n = reader.readInt();
+            SortedKeyIndex idx = SortedKeyIndex.wrap(reader.readLongs(n), n);
+            switch (layout) {
+            case DENSE_LAYOUT:
+                return new AssociationModel(idx, reader.mapDoubleRows(n, n));
+            case SPARSE_LAYOUT:
+                IntBuffer offsets = reader.mapInts(n + 1);
+                int nnz = offsets.get(n);
+                return new AssociationModel(idx, offsets, reader.mapInts(nnz), reader.mapFloats(nnz));
+            default:
+                throw new IOException(path + ": unknown association model layout " + layout);
+            }
+        }
+    }
+
+    /**
+     * Write this model to a binary model file.
+     * @param path The file to write.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeTo(Path path) throws IOException {
+        int n = index.size();
+        try (BinaryModelWriter writer = new BinaryModelWriter(path)) {
+            writer.writeHeader(FILE_MAGIC, FILE_VERSION);
+            writer.writeInt(scores != null ? DENSE_LAYOUT : SPARSE_LAYOUT);
+            writer.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                writer.writeLong(index.getKey(i));
+            }
+            if (scores != null) {
+                for (DoubleBuffer row: scores) {
+                    for (int j = 0; j < n; j++) {
+                        writer.writeDouble(row.get(j));
+                    }
+                }
+            } else {
+                for (int i = 0; i <= n; i++) {
+                    writer.writeInt(rowOffsets.get(i));
+                }
+                int nnz = neighbors.limit();
+                for (int i = 0; i < nnz; i++) {
+                    writer.writeInt(neighbors.get(i));
+                }
+                for (int i = 0; i < nnz; i++) {
+                    writer.writeFloat(neighborScores.get(i));
+                }
             }
         }
     }
@@ -75,7 +212,7 @@ public class AssociationModel implements Serializable {
      * Get the association between two items.
      * @param ref The reference item (X).
      * @param item The item to score (Y).
-     * @return The score between X and Y.
+     * @return The score between X and Y, or 0 if the pair was pruned from a sparse model.
      * @throws IllegalArgumentException if either item is invalid.
      */
     public double getItemAssociation(long ref, long item) {
@@ -85,6 +222,166 @@ public class AssociationModel implements Serializable {
         int itemIndex = index.tryGetIndex(item);
         Preconditions.checkArgument(itemIndex >= 0, "unknown target item %d", item);
 
-        return scores[refIndex][itemIndex];
+        if (scores != null) {
+            return scores[refIndex].get(itemIndex);
+        }
+
+        // rows are short, so scan for the item; pruned pairs have no association
+        for (int i = rowOffsets.get(refIndex), end = rowOffsets.get(refIndex + 1); i < end; i++) {
+            if (neighbors.get(i) == itemIndex) {
+                return neighborScores.get(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Add an item's association row to an accumulator, in a single pass over the row.
+     * @param ref The reference item index.
+     * @param acc The accumulator, indexed by item index.  {@code acc[y]} is increased by the score of {@code y}
+     *            with respect to {@code ref}.
+     */
+    void addRowTo(int ref, double[] acc) {
+        if (scores != null) {
+            DoubleBuffer row = scores[ref];
+            for (int y = 0, n = row.limit(); y < n; y++) {
+                acc[y] += row.get(y);
+            }
+        } else {
+            for (int i = rowOffsets.get(ref), end = rowOffsets.get(ref + 1); i < end; i++) {
+                acc[neighbors.get(i)] += neighborScores.get(i);
+            }
+        }
+    }
+
+    /**
+     * Take the element-wise maximum of an accumulator and an item's association row, in a single pass over the
+     * row.  Pruned pairs of a sparse model count as 0.
+     * @param ref The reference item index.
+     * @param acc The accumulator, indexed by item index.
+     */
+    void maxRowInto(int ref, double[] acc) {
+        if (scores != null) {
+            DoubleBuffer row = scores[ref];
+            for (int y = 0, n = row.limit(); y < n; y++) {
+                double v = row.get(y);
+                if (v > acc[y]) {
+                    acc[y] = v;
+                }
+            }
+        } else {
+            for (int i = rowOffsets.get(ref), end = rowOffsets.get(ref + 1); i < end; i++) {
+                int y = neighbors.get(i);
+                float v = neighborScores.get(i);
+                if (v > acc[y]) {
+                    acc[y] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Query whether this model only stores the top associations for each item.
+     * @return {@code true} if the model is sparse.
+     */
+    boolean isSparse() {
+        return scores == null;
+    }
+
+    /**
+     * Get the index of items in this model.
+     * @return The item index.
+     */
+    SortedKeyIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the start of an item's row in a sparse model.
+     * @param ref The reference item index.
+     * @return The position of the item's first neighbor.
+     */
+    int getRowStart(int ref) {
+        return rowOffsets.get(ref);
+    }
+
+    /**
+     * Get the end of an item's row in a sparse model.
+     * @param ref The reference item index.
+     * @return The position after the item's last neighbor.
+     */
+    int getRowEnd(int ref) {
+        return rowOffsets.get(ref + 1);
+    }
+
+    /**
+     * Get a neighbor in a sparse model.
+     * @param pos The position of the neighbor, between a row's start and end.
+     * @return The neighbor's item index.
+     */
+    int getNeighbor(int pos) {
+        return neighbors.get(pos);
+    }
+
+    /**
+     * Get a neighbor's score in a sparse model.
+     * @param pos The position of the neighbor, between a row's start and end.
+     * @return The neighbor's association score.
+     */
+    double getNeighborScore(int pos) {
+        return neighborScores.get(pos);
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("association models must be deserialized from their serialized form");
+    }
+
+    /**
+     * Serialized form of association models.  The buffers are not serializable, so the model is serialized
+     * as arrays in the same layout.
+     */
+    private static class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final SortedKeyIndex index;
+        private final double[][] scores;
+        private final int[] rowOffsets;
+        private final int[] neighbors;
+        private final float[] neighborScores;
+
+        SerializedForm(AssociationModel model) {
+            index = model.index;
+            if (model.scores != null) {
+                scores = new double[model.scores.length][];
+                for (int i = 0; i < scores.length; i++) {
+                    DoubleBuffer row = model.scores[i].duplicate();
+                    scores[i] = new double[row.limit()];
+                    row.get(scores[i]);
+                }
+                rowOffsets = null;
+                neighbors = null;
+                neighborScores = null;
+            } else {
+                scores = null;
+                rowOffsets = new int[model.rowOffsets.limit()];
+                model.rowOffsets.duplicate().get(rowOffsets);
+                neighbors = new int[model.neighbors.limit()];
+                model.neighbors.duplicate().get(neighbors);
+                neighborScores = new float[model.neighborScores.limit()];
+                model.neighborScores.duplicate().get(neighborScores);
+            }
+        }
+
+        private Object readResolve() {
+            if (scores != null) {
+                return new AssociationModel(index, scores);
+            } else {
+                return new AssociationModel(index, rowOffsets, neighbors, neighborScores);
+            }
+        }
     }
 }
@@ -0,0 +1,163 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.Arrays;
+
+/**
+ * Accumulate the rows of an association model.  Each row holds the scores of every Y item with
+ * respect to one X item.  If a neighbor count is set, only the top associations of each row are
+ * kept, and the model is stored in a sparse layout.
+ */
+class AssociationModelBuilder {
+    private final SortedKeyIndex index;
+    private final int neighborCount;
+    private final double[][] denseRows;
+    private final int[][] rowNeighbors;
+    private final float[][] rowScores;
+
+    /**
+     * Create a new builder.
+     * @param idx The index of items in the model.
+     * @param nnbrs The number of associations to keep per item, or 0 to keep all of them.
+     */
+    AssociationModelBuilder(SortedKeyIndex idx, int nnbrs) {
+        index = idx;
+        neighborCount = nnbrs;
+        int n = idx.size();
+        if (nnbrs > 0) {
+            denseRows = null;
+            rowNeighbors = new int[n][];
+            rowScores = new float[n][];
+        } else {
+            denseRows = new double[n][];
+            rowNeighbors = null;
+            rowScores = null;
+        }
+    }
+
+    /**
+     * Store the scores for an X item.
+     * @param x The index of the X item.
+     * @param scores The scores of each Y item with respect to X.  The self-score is ignored.  This
+     *               array is not retained.
+     */
+    void setRow(int x, double[] scores) {
+        if (denseRows != null) {
+            double[] row = Arrays.copyOf(scores, index.size());
+            row[x] = 0; // skip self-similarities
+            denseRows[x] = row;
+        } else {
+            selectTopRow(x, scores);
+        }
+    }
+
+    /**
+     * Select the top positive scores in a row, in decreasing order of score.  Ties are broken by
+     * item index so the output does not depend on the order rows are computed.
+     */
+    private void selectTopRow(int x, double[] scores) {
+        int n = index.size();
+        // a min-heap of item indexes, with the lowest-ranked neighbor at the top
+        int[] heap = new int[Math.min(neighborCount, n)];
+        int size = 0;
+        for (int y = 0; y < n; y++) {
+            double s = scores[y];
+            if (y == x || !(s > 0)) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = y;
+                siftUp(heap, size, scores);
+                size++;
+            } else if (ranksBefore(y, heap[0], scores)) {
+                heap[0] = y;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        // pop the heap from the back to get the neighbors in decreasing order
+        int[] nbrs = new int[size];
+        float[] vals = new float[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int y = heap[0];
+            nbrs[i] = y;
+            vals[i] = (float) scores[y];
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        rowNeighbors[x] = nbrs;
+        rowScores[x] = vals;
+    }
+
+    private static boolean ranksBefore(int a, int b, double[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int pos, double[] scores) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!ranksBefore(heap[parent], item, scores)) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int item = heap[0];
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksBefore(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!ranksBefore(item, heap[child], scores)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+
+    /**
+     * Build the association model.
+     * @return The association model with the accumulated rows.
+     */
+    AssociationModel build() {
+        int n = index.size();
+        if (denseRows != null) {
+            for (int i = 0; i < n; i++) {
+                if (denseRows[i] == null) {
+                    denseRows[i] = new double[n];
+                }
+            }
+            return new AssociationModel(index, denseRows);
+        }
+
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            int len = rowNeighbors[i] == null ? 0 : rowNeighbors[i].length;
+            offsets[i + 1] = offsets[i] + len;
+        }
+        int[] neighbors = new int[offsets[n]];
+        float[] scores = new float[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            if (rowNeighbors[i] != null) {
+                System.arraycopy(rowNeighbors[i], 0, neighbors, offsets[i], rowNeighbors[i].length);
+                System.arraycopy(rowScores[i], 0, scores, offsets[i], rowScores[i].length);
+            }
+        }
+        return new AssociationModel(index, offsets, neighbors, scores);
+    }
+}
@@ -0,0 +1,20 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of associations to keep for each reference item.  If this is 0 or negative, the
+ * association model keeps the scores for all pairs of items.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(0)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AssociationNeighborCount {
+}
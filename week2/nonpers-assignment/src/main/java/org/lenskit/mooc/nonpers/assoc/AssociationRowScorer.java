@@ -0,0 +1,15 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+/**
+ * Compute an association formula for one row of the association matrix.  Implementations must be
+ * safe to call from several threads at once.
+ */
+interface AssociationRowScorer {
+    /**
+     * Score all Y items with respect to an X item.
+     * @param x The index of the X item.
+     * @param counts The number of users who rated both X and each Y item, indexed by Y.
+     * @param scores The array to receive the score of each Y item.
+     */
+    void scoreRow(int x, int[] counts, double[] scores);
+}
@@ -0,0 +1,77 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task that computes a range of association rows.  Each X row is independent of the
+ * others, so ranges are split in half until they are small enough to compute directly.  Every leaf
+ * uses its own work arrays and writes only its own rows into the model builder, so no locking is
+ * needed and the result is the same as a serial build.
+ */
+class AssociationRowTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    /**
+     * The number of rows below which a task computes its rows instead of splitting.
+     */
+    private static final int ROWS_PER_TASK = 16;
+
+    private final ItemCooccurrence cooccurrence;
+    private final AssociationRowScorer scorer;
+    private final AssociationModelBuilder builder;
+    private final int start;
+    private final int end;
+
+    private AssociationRowTask(ItemCooccurrence cooc, AssociationRowScorer rs, AssociationModelBuilder bld,
+                               int lo, int hi) {
+        cooccurrence = cooc;
+        scorer = rs;
+        builder = bld;
+        start = lo;
+        end = hi;
+    }
+
+    /**
+     * Compute all association rows into a model builder.
+     * @param cooc The item co-occurrence counts.
+     * @param rs The association formula.
+     * @param bld The builder to receive the rows.
+     * @param threads The number of threads to use.  If 1 or less, rows are computed on the calling thread.
+     */
+    static void computeRows(ItemCooccurrence cooc, AssociationRowScorer rs, AssociationModelBuilder bld,
+                            int threads) {
+        AssociationRowTask task = new AssociationRowTask(cooc, rs, bld, 0, cooc.getItemIndex().size());
+        if (threads <= 1) {
+            task.computeDirectly();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (end - start <= ROWS_PER_TASK) {
+            computeDirectly();
+        } else {
+            int mid = (start + end) >>> 1;
+            invokeAll(new AssociationRowTask(cooccurrence, scorer, builder, start, mid),
+                      new AssociationRowTask(cooccurrence, scorer, builder, mid, end));
+        }
+    }
+
+    private void computeDirectly() {
+        int n = cooccurrence.getItemIndex().size();
+        int[] counts = new int[n];
+        double[] scores = new double[n];
+        for (int x = start; x < end; x++) {
+            cooccurrence.getIntersectionCounts(x, counts);
+            scorer.scoreRow(x, counts, scores);
+            builder.setRow(x, scores);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.lenskit.mooc.nonpers.assoc;
 
+import com.google.common.base.Stopwatch;
 import it.unimi.dsi.fastutil.longs.*;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
@@ -8,15 +9,13 @@ import org.lenskit.inject.Transient;
 import org.lenskit.util.IdBox;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Build a model for basic association rules.  This class computes the association for all pairs of items.
@@ -25,10 +24,22 @@ public class BasicAssociationModelProvider implements Provider<AssociationModel>
 
     private static final Logger logger = LoggerFactory.getLogger(BasicAssociationModelProvider.class);
     private final DataAccessObject dao;
-
+    private final int neighborCount;
+    private final int threadCount;
+
+    /**
+     * Construct the model provider.
+     * @param dao The data access object.
+     * @param nnbrs The number of associations to keep per item (0 to keep all of them).
+     * @param nthreads The number of threads to use for computing the association rules.
+     */
     @Inject
-    public BasicAssociationModelProvider(@Transient DataAccessObject dao) {
+    public BasicAssociationModelProvider(@Transient DataAccessObject dao,
+                                         @AssociationNeighborCount int nnbrs,
+                                         @BuildThreadCount int nthreads) {
         this.dao = dao;
+        neighborCount = nnbrs;
+        threadCount = nthreads;
     }
 
     @Override
@@ -37,7 +48,6 @@ public class BasicAssociationModelProvider implements Provider<AssociationModel>
 
         // This map will map each item ID to the set of users who have rated it.
         Long2ObjectMap<LongSortedSet> itemUsers = new Long2ObjectOpenHashMap<>();
-        LongSet allUsers = new LongOpenHashSet();
 
         // Open a stream, grouping ratings by item ID
         try (ObjectStream<IdBox<List<Rating>>> ratingStream = dao.query(Rating.class)
@@ -51,7 +61,6 @@ public class BasicAssociationModelProvider implements Provider<AssociationModel>
                 for (Rating r: item.getValue()) {
                     long user = r.getUserId();
                     users.add(user);
-                    allUsers.add(user);
                 }
                 // put this item's user set into the item user map
                 // a frozen set will be very efficient later
@@ -59,48 +68,29 @@ public class BasicAssociationModelProvider implements Provider<AssociationModel>
             }
         }
 
-        // Second step: compute all association rules
-
-        // We need a map to store them
-        Long2ObjectMap<Long2DoubleMap> assocMatrix = new Long2ObjectOpenHashMap<>();
-
-
-//        Set<Long> testIds = new HashSet<>();
-//        testIds.addAll(Arrays.asList(2571l,1196l,4993l,1210l,356l,5952l,7153l,296l,1198l,480l));
-
-        // then loop over 'x' items
-        for (Long2ObjectMap.Entry<LongSortedSet> xEntry: itemUsers.long2ObjectEntrySet()) {
-            long xId = xEntry.getLongKey();
-            LongSortedSet xUsers = xEntry.getValue();
+        // Second step: compute all association rules from the item rater bitmaps
+        final ItemCooccurrence cooccurrence = ItemCooccurrence.create(itemUsers);
+        SortedKeyIndex items = cooccurrence.getItemIndex();
+        final int n = items.size();
 
-            // set up a map to hold the scores for each 'y' item for this 'x'
-            Long2DoubleMap itemScores = new Long2DoubleOpenHashMap();
+        // We need a builder to store them
+        AssociationModelBuilder builder = new AssociationModelBuilder(items, neighborCount);
 
-            // loop over the 'y' items
-            for (Long2ObjectMap.Entry<LongSortedSet> yEntry: itemUsers.long2ObjectEntrySet()) {
-                long yId = yEntry.getLongKey();
-                LongSortedSet yUsers = yEntry.getValue();
+        // then compute the row of each 'x' item; the rows are independent, so they can be computed in parallel
+        Stopwatch timer = Stopwatch.createStarted();
+        AssociationRowTask.computeRows(cooccurrence, new AssociationRowScorer() {
+            @Override
+            public void scoreRow(int x, int[] counts, double[] itemScores) {
+                double xCount = cooccurrence.getItemUserCount(x);
 
                 // Compute P(Y & X) / P(X) and store in itemScores
-                int intersectionCount = 0;
-                for(long xUserId : xUsers){
-                    if(yUsers.contains(xUserId)) intersectionCount++;
+                for (int y = 0; y < n; y++) {
+                    itemScores[y] = counts[y] / xCount;
                 }
-                double score = intersectionCount/(double)xUsers.size();
-
-//                if(xId == 260){
-//                    if(testIds.contains(yId)){
-//                        logger.debug("xId:"+xId+" yId:"+yId+" score:"+score);
-//                    }
-//                }
-
-                itemScores.put(yId, score);
             }
+        }, builder, threadCount);
+        logger.info("computed association rules for {} items with {} threads in {}", n, threadCount, timer);
 
-            // save the score map to the main map
-            assocMatrix.put(xId, itemScores);
-        }
-
-        return new AssociationModel(assocMatrix);
+        return builder.build();
     }
 }
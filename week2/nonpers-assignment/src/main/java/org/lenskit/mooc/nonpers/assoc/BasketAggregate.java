@@ -0,0 +1,31 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import java.util.Locale;
+
+/**
+ * Ways of combining the association rows of several basket items into one score per item.
+ */
+public enum BasketAggregate {
+    /**
+     * Sum the associations with each basket item.
+     */
+    SUM,
+    /**
+     * Take the strongest association with any basket item.
+     */
+    MAX,
+    /**
+     * Average the associations with the basket items.
+     */
+    MEAN;
+
+    /**
+     * Look up an aggregate by its (case-insensitive) name.
+     * @param name The aggregate name.
+     * @return The aggregate.
+     * @throws IllegalArgumentException if the name is not a valid aggregate.
+     */
+    public static BasketAggregate fromName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
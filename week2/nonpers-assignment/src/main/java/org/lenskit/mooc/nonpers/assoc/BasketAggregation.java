@@ -0,0 +1,22 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import org.grouplens.grapht.annotation.DefaultString;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * How to combine the association scores of the items in a basket: {@code sum}, {@code max}, or
+ * {@code mean}.
+ *
+ * @see BasketAggregate
+ */
+@Documented
+@Qualifier
+@Parameter(String.class)
+@DefaultString("sum")
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface BasketAggregation {
+}
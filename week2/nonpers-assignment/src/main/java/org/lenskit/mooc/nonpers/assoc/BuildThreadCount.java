@@ -0,0 +1,20 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of threads to use when building association models.  If this is 1 or less, the
+ * model is built on the calling thread.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(1)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface BuildThreadCount {
+}
@@ -0,0 +1,180 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.lenskit.util.keys.HashKeyIndex;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+
+/**
+ * Co-occurrence counts between items, computed from bitmaps of the users who rated each item.
+ *
+ * <p>Each user is assigned a dense index with a {@link HashKeyIndex}, and each item's set of raters
+ * is stored as a compressed bitmap: only the non-empty 64-bit words are kept, together with the
+ * position of each word.  The number of users who rated both X and Y is then computed by merging
+ * the two word lists and counting the bits of {@code x & y} for each word they share.</p>
+ *
+ * <p>This is used by both the {@linkplain BasicAssociationModelProvider basic} and the
+ * {@linkplain LiftAssociationModelProvider lift} association rule builders.</p>
+ */
+@Immutable
+public final class ItemCooccurrence {
+    private final SortedKeyIndex itemIndex;
+    private final int userCount;
+    private final int[][] wordPositions;
+    private final long[][] words;
+    private final int[] itemUserCounts;
+
+    private ItemCooccurrence(SortedKeyIndex items, int nusers, int[][] positions, long[][] bits, int[] counts) {
+        itemIndex = items;
+        userCount = nusers;
+        wordPositions = positions;
+        words = bits;
+        itemUserCounts = counts;
+    }
+
+    /**
+     * Build the co-occurrence bitmaps.
+     *
+     * @param itemUsers A map of item IDs to the users who rated each item.
+     * @return The co-occurrence structure.
+     */
+    public static ItemCooccurrence create(Long2ObjectMap<? extends LongCollection> itemUsers) {
+        SortedKeyIndex items = SortedKeyIndex.fromCollection(itemUsers.keySet());
+        HashKeyIndex users = HashKeyIndex.create();
+        int n = items.size();
+
+        int[][] positions = new int[n][];
+        long[][] bits = new long[n][];
+        int[] counts = new int[n];
+        int[] userIndexes = new int[16];
+
+        for (int i = 0; i < n; i++) {
+            LongCollection raters = itemUsers.get(items.getKey(i));
+            // map the raters to dense user indexes, and sort them so the words come out in order
+            if (userIndexes.length < raters.size()) {
+                userIndexes = new int[raters.size()];
+            }
+            int nr = 0;
+            LongIterator iter = raters.iterator();
+            while (iter.hasNext()) {
+                userIndexes[nr++] = users.internId(iter.nextLong());
+            }
+            Arrays.sort(userIndexes, 0, nr);
+
+            // count the distinct words so we can allocate exactly
+            int nwords = 0;
+            int lastWord = -1;
+            for (int k = 0; k < nr; k++) {
+                int w = userIndexes[k] >>> 6;
+                if (w != lastWord) {
+                    nwords++;
+                    lastWord = w;
+                }
+            }
+
+            int[] pos = new int[nwords];
+            long[] wbits = new long[nwords];
+            int wi = -1;
+            lastWord = -1;
+            for (int k = 0; k < nr; k++) {
+                int u = userIndexes[k];
+                int w = u >>> 6;
+                if (w != lastWord) {
+                    wi++;
+                    pos[wi] = w;
+                    lastWord = w;
+                }
+                wbits[wi] |= 1L << (u & 63);
+            }
+
+            int card = 0;
+            for (long word: wbits) {
+                card += Long.bitCount(word);
+            }
+
+            positions[i] = pos;
+            bits[i] = wbits;
+            counts[i] = card;
+        }
+
+        return new ItemCooccurrence(items, users.size(), positions, bits, counts);
+    }
+
+    /**
+     * Get the index of items in this structure.  Item indexes used by the other methods are
+     * positions in this index.
+     *
+     * @return The item index.
+     */
+    public SortedKeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the number of distinct users.
+     * @return The number of users who rated at least one item.
+     */
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Get the number of users who rated an item.
+     * @param item The item index.
+     * @return The number of users who rated the item.
+     */
+    public int getItemUserCount(int item) {
+        return itemUserCounts[item];
+    }
+
+    /**
+     * Count the users who rated both of two items.
+     *
+     * @param x The index of the first item.
+     * @param y The index of the second item.
+     * @return The number of users who rated both items.
+     */
+    public int getIntersectionCount(int x, int y) {
+        int[] xpos = wordPositions[x];
+        long[] xbits = words[x];
+        int[] ypos = wordPositions[y];
+        long[] ybits = words[y];
+
+        int count = 0;
+        int i = 0, j = 0;
+        int nx = xpos.length, ny = ypos.length;
+        while (i < nx && j < ny) {
+            int xp = xpos[i];
+            int yp = ypos[j];
+            if (xp == yp) {
+                count += Long.bitCount(xbits[i] & ybits[j]);
+                i++;
+                j++;
+            } else if (xp < yp) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count, for every item Y, the users who rated both X and Y.
+     *
+     * @param x The index of the reference item X.
+     * @param counts An array of at least {@link SortedKeyIndex#size()} elements to receive the
+     *               counts.  {@code counts[y]} will be set to the intersection count with item
+     *               {@code y}.
+     */
+    public void getIntersectionCounts(int x, int[] counts) {
+        int n = itemIndex.size();
+        for (int y = 0; y < n; y++) {
+            counts[y] = getIntersectionCount(x, y);
+        }
+    }
+}
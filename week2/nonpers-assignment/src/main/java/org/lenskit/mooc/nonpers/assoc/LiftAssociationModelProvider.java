@@ -1,5 +1,6 @@
 package org.lenskit.mooc.nonpers.assoc;
 
+import com.google.common.base.Stopwatch;
 import it.unimi.dsi.fastutil.longs.*;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
@@ -8,15 +9,13 @@ import org.lenskit.inject.Transient;
 import org.lenskit.util.IdBox;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Build an association rule model using a lift metric.
@@ -24,19 +23,27 @@ import java.util.Set;
 public class LiftAssociationModelProvider implements Provider<AssociationModel> {
     private static final Logger logger = LoggerFactory.getLogger(LiftAssociationModelProvider.class);
     private final DataAccessObject dao;
-
+    private final int neighborCount;
+    private final int threadCount;
+
+    /**
+     * Construct the model provider.
+     * @param dao The data access object.
+     * @param nnbrs The number of associations to keep per item (0 to keep all of them).
+     * @param nthreads The number of threads to use for computing the association rules.
+     */
     @Inject
-    public LiftAssociationModelProvider(@Transient DataAccessObject dao) {
+    public LiftAssociationModelProvider(@Transient DataAccessObject dao,
+                                        @AssociationNeighborCount int nnbrs,
+                                        @BuildThreadCount int nthreads) {
         this.dao = dao;
+        neighborCount = nnbrs;
+        threadCount = nthreads;
     }
 
     @Override
     public AssociationModel get() {
         // First step: map each item to the set of users who have rated it.
-        // While we're at it, compute the set of all users.
-
-        // This set contains all users.
-        LongSet allUsers = new LongOpenHashSet();
 
         // This map will map each item ID to the set of users who have rated it.
         Long2ObjectMap<LongSortedSet> itemUsers = new Long2ObjectOpenHashMap<>();
@@ -53,7 +60,6 @@ public class LiftAssociationModelProvider implements Provider<AssociationModel>
                 for (Rating r: item.getValue()) {
                     long user = r.getUserId();
                     users.add(user);
-                    allUsers.add(user);
                 }
                 // put this item's user set into the item user map
                 // a frozen set will be very efficient later
@@ -61,48 +67,31 @@ public class LiftAssociationModelProvider implements Provider<AssociationModel>
             }
         }
 
-        // Second step: compute all association rules
-
-        // We need a map to store them
-        Long2ObjectMap<Long2DoubleMap> assocMatrix = new Long2ObjectOpenHashMap<>();
-
-        Set<Long> testIds = new HashSet<>();
-        testIds.addAll(Arrays.asList(631l,2532l,3615l,1649l,340l,1016l,2439l,332l,2736l,3213l));
-
-
-        // then loop over 'x' items
-        for (Long2ObjectMap.Entry<LongSortedSet> xEntry: itemUsers.long2ObjectEntrySet()) {
-            long xId = xEntry.getLongKey();
-            LongSortedSet xUsers = xEntry.getValue();
-
-            // set up a map to hold the scores for each 'y' item
-            Long2DoubleMap itemScores = new Long2DoubleOpenHashMap();
-
-            // Compute lift association formulas for all other 'Y' items with respect to this 'X'
-            for (Long2ObjectMap.Entry<LongSortedSet> yEntry: itemUsers.long2ObjectEntrySet()) {
-                long yId = yEntry.getLongKey();
-                LongSortedSet yUsers = yEntry.getValue();
-
-                // Compute P(Y & X) / P(X) and store in itemScores
-                int intersectionCount = 0;
-                for(long xUserId : xUsers){
-                    if(yUsers.contains(xUserId)) intersectionCount++;
-                }
-                double score = intersectionCount*allUsers.size()/(double)(xUsers.size()*yUsers.size());
-
-                if(xId == 2761){
-                    if(testIds.contains(yId)){
-                        logger.debug("xId:"+xId+" yId:"+yId+" score:"+score);
-                    }
+        // Second step: compute all association rules from the item rater bitmaps
+        final ItemCooccurrence cooccurrence = ItemCooccurrence.create(itemUsers);
+        final SortedKeyIndex items = cooccurrence.getItemIndex();
+        final int n = items.size();
+        final double userCount = cooccurrence.getUserCount();
+
+        // We need a builder to store them
+        AssociationModelBuilder builder = new AssociationModelBuilder(items, neighborCount);
+
+        // then compute the row of each 'x' item; the rows are independent, so they can be computed in parallel
+        Stopwatch timer = Stopwatch.createStarted();
+        AssociationRowTask.computeRows(cooccurrence, new AssociationRowScorer() {
+            @Override
+            public void scoreRow(int x, int[] counts, double[] itemScores) {
+                double xCount = cooccurrence.getItemUserCount(x);
+
+                // Compute lift association formulas for all other 'Y' items with respect to this 'X'
+                for (int y = 0; y < n; y++) {
+                    // Compute P(Y & X) / (P(X) P(Y)) and store in itemScores
+                    itemScores[y] = counts[y] * userCount / (xCount * cooccurrence.getItemUserCount(y));
                 }
-
-                itemScores.put(yId, score);
             }
+        }, builder, threadCount);
+        logger.info("computed association rules for {} items with {} threads in {}", n, threadCount, timer);
 
-            // save the score map to the main map
-            assocMatrix.put(xId, itemScores);
-        }
-
-        return new AssociationModel(assocMatrix);
+        return builder.build();
     }
 }
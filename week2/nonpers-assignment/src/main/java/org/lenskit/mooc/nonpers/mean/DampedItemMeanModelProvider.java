@@ -1,7 +1,5 @@
 package org.lenskit.mooc.nonpers.mean;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.lenskit.baseline.MeanDamping;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.ratings.Rating;
@@ -12,7 +10,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.Map;
 
 /**
  * Provider class that builds the mean rating item scorer, computing damped item means from the
@@ -66,41 +63,16 @@ public class DampedItemMeanModelProvider implements Provider<ItemMeanModel> {
      */
     @Override
     public ItemMeanModel get() {
-        Long2DoubleOpenHashMap sumMap = new Long2DoubleOpenHashMap();
-        Long2IntOpenHashMap countMap = new Long2IntOpenHashMap();
-        double globalValue = 0d;
-        int globalCount = 0;
+        // accumulate the item and global statistics in one pass
+        ItemRatingAccumulator accumulator = new ItemRatingAccumulator();
         try (ObjectStream<Rating> ratings = dao.query(Rating.class).stream()) {
             for (Rating r: ratings) {
                 // this loop will run once for each rating in the data set
-                long itemId = r.getItemId();
-                if( !countMap.containsKey(itemId) ){
-                    countMap.put(itemId,1);
-                    sumMap.put(itemId,r.getValue());
-                }else{
-                    double origSum = sumMap.get(itemId);
-                    int origCount = countMap.get(itemId);
-                    sumMap.put(itemId, origSum+r.getValue());
-                    countMap.put(itemId, origCount + 1);
-                }
-                globalValue += r.getValue();
-                globalCount++;
+                accumulator.add(r.getItemId(), r.getValue());
             }
         }
 
-        Long2DoubleOpenHashMap dampedMeans = new Long2DoubleOpenHashMap();
-
-        double globalMean = globalValue/globalCount;
-        for(Map.Entry<Long,Integer> entry : countMap.entrySet()){
-            long itemId = entry.getKey();
-            dampedMeans.put(itemId, (sumMap.get(itemId)+ALPHA*globalMean)/(entry.getValue()+ALPHA));
-        }
-        logger.debug("2959 damped mean:" + dampedMeans.get(2959)+
-                " value:"+sumMap.get(2959)+" count:"+countMap.get(2959));
-        logger.debug("1203 damped mean:" + dampedMeans.get(1203)+
-                " value:"+sumMap.get(1203)+" count:"+countMap.get(1203));
-
-        logger.info("computed mean ratings for {} items", dampedMeans.size());
-        return new ItemMeanModel(dampedMeans);
+        logger.info("computed mean ratings for {} items", accumulator.size());
+        return accumulator.buildDampedModel(ALPHA);
     }
 }
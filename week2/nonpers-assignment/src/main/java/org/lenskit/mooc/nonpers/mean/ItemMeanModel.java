@@ -1,14 +1,23 @@
 package org.lenskit.mooc.nonpers.mean;
 
 import com.google.common.base.Preconditions;
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
-import org.lenskit.util.collections.LongUtils;
+import org.lenskit.mooc.nonpers.BinaryModelReader;
+import org.lenskit.mooc.nonpers.BinaryModelWriter;
+import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.Map;
 
 /**
@@ -20,22 +29,119 @@ import java.util.Map;
  * <p>The {@link DefaultProvider} annotation tells LensKit to use a <em>provider class</em> &mdash; the mean item scorer
  * provider &mdash; to create instances of this class.</p>
  *
- * <p>You <strong>should not</strong> need to make any changes to this class.</p>
+ * <p>Means are stored in an array parallel to a sorted index of item IDs.  The model also keeps a ranking of
+ * the items in decreasing order of mean rating, sorted once when the model is built, so that recommenders can
+ * read the top items off without sorting the whole catalog on each request.</p>
+ *
+ * <p>A model can be saved in a compact binary format with {@link #writeTo(Path)}, and loaded with
+ * {@link #map(Path)}.  A loaded model memory-maps its means and ranking read-only instead of copying them onto
+ * the heap; only the sorted item IDs are read into memory.  The file holds a header, the sorted item IDs, the
+ * means and the ranking, all little-endian.  {@link MappedItemMeanModelProvider} serves a model from such a file.</p>
  */
 @Shareable
 @Immutable
 @DefaultProvider(ItemMeanModelProvider.class)
 public class ItemMeanModel implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final int FILE_MAGIC = 0x4C4B494D; // LKIM
+    private static final int FILE_VERSION = 1;
 
-    private final Long2DoubleMap itemMeans;
+    private final SortedKeyIndex items;
+    private final DoubleBuffer itemMeans;
+    private final IntBuffer ranking;
 
     /**
      * Construct a new item mean model.
      * @param means A map of item IDs to their mean ratings.
      */
     public ItemMeanModel(Map<Long, Double> means) {
-        itemMeans = LongUtils.frozenMap(means);
+        items = SortedKeyIndex.fromCollection(means.keySet());
+        int n = items.size();
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = means.get(items.getKey(i));
+        }
+        itemMeans = DoubleBuffer.wrap(values);
+        ranking = IntBuffer.wrap(rankItems(values));
+    }
+
+    /**
+     * Construct a new item mean model from primitive arrays.
+     * @param idx The index of item IDs.
+     * @param means The mean rating of each item in {@code idx}, by index.  The array is used directly, not
+     *              copied.
+     */
+    ItemMeanModel(SortedKeyIndex idx, double[] means) {
+        Preconditions.checkArgument(means.length == idx.size(), "mean count mismatch");
+        items = idx;
+        itemMeans = DoubleBuffer.wrap(means);
+        ranking = IntBuffer.wrap(rankItems(means));
+    }
+
+    private ItemMeanModel(SortedKeyIndex idx, DoubleBuffer means, IntBuffer rank) {
+        items = idx;
+        itemMeans = means;
+        ranking = rank;
+    }
+
+    /**
+     * Load a model by memory-mapping a file written by {@link #writeTo(Path)}.
+     * @param path The model file.
+     * @return The model.
+     * @throws IOException if the file cannot be read or is not an item mean model.
+     */
+    public static ItemMeanModel map(Path path) throws IOException {
+        try (BinaryModelReader reader = new BinaryModelReader(path)) {
+            reader.readHeader(FILE_MAGIC, FILE_VERSION);
+            int n = reader.readInt();
+            reader.readInt(); // padding, to keep the arrays aligned
+            SortedKeyIndex idx = SortedKeyIndex.wrap(reader.readLongs(n), n);
+            DoubleBuffer means = reader.mapDoubles(n);
+            IntBuffer rank = reader.mapInts(n);
+            return new ItemMeanModel(idx, means, rank);
+        }
+    }
+
+    /**
+     * Write this model to a binary model file.
+     * @param path The file to write.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void writeTo(Path path) throws IOException {
+        int n = items.size();
+        try (BinaryModelWriter writer = new BinaryModelWriter(path)) {
+            writer.writeHeader(FILE_MAGIC, FILE_VERSION);
+            writer.writeInt(n);
+            writer.writeInt(0);
+            for (int i = 0; i < n; i++) {
+                writer.writeLong(items.getKey(i));
+            }
+            for (int i = 0; i < n; i++) {
+                writer.writeDouble(itemMeans.get(i));
+            }
+            for (int i = 0; i < n; i++) {
+                writer.writeInt(ranking.get(i));
+            }
+        }
+    }
+
+    /**
+     * Sort item indexes in decreasing order of mean.  Ties are broken by index, which is the same as
+     * breaking them by ID.
+     */
+    private static int[] rankItems(final double[] means) {
+        int[] order = new int[means.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        IntArrays.quickSort(order, new AbstractIntComparator() {
+            @Override
+            public int compare(int i1, int i2) {
+                int cmp = Double.compare(means[i2], means[i1]);
+                return cmp != 0 ? cmp : Integer.compare(i1, i2);
+            }
+        });
+        return order;
     }
 
     /**
@@ -43,7 +149,7 @@ public class ItemMeanModel implements Serializable {
      * @return The set of items known by the model.
      */
     public LongSet getKnownItems() {
-        return itemMeans.keySet();
+        return items.keySet();
     }
 
     /**
@@ -52,7 +158,7 @@ public class ItemMeanModel implements Serializable {
      * @return {@code true} if the item is known by the model, {@code false} otherwise.
      */
     public boolean hasItem(long item) {
-        return itemMeans.containsKey(item);
+        return items.containsKey(item);
     }
 
     /**
@@ -62,7 +168,71 @@ public class ItemMeanModel implements Serializable {
      * @throws IllegalArgumentException if the item is not a known itemm.
      */
     public double getMeanRating(long item) {
-        Preconditions.checkArgument(hasItem(item), "unknown item " + item);
-        return itemMeans.get(item);
+        int idx = items.tryGetIndex(item);
+        Preconditions.checkArgument(idx >= 0, "unknown item " + item);
+        return itemMeans.get(idx);
+    }
+
+    /**
+     * Get the number of items in the model's ranking.
+     * @return The number of known items.
+     */
+    int getRankedItemCount() {
+        return ranking.limit();
+    }
+
+    /**
+     * Get the item at a position in the ranking.
+     * @param rank The (0-based) position in the ranking.
+     * @return The ID of the item with the {@code rank}-th highest mean.
+     */
+    long getRankedItem(int rank) {
+        return items.getKey(ranking.get(rank));
+    }
+
+    /**
+     * Get the mean rating of the item at a position in the ranking.
+     * @param rank The (0-based) position in the ranking.
+     * @return The mean rating of the item with the {@code rank}-th highest mean.
+     */
+    double getRankedMean(int rank) {
+        return itemMeans.get(ranking.get(rank));
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("item mean models must be deserialized from their serialized form");
+    }
+
+    /**
+     * Serialized form of item mean models.  The buffers are not serializable, so the model is serialized as
+     * arrays of its item IDs, means and ranking.
+     */
+    private static class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] items;
+        private final double[] means;
+        private final int[] ranking;
+
+        SerializedForm(ItemMeanModel model) {
+            int n = model.items.size();
+            items = new long[n];
+            means = new double[n];
+            ranking = new int[n];
+            for (int i = 0; i < n; i++) {
+                items[i] = model.items.getKey(i);
+                means[i] = model.itemMeans.get(i);
+                ranking[i] = model.ranking.get(i);
+            }
+        }
+
+        private Object readResolve() {
+            return new ItemMeanModel(SortedKeyIndex.wrap(items, items.length),
+                                     DoubleBuffer.wrap(means), IntBuffer.wrap(ranking));
+        }
     }
 }
@@ -1,7 +1,5 @@
 package org.lenskit.mooc.nonpers.mean;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.ratings.Rating;
 import org.lenskit.inject.Transient;
@@ -11,7 +9,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.Map;
 
 /**
  * Provider class that builds the mean rating item scorer, computing item means from the
@@ -53,37 +50,15 @@ public class ItemMeanModelProvider implements Provider<ItemMeanModel> {
      */
     @Override
     public ItemMeanModel get() {
-
-        Long2DoubleOpenHashMap sumMap = new Long2DoubleOpenHashMap();
-        Long2IntOpenHashMap countMap = new Long2IntOpenHashMap();
+        ItemRatingAccumulator accumulator = new ItemRatingAccumulator();
         try (ObjectStream<Rating> ratings = dao.query(Rating.class).stream()) {
             for (Rating r: ratings) {
                 // this loop will run once for each rating in the data set
-                long itemId = r.getItemId();
-                if( !countMap.containsKey(itemId) ){
-                    countMap.put(itemId,1);
-                    sumMap.put(itemId,r.getValue());
-                }else{
-                    double origSum = sumMap.get(itemId);
-                    int origCount = countMap.get(itemId);
-                    sumMap.put(itemId, origSum+r.getValue());
-                    countMap.put(itemId, origCount + 1);
-                }
+                accumulator.add(r.getItemId(), r.getValue());
             }
         }
 
-        Long2DoubleOpenHashMap means = new Long2DoubleOpenHashMap();
-
-        for(Map.Entry<Long,Integer> entry : countMap.entrySet()){
-            long itemId = entry.getKey();
-            means.put(itemId, sumMap.get(itemId)/entry.getValue());
-        }
-        logger.debug("2959 mean:" + means.get(2959)+
-                " value:"+sumMap.get(2959)+" count:"+countMap.get(2959));
-        logger.debug("1203 mean:" + means.get(1203)+
-                " value:"+sumMap.get(1203)+" count:"+countMap.get(1203));
-
-        logger.info("computed mean ratings for {} items", means.size());
-        return new ItemMeanModel(means);
+        logger.info("computed mean ratings for {} items", accumulator.size());
+        return accumulator.buildModel();
     }
 }
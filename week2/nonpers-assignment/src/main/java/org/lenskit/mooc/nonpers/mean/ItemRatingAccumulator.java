@@ -0,0 +1,152 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.util.keys.HashKeyIndex;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Accumulate rating sums and counts for each item in a single pass over the ratings.
+ *
+ * <p>Items are mapped to a dense index, and the statistics are kept in primitive arrays over that index, so
+ * adding a rating costs one hash lookup and no boxing.  The global rating sum and count are accumulated in
+ * the same pass, for computing damped means.</p>
+ *
+ * <p>These are sufficient statistics for the item means, so an accumulator can also be kept between model
+ * builds and updated with {@linkplain #apply(RatingDelta) batches of rating changes}.  Applying a delta takes
+ * time proportional to the delta; building a new model from the statistics is then a single pass over the
+ * primitive arrays, with no DAO scan.  This class is not thread-safe.</p>
+ */
+public class ItemRatingAccumulator implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final HashKeyIndex items = HashKeyIndex.create();
+    private double[] sums = new double[64];
+    private int[] counts = new int[64];
+    private double globalSum;
+    private long globalCount;
+
+    /**
+     * Add a rating.
+     * @param item The rated item.
+     * @param value The rating value.
+     */
+    public void add(long item, double value) {
+        int idx = items.internId(item);
+        if (idx >= sums.length) {
+            int cap = sums.length * 2;
+            sums = Arrays.copyOf(sums, cap);
+            counts = Arrays.copyOf(counts, cap);
+        }
+        sums[idx] += value;
+        counts[idx] += 1;
+        globalSum += value;
+        globalCount += 1;
+    }
+
+    /**
+     * Remove a rating.
+     * @param item The rated item.
+     * @param value The value the rating had.
+     * @throws IllegalArgumentException if the item has no ratings.
+     */
+    public void remove(long item, double value) {
+        int idx = items.tryGetIndex(item);
+        Preconditions.checkArgument(idx >= 0 && counts[idx] > 0, "item %s has no ratings", item);
+        sums[idx] -= value;
+        counts[idx] -= 1;
+        if (counts[idx] == 0) {
+            // avoid accumulating rounding error in items that come back later
+            sums[idx] = 0;
+        }
+        globalSum -= value;
+        globalCount -= 1;
+    }
+
+    /**
+     * Apply a batch of rating changes.  The delta is applied atomically: every removal is checked against the
+     * current counts before anything is changed, so a delta that cannot be applied leaves the statistics as they
+     * were.
+     * @param delta The rating changes.
+     * @throws IllegalArgumentException if the delta removes more ratings of an item than it has.
+     */
+    public void apply(RatingDelta delta) {
+        Long2IntOpenHashMap removals = new Long2IntOpenHashMap();
+        for (Rating r: delta.getRemovedRatings()) {
+            long item = r.getItemId();
+            int n = removals.addTo(item, 1) + 1;
+            int idx = items.tryGetIndex(item);
+            Preconditions.checkArgument(idx >= 0 && counts[idx] >= n, "item %s has fewer than %s ratings", item, n);
+        }
+
+        for (Rating r: delta.getRemovedRatings()) {
+            remove(r.getItemId(), r.getValue());
+        }
+        for (Rating r: delta.getAddedRatings()) {
+            add(r.getItemId(), r.getValue());
+        }
+    }
+
+    /**
+     * Get the number of items seen so far.
+     * @return The number of items that have been rated.  This includes items whose ratings have all been removed.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Get the global mean rating.
+     * @return The mean of all ratings seen so far, or 0 if there are none.
+     */
+    public double getGlobalMean() {
+        return globalCount == 0 ? 0 : globalSum / globalCount;
+    }
+
+    /**
+     * Build a model of the items' mean ratings.
+     * @return The item mean model.
+     */
+    public ItemMeanModel buildModel() {
+        return buildModel(0, 0);
+    }
+
+    /**
+     * Build a model of the items' damped mean ratings.  Each item's mean is computed as if it had
+     * {@code damping} additional ratings at the global mean.
+     * @param damping The damping factor.
+     * @return The item mean model.
+     */
+    public ItemMeanModel buildDampedModel(double damping) {
+        return buildModel(damping * getGlobalMean(), damping);
+    }
+
+    /**
+     * Build a model from the statistics of the items that have ratings.  The items are sorted by ID, and each
+     * item's mean is put in place by a binary search, so the model is built straight from primitive arrays.
+     * @param offset The value to add to each item's rating sum.
+     * @param damping The value to add to each item's rating count.
+     */
+    private ItemMeanModel buildModel(double offset, double damping) {
+        int n = items.size();
+        long[] ids = new long[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (counts[i] > 0) {
+                ids[m++] = items.getKey(i);
+            }
+        }
+        Arrays.sort(ids, 0, m);
+        double[] means = new double[m];
+        for (int i = 0; i < n; i++) {
+            if (counts[i] > 0) {
+                means[Arrays.binarySearch(ids, 0, m, items.getKey(i))] = (sums[i] + offset) / (counts[i] + damping);
+            }
+        }
+        return new ItemMeanModel(SortedKeyIndex.wrap(ids, m), means);
+    }
+}
@@ -0,0 +1,58 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import org.lenskit.inject.Transient;
+import org.lenskit.mooc.nonpers.ModelFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Provide an item mean model by memory-mapping a {@linkplain ModelFile model file}, so serving processes share
+ * one read-only copy of the model through the page cache instead of each holding it on the heap.
+ *
+ * <p>If the file does not exist yet, the model is built with {@link ItemMeanModelProvider}, written to a temporary
+ * file, and renamed into place before being mapped.</p>
+ */
+public class MappedItemMeanModelProvider implements Provider<ItemMeanModel> {
+    private static final Logger logger = LoggerFactory.getLogger(MappedItemMeanModelProvider.class);
+
+    private final Path file;
+    private final ItemMeanModelProvider builder;
+
+    /**
+     * Construct the model provider.
+     * @param file The model file.
+     * @param builder The provider to build the model with if the file does not exist.
+     */
+    @Inject
+    public MappedItemMeanModelProvider(@ModelFile String file, @Transient ItemMeanModelProvider builder) {
+        this.file = Paths.get(file);
+        this.builder = builder;
+    }
+
+    @Override
+    public ItemMeanModel get() {
+        try {
+            if (!Files.exists(file)) {
+                logger.info("model file {} does not exist, building model", file);
+                Path dir = file.toAbsolutePath().getParent();
+                Files.createDirectories(dir);
+                Path tmp = dir.resolve(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+                builder.get().writeTo(tmp);
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            logger.info("mapping item mean model from {}", file);
+            return ItemMeanModel.map(file);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot load item mean model from " + file, e);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package org.lenskit.mooc.nonpers.mean;
 
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultList;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemBasedItemRecommender;
+import org.lenskit.mooc.nonpers.TopNSelector;
 import org.lenskit.results.Results;
 import org.lenskit.util.collections.LongUtils;
 import org.slf4j.Logger;
@@ -12,7 +14,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * An item scorer that scores each item with its mean rating.
@@ -44,13 +48,14 @@ public class MeanItemBasedItemRecommender extends AbstractItemBasedItemRecommend
      */
     @Override
     public ResultList recommendRelatedItemsWithDetails(Set<Long> basket, int n, @Nullable Set<Long> candidates, @Nullable Set<Long> exclude) {
-        LongSet items;
         if (candidates == null) {
-            items = model.getKnownItems();
-        } else {
-            items = LongUtils.asLongSet(candidates);
+            LongSet excluded = exclude == null ? LongSets.EMPTY_SET : LongUtils.asLongSet(exclude);
+            logger.info("reading {} recommendations from ranking of {} items", n, model.getRankedItemCount());
+            return recommendFromRanking(n, excluded);
         }
 
+        LongSet items = LongUtils.asLongSet(candidates);
+
         if (exclude != null) {
             items = LongUtils.setDifference(items, LongUtils.asLongSet(exclude));
         }
@@ -66,38 +71,42 @@ public class MeanItemBasedItemRecommender extends AbstractItemBasedItemRecommend
      * <p>Your code needs to obtain the mean rating, if one is available, for each item, and return a list of the
      * {@code n} highest-rated items, in decreasing order of score.</p>
      *
-     * <p>To create the {@link ResultMap} data structure, do the following:</p>
-     *
-     * <ol>
-     *     <li>Create a {@link List} to hold {@link Result} objects.</li>
-     *     <li>Create a result object for each item that can be scored.  Use {@link Results#create(long, double)} to
-     *     create the result object. If an item cannot be scored (because there is no mean available), ignore it and
-     *     do not add a result to the list.</li>
-     *     <li>Convert the list of results to a {@link ResultList} using {@link Results#newResultList(List)}.</li>
-     * </ol>
+     * <p>The top {@code n} items are selected with a {@link TopNSelector}, so only the selected items are
+     * turned into {@link Result} objects.</p>
      *
      * @param n The number of items to recommend.  If this is negative, then recommend all possible items.
      * @param items The items to score.
      * @return A {@link ResultMap} containing the scores.
      */
     private ResultList recommendItems(int n, LongSet items) {
-        List<Result> results = new ArrayList<>();
+        TopNSelector selector = new TopNSelector(n);
 
-        for(long id : items) {
-            if(model.hasItem(id)) {
-                results.add(Results.create(id,model.getMeanRating(id)));
+        for (long id: items) {
+            if (model.hasItem(id)) {
+                selector.add(id, model.getMeanRating(id));
             }
         }
-        Collections.sort(results,new Comparator<Result>() {
-            @Override
-            public int compare(Result o1, Result o2) {
-                double diff = o1.getScore()-o2.getScore();
-                if(diff > 0) return -1;
-                else if (diff < 0) return 1;
-                else return 0;
+
+        return selector.finish();
+    }
+
+    /**
+     * Recommend the top items from the model's precomputed ranking.  This walks the ranking from the top,
+     * skipping excluded items, so it costs O(n + |exclude|) rather than scoring every known item.
+     *
+     * @param n The number of items to recommend.  If this is negative, then recommend all non-excluded items.
+     * @param exclude The items to exclude.
+     * @return The recommendation list.
+     */
+    private ResultList recommendFromRanking(int n, LongSet exclude) {
+        int size = model.getRankedItemCount();
+        List<Result> results = new ArrayList<>(n >= 0 ? Math.min(n, size) : size);
+        for (int rank = 0; rank < size && (n < 0 || results.size() < n); rank++) {
+            long item = model.getRankedItem(rank);
+            if (!exclude.contains(item)) {
+                results.add(Results.create(item, model.getRankedMean(rank)));
             }
-        });
-        //logger.debug(" top 5:"+results.subList(0,5));
-        return Results.newResultList(results.subList(0,n));
+        }
+        return Results.newResultList(results);
     }
 }
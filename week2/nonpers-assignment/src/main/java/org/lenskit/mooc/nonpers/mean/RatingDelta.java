@@ -0,0 +1,106 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import com.google.common.collect.ImmutableList;
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.List;
+
+/**
+ * A batch of rating changes: ratings that were added, and ratings that were removed.  An updated rating is
+ * represented as the removal of its old value and the addition of its new value.
+ *
+ * @see ItemRatingAccumulator#apply(RatingDelta)
+ */
+@Immutable
+public final class RatingDelta {
+    private final ImmutableList<Rating> added;
+    private final ImmutableList<Rating> removed;
+
+    private RatingDelta(ImmutableList<Rating> add, ImmutableList<Rating> rm) {
+        added = add;
+        removed = rm;
+    }
+
+    /**
+     * Create a new builder for rating deltas.
+     * @return The builder.
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the ratings added by this delta.
+     * @return The added ratings.
+     */
+    public List<Rating> getAddedRatings() {
+        return added;
+    }
+
+    /**
+     * Get the ratings removed by this delta.
+     * @return The removed ratings, with the values they had before removal.
+     */
+    public List<Rating> getRemovedRatings() {
+        return removed;
+    }
+
+    /**
+     * Get the number of rating changes in this delta.
+     * @return The number of added and removed ratings.
+     */
+    public int size() {
+        return added.size() + removed.size();
+    }
+
+    /**
+     * Builder for rating deltas.
+     */
+    public static final class Builder {
+        private final ImmutableList.Builder<Rating> added = ImmutableList.builder();
+        private final ImmutableList.Builder<Rating> removed = ImmutableList.builder();
+
+        private Builder() {}
+
+        /**
+         * Record a new rating.
+         * @param r The rating.
+         * @return The builder (for chaining).
+         */
+        public Builder addRating(Rating r) {
+            added.add(r);
+            return this;
+        }
+
+        /**
+         * Record a removed rating.
+         * @param r The rating, with the value it had before removal.
+         * @return The builder (for chaining).
+         */
+        public Builder removeRating(Rating r) {
+            removed.add(r);
+            return this;
+        }
+
+        /**
+         * Record a changed rating.
+         * @param old The rating's previous value.
+         * @param updated The rating's new value.
+         * @return The builder (for chaining).
+         */
+        public Builder updateRating(Rating old, Rating updated) {
+            removed.add(old);
+            added.add(updated);
+            return this;
+        }
+
+        /**
+         * Build the delta.
+         * @return The rating delta.
+         */
+        public RatingDelta build() {
+            return new RatingDelta(added.build(), removed.build());
+        }
+    }
+}
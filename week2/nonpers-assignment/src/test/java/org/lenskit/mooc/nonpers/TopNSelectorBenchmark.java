@@ -0,0 +1,69 @@
+package org.lenskit.mooc.nonpers;
+
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.results.Results;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare top-N selection with a bounded heap against sorting a full list of results, as the
+ * recommenders used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TopNSelectorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int candidateCount;
+
+    @Param({"10"})
+    public int n;
+
+    private long[] items;
+    private double[] scores;
+
+    @Setup
+    public void createCandidates() {
+        Random rng = new Random(42);
+        items = new long[candidateCount];
+        scores = new double[candidateCount];
+        for (int i = 0; i < candidateCount; i++) {
+            items[i] = rng.nextInt(1000000);
+            scores[i] = rng.nextDouble() * 5;
+        }
+    }
+
+    @Benchmark
+    public ResultList sortAll() {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            results.add(Results.create(items[i], scores[i]));
+        }
+        Collections.sort(results, new Comparator<Result>() {
+            @Override
+            public int compare(Result o1, Result o2) {
+                return Double.compare(o2.getScore(), o1.getScore());
+            }
+        });
+        return Results.newResultList(results.subList(0, Math.min(n, results.size())));
+    }
+
+    @Benchmark
+    public ResultList boundedHeap() {
+        TopNSelector selector = new TopNSelector(n);
+        for (int i = 0; i < candidateCount; i++) {
+            selector.add(items[i], scores[i]);
+        }
+        return selector.finish();
+    }
+}
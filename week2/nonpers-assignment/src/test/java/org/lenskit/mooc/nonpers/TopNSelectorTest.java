@@ -0,0 +1,61 @@
+package org.lenskit.mooc.nonpers;
+
+import org.junit.Test;
+import org.lenskit.api.ResultList;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TopNSelectorTest {
+    @Test
+    public void testEmpty() {
+        TopNSelector sel = new TopNSelector(5);
+        assertThat(sel.finish().size(), equalTo(0));
+    }
+
+    @Test
+    public void testFewerThanN() {
+        TopNSelector sel = new TopNSelector(5);
+        sel.add(1, 2.0);
+        sel.add(2, 3.0);
+        ResultList results = sel.finish();
+        assertThat(results.idList(), contains(2L, 1L));
+    }
+
+    @Test
+    public void testSelectTop() {
+        TopNSelector sel = new TopNSelector(3);
+        double[] scores = {0.5, 4.0, 2.5, 3.0, 1.0, 4.5, 0.1};
+        for (int i = 0; i < scores.length; i++) {
+            sel.add(i, scores[i]);
+        }
+        ResultList results = sel.finish();
+        assertThat(results.idList(), contains(5L, 1L, 3L));
+        assertThat(results.get(0).getScore(), equalTo(4.5));
+        // the selector is empty again after finishing
+        assertThat(sel.size(), equalTo(0));
+    }
+
+    @Test
+    public void testTiesRankedById() {
+        TopNSelector sel = new TopNSelector(2);
+        sel.add(7, 1.0);
+        sel.add(3, 1.0);
+        sel.add(5, 1.0);
+        assertThat(sel.finish().idList(), contains(3L, 5L));
+    }
+
+    @Test
+    public void testNegativeKeepsAll() {
+        TopNSelector sel = new TopNSelector(-1);
+        for (int i = 0; i < 40; i++) {
+            sel.add(i, i % 7);
+        }
+        ResultList results = sel.finish();
+        assertThat(results.size(), equalTo(40));
+        for (int i = 1; i < results.size(); i++) {
+            assertThat(results.get(i - 1).getScore() >= results.get(i).getScore(), equalTo(true));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.ResultList;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class AssociationItemBasedItemRecommenderTest {
+    private SortedKeyIndex index;
+    private double[][] rows;
+
+    @Before
+    public void createRows() {
+        index = SortedKeyIndex.create(10, 20, 30, 40);
+        rows = new double[][]{
+                {1.0, 0.5, 0.25, 0.75},
+                {0.1, 1.0, 0.0, 0.2},
+                {0.3, 0.3, 1.0, 0.3},
+                {0.0, 0.0, 0.0, 1.0}
+        };
+    }
+
+    private AssociationItemBasedItemRecommender create(int nnbrs, String agg) {
+        AssociationModelBuilder builder = new AssociationModelBuilder(index, nnbrs);
+        for (int i = 0; i < rows.length; i++) {
+            builder.setRow(i, rows[i]);
+        }
+        return new AssociationItemBasedItemRecommender(builder.build(), agg);
+    }
+
+    private ResultList recommend(AssociationItemBasedItemRecommender rec, Long... basket) {
+        return rec.recommendRelatedItemsWithDetails(ImmutableSet.copyOf(basket), -1, null, null);
+    }
+
+    @Test
+    public void testDenseSum() {
+        ResultList results = recommend(create(0, "sum"), 10L, 30L);
+        assertThat(results.idList(), contains(40L, 20L));
+        assertThat(results.get(0).getScore(), closeTo(1.05, 1.0e-6));
+        assertThat(results.get(1).getScore(), closeTo(0.8, 1.0e-6));
+    }
+
+    @Test
+    public void testDenseMax() {
+        ResultList results = recommend(create(0, "max"), 10L, 20L);
+        assertThat(results.idList(), contains(40L, 30L));
+        assertThat(results.get(0).getScore(), closeTo(0.75, 1.0e-6));
+        assertThat(results.get(1).getScore(), closeTo(0.25, 1.0e-6));
+    }
+
+    @Test
+    public void testDenseMean() {
+        ResultList results = recommend(create(0, "mean"), 10L, 20L);
+        assertThat(results.idList(), contains(40L, 30L));
+        assertThat(results.get(0).getScore(), closeTo(0.475, 1.0e-6));
+        assertThat(results.get(1).getScore(), closeTo(0.125, 1.0e-6));
+    }
+
+    @Test
+    public void testThreeItemBasket() {
+        ResultList results = recommend(create(0, "sum"), 10L, 20L, 30L);
+        assertThat(results.idList(), contains(40L));
+        assertThat(results.get(0).getScore(), closeTo(1.25, 1.0e-6));
+    }
+
+    @Test
+    public void testExcludesBasketCandidates() {
+        AssociationItemBasedItemRecommender rec = create(0, "sum");
+        ResultList results = rec.recommendRelatedItemsWithDetails(ImmutableSet.of(10L, 20L), -1,
+                                                                  ImmutableSet.of(10L, 20L, 30L, 40L), null);
+        assertThat(results.idList(), contains(40L, 30L));
+    }
+
+    @Test
+    public void testUnknownBasketItems() {
+        // the unknown item is not counted in the mean
+        ResultList results = recommend(create(0, "mean"), 10L, 99L);
+        assertThat(results.idList(), contains(40L, 20L, 30L));
+        assertThat(results.get(0).getScore(), closeTo(0.75, 1.0e-6));
+        assertThat(recommend(create(0, "mean"), 98L, 99L), empty());
+    }
+
+    @Test
+    public void testSparseSum() {
+        // 40 is pruned from the row of 30, so it only gets its association with 10
+        ResultList results = recommend(create(2, "sum"), 10L, 30L);
+        assertThat(results.idList(), contains(20L, 40L));
+        assertThat(results.get(0).getScore(), closeTo(0.8, 1.0e-6));
+        assertThat(results.get(1).getScore(), closeTo(0.75, 1.0e-6));
+    }
+
+    @Test
+    public void testSparseMax() {
+        ResultList results = recommend(create(2, "max"), 10L, 30L);
+        assertThat(results.idList(), contains(40L, 20L));
+        assertThat(results.get(0).getScore(), closeTo(0.75, 1.0e-6));
+        assertThat(results.get(1).getScore(), closeTo(0.5, 1.0e-6));
+    }
+
+    @Test
+    public void testSparseMean() {
+        ResultList results = recommend(create(2, "mean"), 10L, 30L);
+        assertThat(results.idList(), contains(20L, 40L));
+        assertThat(results.get(0).getScore(), closeTo(0.4, 1.0e-6));
+        assertThat(results.get(1).getScore(), closeTo(0.375, 1.0e-6));
+    }
+
+    @Test
+    public void testSparseDropsPrunedItems() {
+        // 30 is pruned from the rows of both 10 and 20
+        ResultList results = recommend(create(2, "sum"), 10L, 20L);
+        assertThat(results.idList(), contains(40L));
+        assertThat(results.get(0).getScore(), closeTo(0.95, 1.0e-6));
+    }
+
+    @Test
+    public void testSparseSingleItemRow() {
+        ResultList results = recommend(create(2, "sum"), 10L);
+        assertThat(results.idList(), contains(40L, 20L));
+        assertThat(results.get(1).getScore(), closeTo(0.5, 1.0e-6));
+    }
+}
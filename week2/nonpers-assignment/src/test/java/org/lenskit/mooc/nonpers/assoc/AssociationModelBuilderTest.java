@@ -0,0 +1,68 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class AssociationModelBuilderTest {
+    private SortedKeyIndex index;
+    private double[][] rows;
+
+    @Before
+    public void createRows() {
+        index = SortedKeyIndex.create(10, 20, 30, 40);
+        rows = new double[][]{
+                {1.0, 0.5, 0.25, 0.75},
+                {0.1, 1.0, 0.0, 0.2},
+                {0.3, 0.3, 1.0, 0.3},
+                {0.0, 0.0, 0.0, 1.0}
+        };
+    }
+
+    private AssociationModel build(int nnbrs) {
+        AssociationModelBuilder builder = new AssociationModelBuilder(index, nnbrs);
+        for (int i = 0; i < rows.length; i++) {
+            builder.setRow(i, rows[i]);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testDenseKeepsAllPairs() {
+        AssociationModel model = build(0);
+        assertThat(model.isSparse(), equalTo(false));
+        assertThat(model.getItemAssociation(10, 20), closeTo(0.5, 1.0e-6));
+        assertThat(model.getItemAssociation(10, 30), closeTo(0.25, 1.0e-6));
+        assertThat(model.getItemAssociation(10, 10), closeTo(0, 1.0e-6));
+    }
+
+    @Test
+    public void testSparseKeepsTopRow() {
+        AssociationModel model = build(2);
+        assertThat(model.isSparse(), equalTo(true));
+        int ref = index.getIndex(10);
+        assertThat(model.getRowEnd(ref) - model.getRowStart(ref), equalTo(2));
+        // ranked in decreasing order, without the self-association
+        assertThat(index.getKey(model.getNeighbor(model.getRowStart(ref))), equalTo(40L));
+        assertThat(index.getKey(model.getNeighbor(model.getRowStart(ref) + 1)), equalTo(20L));
+        assertThat(model.getItemAssociation(10, 40), closeTo(0.75, 1.0e-6));
+        // pruned pair
+        assertThat(model.getItemAssociation(10, 30), closeTo(0, 1.0e-6));
+    }
+
+    @Test
+    public void testSparseTiesAndZeros() {
+        AssociationModel model = build(2);
+        // ties are broken by item
+        int ref = index.getIndex(30);
+        assertThat(index.getKey(model.getNeighbor(model.getRowStart(ref))), equalTo(10L));
+        assertThat(index.getKey(model.getNeighbor(model.getRowStart(ref) + 1)), equalTo(20L));
+        // zero scores are not stored
+        ref = index.getIndex(40);
+        assertThat(model.getRowEnd(ref), equalTo(model.getRowStart(ref)));
+    }
+}
@@ -0,0 +1,89 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lenskit.mooc.nonpers.mean.ItemMeanModel;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class AssociationModelFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AssociationModel build(int nnbrs) {
+        SortedKeyIndex index = SortedKeyIndex.create(10, 20, 30);
+        double[][] rows = {
+                {1.0, 0.5, 0.25},
+                {0.1, 1.0, 0.0},
+                {0.3, 0.6, 1.0}
+        };
+        AssociationModelBuilder builder = new AssociationModelBuilder(index, nnbrs);
+        for (int i = 0; i < rows.length; i++) {
+            builder.setRow(i, rows[i]);
+        }
+        return builder.build();
+    }
+
+    private AssociationModel roundTrip(AssociationModel model) throws IOException {
+        Path file = folder.newFile().toPath();
+        model.writeTo(file);
+        return AssociationModel.map(file);
+    }
+
+    private void checkSameScores(AssociationModel expected, AssociationModel actual) {
+        assertThat(actual.isSparse(), equalTo(expected.isSparse()));
+        assertThat(actual.getKnownItems(), containsInAnyOrder(expected.getKnownItems().toArray()));
+        for (long x: expected.getKnownItems()) {
+            for (long y: expected.getKnownItems()) {
+                assertThat(actual.getItemAssociation(x, y),
+                           closeTo(expected.getItemAssociation(x, y), 1.0e-9));
+            }
+        }
+    }
+
+    @Test
+    public void testMapDenseModel() throws IOException {
+        AssociationModel model = build(0);
+        checkSameScores(model, roundTrip(model));
+    }
+
+    @Test
+    public void testMapSparseModel() throws IOException {
+        AssociationModel model = build(1);
+        AssociationModel mapped = roundTrip(model);
+        checkSameScores(model, mapped);
+        assertThat(mapped.getItemAssociation(30, 20), closeTo(0.6, 1.0e-6));
+        assertThat(mapped.getItemAssociation(30, 10), closeTo(0, 1.0e-6));
+    }
+
+    @Test
+    public void testSerializeMappedModel() throws IOException, ClassNotFoundException {
+        AssociationModel mapped = roundTrip(build(1));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(mapped);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            checkSameScores(mapped, (AssociationModel) in.readObject());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectOtherFiles() throws IOException {
+        Path file = folder.newFile().toPath();
+        build(0).writeTo(file);
+        ItemMeanModel.map(file);
+    }
+}
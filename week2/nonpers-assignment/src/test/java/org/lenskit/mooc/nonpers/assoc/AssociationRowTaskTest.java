@@ -0,0 +1,62 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.junit.Test;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class AssociationRowTaskTest {
+    private static AssociationModel build(final ItemCooccurrence cooc, int nnbrs, int threads) {
+        AssociationModelBuilder builder = new AssociationModelBuilder(cooc.getItemIndex(), nnbrs);
+        AssociationRowTask.computeRows(cooc, new AssociationRowScorer() {
+            @Override
+            public void scoreRow(int x, int[] counts, double[] scores) {
+                for (int y = 0; y < counts.length; y++) {
+                    scores[y] = counts[y] / (double) cooc.getItemUserCount(x);
+                }
+            }
+        }, builder, threads);
+        return builder.build();
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        Random rng = new Random(99);
+        Long2ObjectMap<LongSortedSet> itemUsers = new Long2ObjectOpenHashMap<>();
+        for (long item = 0; item < 200; item++) {
+            LongArrayList users = new LongArrayList();
+            int n = 1 + rng.nextInt(50);
+            for (int k = 0; k < n; k++) {
+                users.add(rng.nextInt(300));
+            }
+            itemUsers.put(item, LongUtils.frozenSet(users));
+        }
+        ItemCooccurrence cooc = ItemCooccurrence.create(itemUsers);
+        SortedKeyIndex idx = cooc.getItemIndex();
+
+        for (int nnbrs: new int[]{0, 10}) {
+            AssociationModel serial = build(cooc, nnbrs, 1);
+            AssociationModel parallel = build(cooc, nnbrs, 4);
+            for (int x = 0; x < idx.size(); x++) {
+                for (int y = 0; y < idx.size(); y++) {
+                    long xid = idx.getKey(x), yid = idx.getKey(y);
+                    assertThat(parallel.getItemAssociation(xid, yid),
+                               equalTo(serial.getItemAssociation(xid, yid)));
+                }
+                if (nnbrs > 0) {
+                    for (int i = serial.getRowStart(x); i < serial.getRowEnd(x); i++) {
+                        assertThat(parallel.getNeighbor(i), equalTo(serial.getNeighbor(i)));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.lenskit.util.collections.LongUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the bitmap co-occurrence counts against the nested-loop set probing the association
+ * providers used to do.  Each invocation computes the intersection counts for one row of X items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CooccurrenceBenchmark {
+    @Param({"1000", "5000"})
+    public int itemCount;
+
+    @Param({"10000"})
+    public int userCount;
+
+    private Long2ObjectMap<LongSortedSet> itemUsers;
+    private long[] itemIds;
+    private ItemCooccurrence cooccurrence;
+    private int[] counts;
+    private int row;
+
+    /**
+     * Generate synthetic ratings with a skewed (roughly Zipfian) item popularity.
+     */
+    @Setup
+    public void createData() {
+        Random rng = new Random(42);
+        itemUsers = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < itemCount; i++) {
+            int nratings = Math.max(1, (int) (userCount * 0.3 / (i + 1)) + rng.nextInt(20));
+            LongArrayList users = new LongArrayList(nratings);
+            for (int k = 0; k < nratings; k++) {
+                users.add(rng.nextInt(userCount));
+            }
+            itemUsers.put(i, LongUtils.frozenSet(users));
+        }
+        cooccurrence = ItemCooccurrence.create(itemUsers);
+        itemIds = cooccurrence.getItemIndex().getKeyList().toLongArray();
+        counts = new int[itemCount];
+    }
+
+    @Setup(Level.Invocation)
+    public void pickRow() {
+        row = (row + 1) % itemCount;
+    }
+
+    @Benchmark
+    public int nestedLoop() {
+        LongSortedSet xUsers = itemUsers.get(itemIds[row]);
+        int total = 0;
+        for (long yId: itemIds) {
+            LongSortedSet yUsers = itemUsers.get(yId);
+            int intersectionCount = 0;
+            for (long xUserId: xUsers) {
+                if (yUsers.contains(xUserId)) intersectionCount++;
+            }
+            total += intersectionCount;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int bitmap() {
+        cooccurrence.getIntersectionCounts(row, counts);
+        int total = 0;
+        for (int c: counts) {
+            total += c;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,63 @@
+package org.lenskit.mooc.nonpers.assoc;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.junit.Test;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ItemCooccurrenceTest {
+    @Test
+    public void testSmallCounts() {
+        Long2ObjectMap<LongSortedSet> itemUsers = new Long2ObjectOpenHashMap<>();
+        itemUsers.put(10, LongUtils.packedSet(1, 2, 3));
+        itemUsers.put(20, LongUtils.packedSet(2, 3, 400));
+        itemUsers.put(30, LongUtils.packedSet(400));
+
+        ItemCooccurrence cooc = ItemCooccurrence.create(itemUsers);
+        SortedKeyIndex idx = cooc.getItemIndex();
+        assertThat(cooc.getUserCount(), equalTo(4));
+        assertThat(cooc.getItemUserCount(idx.getIndex(10)), equalTo(3));
+        assertThat(cooc.getIntersectionCount(idx.getIndex(10), idx.getIndex(20)), equalTo(2));
+        assertThat(cooc.getIntersectionCount(idx.getIndex(20), idx.getIndex(30)), equalTo(1));
+        assertThat(cooc.getIntersectionCount(idx.getIndex(10), idx.getIndex(30)), equalTo(0));
+    }
+
+    @Test
+    public void testMatchesNestedLoop() {
+        Random rng = new Random(17);
+        Long2ObjectMap<LongSortedSet> itemUsers = new Long2ObjectOpenHashMap<>();
+        for (long item = 0; item < 50; item++) {
+            LongArrayList users = new LongArrayList();
+            int n = 1 + rng.nextInt(200);
+            for (int k = 0; k < n; k++) {
+                users.add(rng.nextInt(1000));
+            }
+            itemUsers.put(item, LongUtils.frozenSet(users));
+        }
+
+        ItemCooccurrence cooc = ItemCooccurrence.create(itemUsers);
+        SortedKeyIndex idx = cooc.getItemIndex();
+        int[] counts = new int[idx.size()];
+        for (int x = 0; x < idx.size(); x++) {
+            LongSortedSet xUsers = itemUsers.get(idx.getKey(x));
+            assertThat(cooc.getItemUserCount(x), equalTo(xUsers.size()));
+            cooc.getIntersectionCounts(x, counts);
+            for (int y = 0; y < idx.size(); y++) {
+                LongSortedSet yUsers = itemUsers.get(idx.getKey(y));
+                int expected = 0;
+                for (long u: xUsers) {
+                    if (yUsers.contains(u)) expected++;
+                }
+                assertThat(counts[y], equalTo(expected));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ItemMeanModelFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ItemMeanModel model = new ItemMeanModel(ImmutableMap.of(5L, 3.0, 2L, 4.5, 9L, 2.0));
+
+    private void checkModel(ItemMeanModel actual) {
+        assertThat(actual.getKnownItems(), containsInAnyOrder(2L, 5L, 9L));
+        assertThat(actual.getMeanRating(5), closeTo(3.0, 1.0e-9));
+        assertThat(actual.getRankedItemCount(), equalTo(3));
+        assertThat(actual.getRankedItem(0), equalTo(2L));
+        assertThat(actual.getRankedItem(2), equalTo(9L));
+        assertThat(actual.getRankedMean(1), closeTo(3.0, 1.0e-9));
+    }
+
+    @Test
+    public void testMapModel() throws IOException {
+        Path file = folder.newFile().toPath();
+        model.writeTo(file);
+        checkModel(ItemMeanModel.map(file));
+    }
+
+    @Test
+    public void testSerializeModel() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            checkModel((ItemMeanModel) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.data.entities.EntityFactory;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ItemRatingAccumulatorTest {
+    private EntityFactory factory = new EntityFactory();
+    private ItemRatingAccumulator accumulator;
+
+    @Before
+    public void addRatings() {
+        accumulator = new ItemRatingAccumulator();
+        accumulator.add(10, 4.0);
+        accumulator.add(20, 2.0);
+        accumulator.add(10, 5.0);
+        accumulator.add(30, 3.0);
+        accumulator.add(20, 1.0);
+        accumulator.add(10, 3.0);
+    }
+
+    @Test
+    public void testMeans() {
+        ItemMeanModel model = accumulator.buildModel();
+        assertThat(accumulator.size(), equalTo(3));
+        assertThat(model.getKnownItems(), containsInAnyOrder(10L, 20L, 30L));
+        assertThat(model.getMeanRating(10), closeTo(4.0, 1.0e-6));
+        assertThat(model.getMeanRating(20), closeTo(1.5, 1.0e-6));
+        assertThat(model.getMeanRating(30), closeTo(3.0, 1.0e-6));
+    }
+
+    @Test
+    public void testRankingFromUnsortedItems() {
+        // items are interned in the order 10, 20, 30 here; add them out of ID order too
+        accumulator.add(5, 3.5);
+        ItemMeanModel model = accumulator.buildModel();
+        assertThat(model.getRankedItemCount(), equalTo(4));
+        assertThat(model.getRankedItem(0), equalTo(10L));
+        assertThat(model.getRankedItem(1), equalTo(5L));
+        assertThat(model.getRankedItem(2), equalTo(30L));
+        assertThat(model.getRankedItem(3), equalTo(20L));
+        assertThat(model.getRankedMean(1), closeTo(3.5, 1.0e-6));
+    }
+
+    @Test
+    public void testDampedMeans() {
+        ItemMeanModel model = accumulator.buildDampedModel(2);
+        assertThat(accumulator.getGlobalMean(), closeTo(3.0, 1.0e-6));
+        assertThat(model.getMeanRating(10), closeTo((12.0 + 6.0) / 5, 1.0e-6));
+        assertThat(model.getMeanRating(30), closeTo((3.0 + 6.0) / 3, 1.0e-6));
+    }
+
+    @Test
+    public void testManyItems() {
+        ItemRatingAccumulator acc = new ItemRatingAccumulator();
+        for (long item = 0; item < 1000; item++) {
+            acc.add(item, item % 5);
+            acc.add(item, 1);
+        }
+        ItemMeanModel model = acc.buildModel();
+        assertThat(acc.size(), equalTo(1000));
+        assertThat(model.getMeanRating(999), closeTo((999 % 5 + 1) / 2.0, 1.0e-6));
+    }
+
+    @Test
+    public void testApplyDelta() {
+        RatingDelta delta = RatingDelta.newBuilder()
+                                       .updateRating(factory.rating(1, 10, 3.0), factory.rating(1, 10, 1.0))
+                                       .removeRating(factory.rating(2, 30, 3.0))
+                                       .addRating(factory.rating(3, 40, 5.0))
+                                       .build();
+        assertThat(delta.size(), equalTo(4));
+        accumulator.apply(delta);
+
+        ItemMeanModel model = accumulator.buildModel();
+        assertThat(model.getKnownItems(), containsInAnyOrder(10L, 20L, 40L));
+        assertThat(model.getKnownItems(), not(hasItem(30L)));
+        assertThat(model.getMeanRating(10), closeTo(10.0 / 3, 1.0e-6));
+        assertThat(model.getMeanRating(40), closeTo(5.0, 1.0e-6));
+        assertThat(accumulator.getGlobalMean(), closeTo(18.0 / 6, 1.0e-6));
+
+        // the removed item can come back
+        accumulator.add(30, 2.0);
+        assertThat(accumulator.buildModel().getMeanRating(30), closeTo(2.0, 1.0e-6));
+    }
+
+    @Test
+    public void testFailedDeltaChangesNothing() {
+        // 30 has only one rating, so the second removal fails after the first would have been applied
+        RatingDelta delta = RatingDelta.newBuilder()
+                                       .removeRating(factory.rating(1, 10, 4.0))
+                                       .removeRating(factory.rating(2, 30, 3.0))
+                                       .removeRating(factory.rating(3, 30, 3.0))
+                                       .addRating(factory.rating(4, 40, 5.0))
+                                       .build();
+        try {
+            accumulator.apply(delta);
+            fail("removing too many ratings should fail");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        ItemMeanModel model = accumulator.buildModel();
+        assertThat(model.getKnownItems(), containsInAnyOrder(10L, 20L, 30L));
+        assertThat(model.getMeanRating(10), closeTo(4.0, 1.0e-6));
+        assertThat(model.getMeanRating(30), closeTo(3.0, 1.0e-6));
+        assertThat(accumulator.getGlobalMean(), closeTo(3.0, 1.0e-6));
+    }
+
+    @Test
+    public void testRemoveAllRatings() {
+        ItemRatingAccumulator acc = new ItemRatingAccumulator();
+        assertThat(acc.getGlobalMean(), equalTo(0.0));
+        acc.add(10, 4.0);
+        acc.apply(RatingDelta.newBuilder().removeRating(factory.rating(1, 10, 4.0)).build());
+        assertThat(acc.getGlobalMean(), equalTo(0.0));
+        assertThat(acc.buildDampedModel(2).getKnownItems(), empty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemoveUnknownItem() {
+        accumulator.remove(50, 3.0);
+    }
+}
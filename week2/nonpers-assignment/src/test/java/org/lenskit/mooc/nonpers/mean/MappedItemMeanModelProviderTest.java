@@ -0,0 +1,57 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MappedItemMeanModelProviderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityFactory factory = new EntityFactory();
+    private DataAccessObject dao;
+
+    @Before
+    public void createData() {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(Arrays.asList(factory.rating(1, 10, 4.0),
+                                     factory.rating(2, 10, 2.0),
+                                     factory.rating(1, 20, 5.0)));
+        dao = data.get();
+    }
+
+    @Test
+    public void testBuildsMissingFile() {
+        File file = new File(folder.getRoot(), "models/means.bin");
+        ItemMeanModel model = new MappedItemMeanModelProvider(file.getPath(), new ItemMeanModelProvider(dao)).get();
+        assertThat(file.exists(), equalTo(true));
+        assertThat(model.getKnownItems(), containsInAnyOrder(10L, 20L));
+        assertThat(model.getMeanRating(10), closeTo(3.0, 1.0e-9));
+        assertThat(model.getRankedItem(0), equalTo(20L));
+        // only the model file is left behind
+        assertThat(file.getParentFile().list().length, equalTo(1));
+    }
+
+    @Test
+    public void testMapsExistingFile() throws Exception {
+        File file = folder.newFile("means.bin");
+        new ItemMeanModel(Collections.singletonMap(30L, 1.5)).writeTo(file.toPath());
+        // the existing file is used, not the ratings
+        ItemMeanModel model = new MappedItemMeanModelProvider(file.getPath(), new ItemMeanModelProvider(dao)).get();
+        assertThat(model.getKnownItems(), containsInAnyOrder(30L));
+        assertThat(model.getMeanRating(30), closeTo(1.5, 1.0e-9));
+    }
+}
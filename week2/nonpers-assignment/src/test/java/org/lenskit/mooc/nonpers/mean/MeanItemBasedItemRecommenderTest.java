@@ -0,0 +1,46 @@
+package org.lenskit.mooc.nonpers.mean;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.ResultList;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+public class MeanItemBasedItemRecommenderTest {
+    private MeanItemBasedItemRecommender recommender;
+
+    @Before
+    public void createRecommender() {
+        ItemMeanModel model = new ItemMeanModel(ImmutableMap.of(1L, 3.0, 2L, 4.5, 3L, 2.0, 4L, 4.5, 5L, 3.5));
+        recommender = new MeanItemBasedItemRecommender(model);
+    }
+
+    @Test
+    public void testRankingOrder() {
+        ResultList results = recommender.recommendRelatedItemsWithDetails(Collections.<Long>emptySet(), -1, null, null);
+        assertThat(results.idList(), contains(2L, 4L, 5L, 1L, 3L));
+        assertThat(results.get(0).getScore(), closeTo(4.5, 1.0e-6));
+    }
+
+    @Test
+    public void testExcludeFromRanking() {
+        ResultList results = recommender.recommendRelatedItemsWithDetails(Collections.<Long>emptySet(), 2, null,
+                                                                          ImmutableSet.of(4L, 5L));
+        assertThat(results, hasSize(2));
+        assertThat(results.idList(), contains(2L, 1L));
+    }
+
+    @Test
+    public void testCandidatesMatchRanking() {
+        ResultList results = recommender.recommendRelatedItemsWithDetails(Collections.<Long>emptySet(), 3,
+                                                                          ImmutableSet.of(1L, 3L, 4L, 9L), null);
+        assertThat(results.idList(), contains(4L, 1L, 3L));
+    }
+}
@@ -0,0 +1,11 @@
+import org.lenskit.api.ItemRecommender
+import org.lenskit.mooc.cbf.TFIDFItemScorer
+import org.lenskit.mooc.cbf.TFIDFLSHItemRecommender
+import org.lenskit.mooc.cbf.UserProfileBuilder
+import org.lenskit.mooc.cbf.WeightedUserProfileBuilder
+import org.lenskit.api.ItemScorer
+
+bind ItemScorer to TFIDFItemScorer
+// recommend from LSH candidates instead of scoring every item
+bind ItemRecommender to TFIDFLSHItemRecommender
+bind UserProfileBuilder to WeightedUserProfileBuilder
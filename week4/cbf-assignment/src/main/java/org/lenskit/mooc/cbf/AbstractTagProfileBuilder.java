@@ -0,0 +1,33 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for {@linkplain TagProfileBuilder tag profile builders}, which implements the map-returning
+ * {@link #makeUserProfile(List)} by building into a fresh {@link TagProfile}.
+ */
+public abstract class AbstractTagProfileBuilder implements TagProfileBuilder {
+    /**
+     * The tag model, to get item tag vectors.
+     */
+    protected final TFIDFModel model;
+
+    /**
+     * Construct a new profile builder.
+     * @param m The tag model.
+     */
+    protected AbstractTagProfileBuilder(TFIDFModel m) {
+        model = m;
+    }
+
+    @Override
+    public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
+        TagProfile profile = new TagProfile(model.getTagDictionary());
+        buildTagProfile(ratings, profile);
+        return profile.toTagMap();
+    }
+}
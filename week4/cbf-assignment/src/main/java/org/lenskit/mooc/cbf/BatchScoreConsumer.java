@@ -0,0 +1,15 @@
+package org.lenskit.mooc.cbf;
+
+/**
+ * Receives scores from a {@link TFIDFBatchScorer}.  Batch scoring calls the consumer from several threads at
+ * once, so implementations must be thread-safe.
+ */
+public interface BatchScoreConsumer {
+    /**
+     * Receive a score.
+     * @param user The user ID.
+     * @param item The item ID.
+     * @param score The item's score for the user.
+     */
+    void score(long user, long item, double score);
+}
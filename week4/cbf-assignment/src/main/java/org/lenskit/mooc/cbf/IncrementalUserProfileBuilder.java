@@ -0,0 +1,12 @@
+package org.lenskit.mooc.cbf;
+
+/**
+ * A user profile builder whose profiles can be updated incrementally as new ratings arrive.
+ */
+public interface IncrementalUserProfileBuilder extends TagProfileBuilder {
+    /**
+     * Create an accumulator for a new, empty profile.
+     * @return The profile accumulator.
+     */
+    UserProfileAccumulator newAccumulator();
+}
@@ -0,0 +1,22 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of random hyperplanes, and so of signature bits, in each table of the
+ * {@linkplain TFIDFLSHIndex LSH index}.  More bits make smaller buckets and fewer candidates: each probed bucket
+ * holds about {@code 2^-bits} of a uniformly hashed catalog.  The default suits a catalog of a few thousand
+ * items.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(8)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LSHHashBits {
+}
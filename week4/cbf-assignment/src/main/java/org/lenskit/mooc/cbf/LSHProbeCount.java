@@ -0,0 +1,23 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of extra buckets that a query probes in each table of the {@linkplain TFIDFLSHIndex LSH index}.
+ * Each extra bucket differs from the query's own bucket in one bit, and the bits are the ones whose hyperplanes
+ * the query is closest to.  With 0, only the query's own bucket is probed.  The candidates are then at most
+ * {@code tables * (probes + 1) / 2^bits} of a uniformly hashed catalog, so this should stay well below the number
+ * of bits.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(1)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LSHProbeCount {
+}
@@ -0,0 +1,21 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of hash tables in the {@linkplain TFIDFLSHIndex LSH index}.  More tables find more of the true
+ * nearest neighbors, at the cost of more candidates to score.  With the default {@linkplain LSHHashBits bits}
+ * and {@linkplain LSHProbeCount probes}, the candidates are at most a quarter of a uniformly hashed catalog.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(32)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LSHTableCount {
+}
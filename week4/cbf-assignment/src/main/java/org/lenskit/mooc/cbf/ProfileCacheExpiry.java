@@ -0,0 +1,21 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of seconds a cached user profile is kept after it is built or last updated.
+ *
+ * @see UserProfileCache
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(600)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ProfileCacheExpiry {
+}
@@ -0,0 +1,21 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The maximum number of user profiles to cache.  If this is 0, profiles are not cached.
+ *
+ * @see UserProfileCache
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(10000)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ProfileCacheSize {
+}
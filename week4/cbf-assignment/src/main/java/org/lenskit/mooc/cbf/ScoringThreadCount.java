@@ -0,0 +1,22 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of threads to use for batch scoring.  If this is 1 or less, users are scored on the
+ * calling thread.
+ *
+ * @see TFIDFBatchScorer
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(1)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ScoringThreadCount {
+}
@@ -0,0 +1,236 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Score many users at once with the TF-IDF cosine of {@link TFIDFItemScorer}, for offline jobs.
+ *
+ * <p>Users are scored in blocks.  For each block, the users' profiles are built into a sparse user &times; tag
+ * matrix in compressed sparse row form, and the cosines are computed as the product of that matrix with the
+ * model's tag &times; item {@linkplain TagInvertedIndex inverted index}, one user row at a time into a dense
+ * accumulator over the items.  Each thread reuses one accumulator and profile buffer, and after each user only
+ * the accumulator entries that the user's tags touched are reset.  Blocks are scored on several {@linkplain ScoringThreadCount threads}, and scores
+ * are passed to a {@link BatchScoreConsumer} as they are computed instead of being collected per user.</p>
+ *
+ * <p>Profiles are built directly with the {@link UserProfileBuilder}, bypassing the {@link UserProfileCache}, so
+ * batch jobs do not evict the profiles of interactive users.</p>
+ */
+public class TFIDFBatchScorer {
+    private static final Logger logger = LoggerFactory.getLogger(TFIDFBatchScorer.class);
+    private static final int BLOCK_SIZE = 256;
+
+    private final DataAccessObject dao;
+    private final TFIDFModel model;
+    private final UserProfileBuilder profileBuilder;
+    private final int threadCount;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Construct a new batch scorer.
+     *
+     * @param dao The data access object, for looking up users' ratings.
+     * @param m   The precomputed model containing the item tag vectors.
+     * @param upb The user profile builder for building user tag profiles.
+     * @param nthreads The number of threads to score with.
+     */
+    @Inject
+    public TFIDFBatchScorer(DataAccessObject dao, TFIDFModel m, UserProfileBuilder upb,
+                            @ScoringThreadCount int nthreads) {
+        this.dao = dao;
+        model = m;
+        profileBuilder = upb;
+        threadCount = nthreads;
+    }
+
+    /**
+     * Score a set of items for a set of users.  Scores are delivered to the consumer in no particular order.
+     * As with {@link TFIDFItemScorer}, pairs whose cosine is undefined, because the user's profile is empty or
+     * the item has no tags, are not scored.
+     *
+     * @param users The users to score for.
+     * @param items The items to score for each user.
+     * @param consumer The consumer to receive the scores.
+     */
+    public void score(LongCollection users, LongCollection items, final BatchScoreConsumer consumer) {
+        // resolve the candidate items once, dropping items the model cannot score
+        SortedKeyIndex index = model.getItemIndex();
+        IntArrayList candidateList = new IntArrayList(items.size());
+        for (long item: items) {
+            int idx = index.tryGetIndex(item);
+            if (idx >= 0 && model.getItemNorm(idx) > 0) {
+                candidateList.add(idx);
+            }
+        }
+        final int[] candidates = candidateList.toIntArray();
+
+        final long[] userIds = new LongArrayList(users).toLongArray();
+        logger.info("scoring {} items for {} users with {} threads",
+                    candidates.length, userIds.length, Math.max(threadCount, 1));
+
+        if (threadCount <= 1) {
+            for (int start = 0; start < userIds.length; start += BLOCK_SIZE) {
+                scoreBlock(userIds, start, Math.min(userIds.length, start + BLOCK_SIZE), candidates, consumer);
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int start = 0; start < userIds.length; start += BLOCK_SIZE) {
+                final int bstart = start;
+                final int bend = Math.min(userIds.length, start + BLOCK_SIZE);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        scoreBlock(userIds, bstart, bend, candidates, consumer);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> f: pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted scoring users", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("error scoring users", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Score a block of users.
+     *
+     * @param userIds The user IDs.
+     * @param start The start of the block in {@code userIds}.
+     * @param end The end of the block in {@code userIds}.
+     * @param candidates The indexes of the items to score.
+     * @param consumer The consumer to receive the scores.
+     */
+    private void scoreBlock(long[] userIds, int start, int end, int[] candidates, BatchScoreConsumer consumer) {
+        Scratch buffers = scratch.get();
+        float[] acc = buffers.accumulator;
+        ProfileMatrix profiles = buildProfiles(userIds, start, end, buffers.profile);
+        for (int row = 0; row < profiles.size(); row++) {
+            int rstart = profiles.rowOffsets[row], rend = profiles.rowOffsets[row + 1];
+            try {
+                for (int k = rstart; k < rend; k++) {
+                    model.accumulateTag(profiles.tagIds[k], profiles.weights[k], acc);
+                }
+                long user = profiles.userIds[row];
+                double userNorm = profiles.norms[row];
+                for (int idx: candidates) {
+                    consumer.score(user, model.getItemIndex().getKey(idx),
+                                   acc[idx] / (model.getItemNorm(idx) * userNorm));
+                }
+            } finally {
+                // reset only the items the user's tags touched, so the accumulator is clean for the next user
+                for (int k = rstart; k < rend; k++) {
+                    model.clearTag(profiles.tagIds[k], acc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the profiles of a block of users into a user &times; tag matrix.  Users with empty profiles are
+     * left out.
+     */
+    private ProfileMatrix buildProfiles(long[] userIds, int start, int end, TagProfile profile) {
+        ProfileMatrix matrix = new ProfileMatrix(end - start);
+        IntArrayList tags = new IntArrayList();
+        float[] weights = new float[64];
+        for (int u = start; u < end; u++) {
+            List<Rating> ratings = dao.query(Rating.class)
+                                      .withAttribute(CommonAttributes.USER_ID, userIds[u])
+                                      .get();
+            if (profileBuilder instanceof TagProfileBuilder) {
+                ((TagProfileBuilder) profileBuilder).buildTagProfile(ratings, profile);
+            } else {
+                profile.clear();
+                profile.add(profileBuilder.makeUserProfile(ratings));
+            }
+            for (int i = 0, n = profile.size(); i < n; i++) {
+                int t = profile.getTagId(i);
+                float v = (float) profile.get(t);
+                if (v != 0) {
+                    if (tags.size() == weights.length) {
+                        weights = Arrays.copyOf(weights, weights.length * 2);
+                    }
+                    weights[tags.size()] = v;
+                    tags.add(t);
+                }
+            }
+            double norm = profile.getNorm();
+            if (norm > 0) {
+                matrix.addRow(userIds[u], norm, tags.size());
+            }
+        }
+        matrix.tagIds = tags.toIntArray();
+        matrix.weights = Arrays.copyOf(weights, tags.size());
+        return matrix;
+    }
+
+    /**
+     * Scratch buffers for one scoring thread.
+     */
+    private class Scratch {
+        final float[] accumulator = new float[model.getItemIndex().size()];
+        final TagProfile profile = new TagProfile(model.getTagDictionary());
+    }
+
+    /**
+     * A block of user profiles in compressed sparse row form.
+     */
+    private static class ProfileMatrix {
+        final long[] userIds;
+        final double[] norms;
+        final int[] rowOffsets;
+        int[] tagIds;
+        float[] weights;
+        private int nrows;
+
+        ProfileMatrix(int capacity) {
+            userIds = new long[capacity];
+            norms = new double[capacity];
+            rowOffsets = new int[capacity + 1];
+        }
+
+        void addRow(long user, double norm, int rowEnd) {
+            userIds[nrows] = user;
+            norms[nrows] = norm;
+            nrows += 1;
+            rowOffsets[nrows] = rowEnd;
+        }
+
+        int size() {
+            return nrows;
+        }
+    }
+}
@@ -3,39 +3,40 @@ package org.lenskit.mooc.cbf;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemScorer;
-import org.lenskit.data.dao.DataAccessObject;
-import org.lenskit.data.entities.CommonAttributes;
-import org.lenskit.data.ratings.Rating;
 import org.lenskit.results.Results;
+import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class TFIDFItemScorer extends AbstractItemScorer {
-    private final DataAccessObject dao;
     private final TFIDFModel model;
-    private final UserProfileBuilder profileBuilder;
+    private final UserProfileCache profiles;
+    private final ThreadLocal<float[]> accumulators = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[model.getItemIndex().size()];
+        }
+    };
 
     /**
      * Construct a new item scorer.  LensKit's dependency injector will call this constructor and
      * provide the appropriate parameters.
      *
-     * @param dao The data access object, for looking up users' ratings.
      * @param m   The precomputed model containing the item tag vectors.
-     * @param upb The user profile builder for building user tag profiles.
+     * @param upc The cache of user tag profiles, which builds them with the configured
+     *            {@link UserProfileBuilder}.
      */
     @Inject
-    public TFIDFItemScorer(DataAccessObject dao, TFIDFModel m, UserProfileBuilder upb) {
-        this.dao = dao;
+    public TFIDFItemScorer(TFIDFModel m, UserProfileCache upc) {
         model = m;
-        profileBuilder = upb;
+        profiles = upc;
     }
 
     /**
@@ -48,54 +49,38 @@ public class TFIDFItemScorer extends AbstractItemScorer {
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items){
-        // Get the user's ratings
-        List<Rating> ratings = dao.query(Rating.class)
-                                  .withAttribute(CommonAttributes.USER_ID, user)
-                                  .get();
-
-        if (ratings == null) {
-            // the user doesn't exist, so return an empty ResultMap
-            return Results.newResultMap();
-        }
-
         // Create a place to store the results of our score computations
         List<Result> results = new ArrayList<>();
 
-        // Get the user's profile, which is a vector with their 'like' for each tag
-        Map<String, Double> userVector = profileBuilder.makeUserProfile(ratings);
+        // Get the user's profile, which is a vector with their 'like' for each tag.
+        // If the user doesn't exist, it is empty, and we return an empty ResultMap.
+        TagVector userVector = profiles.getProfileVector(user);
 
-        double denominatorUser = 0d;
-        for(Map.Entry<String, Double> entry : userVector.entrySet()){
-            denominatorUser += Math.pow(entry.getValue(),2);
+        double denominatorUser = userVector.getNorm();
+        if (denominatorUser == 0) {
+            return Results.newResultMap();
         }
 
-        for (Long item: items) {
-            Map<String, Double> iv = model.getItemVector(item);
-
-            double numerator = 0d;
-
-            double denominatorItem = 0d;
-            // TODO Compute the cosine of this item and the user's profile, store it in the output list
-            // If the denominator of the cosine similarity is 0, skip the item
-            for(Map.Entry<String, Double> entry: iv.entrySet()){
-                String tag = entry.getKey();
-                double itemValue = entry.getValue();
-                Double ut = userVector.get(tag);
-                if( ut != null ){
-                    numerator += itemValue*ut;
+        // Compute the numerators for every item in one pass over the postings of the user's tags,
+        // instead of probing the profile with each tag of each candidate.  Each thread reuses one
+        // accumulator, and only the entries the user's tags touched are reset afterwards.
+        SortedKeyIndex index = model.getItemIndex();
+        float[] numerators = accumulators.get();
+        model.accumulateDotProducts(userVector, numerators);
+        try {
+            for (long item: items) {
+                int idx = index.tryGetIndex(item);
+                if (idx < 0) {
+                    continue;
+                }
+                // If the denominator of the cosine similarity is 0, skip the item
+                double denominator = model.getItemNorm(idx) * denominatorUser;
+                if (denominator != 0d) {
+                    results.add(Results.create(item, numerators[idx] / denominator));
                 }
-                denominatorItem += Math.pow(itemValue,2);
-            }
-
-            double denominator = Math.sqrt(denominatorItem)*Math.sqrt(denominatorUser);
-
-            if(denominator != 0d){
-                results.add( Results.create(item, numerator/denominator));
             }
-
-//            if(item == 2231){
-//                System.out.println(iv);
-//            }
+        } finally {
+            model.clearDotProducts(userVector, numerators);
         }
 
         return Results.newResultMap(results);
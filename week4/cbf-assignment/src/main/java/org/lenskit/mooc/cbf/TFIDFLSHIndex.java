@@ -0,0 +1,256 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A random-hyperplane locality-sensitive hash index over the item vectors of a {@link TFIDFModel}, for finding
+ * the items most similar to a user profile without scoring the whole catalog.
+ *
+ * <p>Each of the index's tables hashes a vector to a signature with one bit per random hyperplane: the sign of
+ * the vector's dot product with the hyperplane's normal.  Two vectors get the same bit with probability
+ * {@code 1 - angle / pi}, so items with a high cosine to a query tend to land in the query's bucket.  A query
+ * probes its own bucket in every table, and, for a {@linkplain LSHProbeCount few} of each table's bits, the
+ * bucket with that bit flipped.  The flipped bits are the ones whose hyperplanes the query is closest to, since
+ * its near neighbors are most likely to fall on the other side of those.  The union of the probed buckets is the
+ * candidate set, which should then be scored exactly.</p>
+ *
+ * <p>Hyperplane normals are stored tag-major, so hashing a sparse vector only reads the rows of its tags.  Each
+ * table's buckets are stored as sorted signatures with offsets into an array of item indexes.</p>
+ *
+ * @see TFIDFLSHItemRecommender
+ */
+@Shareable
+@Immutable
+@DefaultProvider(TFIDFLSHIndexProvider.class)
+public class TFIDFLSHIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int itemCount;
+    private final int tableCount;
+    private final int bitCount;
+    private final int probeCount;
+    private final float[] planes;
+    private final int[][] bucketKeys;
+    private final int[][] bucketOffsets;
+    private final int[][] bucketItems;
+    private transient ThreadLocal<CandidateSet> candidateSets = newCandidateSets();
+
+    /**
+     * Construct an index.
+     * @param nitems The number of items in the model's item index.
+     * @param ntables The number of tables.
+     * @param nbits The number of bits per table.
+     * @param nprobes The number of extra buckets to probe in each table.
+     * @param planes The hyperplane normals, as a tag-major matrix with {@code ntables * nbits} columns.
+     * @param keys The sorted signatures of each table's non-empty buckets.
+     * @param offsets For each table, the start of each bucket in the table's items, with a final end offset.
+     * @param items For each table, the item indexes, grouped by bucket.
+     */
+    TFIDFLSHIndex(int nitems, int ntables, int nbits, int nprobes, float[] planes,
+                  int[][] keys, int[][] offsets, int[][] items) {
+        Preconditions.checkArgument(keys.length == ntables && offsets.length == ntables && items.length == ntables,
+                                    "table count mismatch");
+        Preconditions.checkArgument(nprobes >= 0 && nprobes <= nbits, "probe count must be between 0 and %s", nbits);
+        itemCount = nitems;
+        tableCount = ntables;
+        bitCount = nbits;
+        probeCount = nprobes;
+        this.planes = planes;
+        bucketKeys = keys;
+        bucketOffsets = offsets;
+        bucketItems = items;
+    }
+
+    /**
+     * Get the number of hash tables.
+     * @return The number of tables.
+     */
+    public int getTableCount() {
+        return tableCount;
+    }
+
+    /**
+     * Get the number of bits in each table's signatures.
+     * @return The number of bits per table.
+     */
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Get the number of extra buckets probed in each table.
+     * @return The number of one-bit neighbors of the query's bucket probed per table.
+     */
+    public int getProbeCount() {
+        return probeCount;
+    }
+
+    /**
+     * Compute a vector's signature in every table.
+     * @param vector The vector.
+     * @return The vector's signature in each table.
+     */
+    int[] hash(TagVector vector) {
+        return hash(planes, tableCount, bitCount, vector);
+    }
+
+    /**
+     * Compute a vector's signature in every table.
+     * @param planes The hyperplane normals, as a tag-major matrix with {@code tableCount * bitCount} columns.
+     * @param tableCount The number of tables.
+     * @param bitCount The number of bits per table.
+     * @param vector The vector.
+     * @return The vector's signature in each table.
+     */
+    static int[] hash(float[] planes, int tableCount, int bitCount, TagVector vector) {
+        return signatures(project(planes, tableCount * bitCount, vector), tableCount, bitCount);
+    }
+
+    /**
+     * Compute the dot products of a vector with every hyperplane normal.
+     */
+    private static float[] project(float[] planes, int width, TagVector vector) {
+        float[] dots = new float[width];
+        for (int k = 0, n = vector.size(); k < n; k++) {
+            float w = vector.getWeight(k);
+            int base = vector.getTagId(k) * width;
+            for (int j = 0; j < width; j++) {
+                dots[j] += w * planes[base + j];
+            }
+        }
+        return dots;
+    }
+
+    /**
+     * Compute the signatures of a vector from its dot products with the hyperplane normals.
+     */
+    private static int[] signatures(float[] dots, int tableCount, int bitCount) {
+        int[] sigs = new int[tableCount];
+        for (int t = 0; t < tableCount; t++) {
+            int sig = 0;
+            for (int b = 0; b < bitCount; b++) {
+                if (dots[t * bitCount + b] > 0) {
+                    sig |= 1 << b;
+                }
+            }
+            sigs[t] = sig;
+        }
+        return sigs;
+    }
+
+    private ThreadLocal<CandidateSet> newCandidateSets() {
+        return new ThreadLocal<CandidateSet>() {
+            @Override
+            protected CandidateSet initialValue() {
+                return new CandidateSet(itemCount);
+            }
+        };
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        candidateSets = newCandidateSets();
+    }
+
+    /**
+     * Find candidate neighbors of a vector.
+     * @param vector The query vector.
+     * @return The indexes of the items in the probed buckets, in no particular order.
+     */
+    public int[] findCandidates(TagVector vector) {
+        float[] dots = project(planes, tableCount * bitCount, vector);
+        int[] sigs = signatures(dots, tableCount, bitCount);
+        CandidateSet candidates = candidateSets.get();
+        try {
+            for (int t = 0; t < tableCount; t++) {
+                addBucket(t, sigs[t], candidates);
+                for (int b: closestBits(dots, t)) {
+                    addBucket(t, sigs[t] ^ (1 << b), candidates);
+                }
+            }
+            return candidates.toIntArray();
+        } finally {
+            candidates.clear();
+        }
+    }
+
+    /**
+     * Find the bits of a table whose hyperplanes a query is closest to.
+     * @param dots The query's dot products with the hyperplane normals.
+     * @param table The table.
+     * @return The {@link #getProbeCount()} bits with the smallest absolute dot products.
+     */
+    private int[] closestBits(float[] dots, int table) {
+        int[] bits = new int[probeCount];
+        float[] margins = new float[probeCount];
+        int n = 0;
+        // insertion into a short sorted list; the probe count is at most the bit count
+        for (int b = 0; b < bitCount; b++) {
+            float m = Math.abs(dots[table * bitCount + b]);
+            int pos = n;
+            while (pos > 0 && margins[pos - 1] > m) {
+                pos--;
+            }
+            if (pos < probeCount) {
+                int last = Math.min(n, probeCount - 1);
+                System.arraycopy(bits, pos, bits, pos + 1, last - pos);
+                System.arraycopy(margins, pos, margins, pos + 1, last - pos);
+                bits[pos] = b;
+                margins[pos] = m;
+                if (n < probeCount) {
+                    n++;
+                }
+            }
+        }
+        return bits;
+    }
+
+    private void addBucket(int table, int sig, CandidateSet candidates) {
+        int pos = Arrays.binarySearch(bucketKeys[table], sig);
+        if (pos >= 0) {
+            int[] items = bucketItems[table];
+            for (int i = bucketOffsets[table][pos], end = bucketOffsets[table][pos + 1]; i < end; i++) {
+                candidates.add(items[i]);
+            }
+        }
+    }
+
+    /**
+     * A reusable set of item indexes, as a dense marker array and the list of marked items.
+     */
+    private static class CandidateSet {
+        private final boolean[] marked;
+        private final IntArrayList items = new IntArrayList();
+
+        CandidateSet(int nitems) {
+            marked = new boolean[nitems];
+        }
+
+        void add(int item) {
+            if (!marked[item]) {
+                marked[item] = true;
+                items.add(item);
+            }
+        }
+
+        int[] toIntArray() {
+            return items.toIntArray();
+        }
+
+        void clear() {
+            for (int i = 0, n = items.size(); i < n; i++) {
+                marked[items.getInt(i)] = false;
+            }
+            items.clear();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Build a {@link TFIDFLSHIndex} over the item vectors of a TF-IDF model.
+ */
+public class TFIDFLSHIndexProvider implements Provider<TFIDFLSHIndex> {
+    private static final Logger logger = LoggerFactory.getLogger(TFIDFLSHIndexProvider.class);
+    /**
+     * Seed for the hyperplanes, so that rebuilding an index over the same model gives the same index.
+     */
+    private static final long SEED = 0x5eed1e55L;
+
+    private final TFIDFModel model;
+    private final int tableCount;
+    private final int bitCount;
+    private final int probeCount;
+
+    /**
+     * Construct an index builder.
+     * @param model The TF-IDF model.
+     * @param ntables The number of hash tables.
+     * @param nbits The number of bits per table.
+     * @param nprobes The number of extra buckets to probe in each table.
+     */
+    @Inject
+    public TFIDFLSHIndexProvider(TFIDFModel model, @LSHTableCount int ntables, @LSHHashBits int nbits,
+                                 @LSHProbeCount int nprobes) {
+        Preconditions.checkArgument(ntables > 0, "must have at least one table");
+        Preconditions.checkArgument(nbits > 0 && nbits <= 30, "bits per table must be between 1 and 30");
+        Preconditions.checkArgument(nprobes >= 0 && nprobes <= nbits, "probe count must be between 0 and %s", nbits);
+        this.model = model;
+        tableCount = ntables;
+        bitCount = nbits;
+        probeCount = nprobes;
+    }
+
+    @Override
+    public TFIDFLSHIndex get() {
+        Stopwatch timer = Stopwatch.createStarted();
+        int ntags = model.getTagDictionary().size();
+        int width = tableCount * bitCount;
+
+        // draw the hyperplane normals from a Gaussian, so their directions are uniform
+        Random rng = new Random(SEED);
+        float[] planes = new float[ntags * width];
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = (float) rng.nextGaussian();
+        }
+
+        // hash the items with the planes
+        int nitems = model.getItemIndex().size();
+        long[][] packed = new long[tableCount][nitems];
+        int nhashed = 0;
+        for (int i = 0; i < nitems; i++) {
+            TagVector v = model.getTagVectorAt(i);
+            if (v.getNorm() == 0) {
+                continue;
+            }
+            int[] sigs = TFIDFLSHIndex.hash(planes, tableCount, bitCount, v);
+            for (int t = 0; t < tableCount; t++) {
+                packed[t][nhashed] = ((long) sigs[t] << 32) | i;
+            }
+            nhashed++;
+        }
+
+        // group each table's items into buckets by sorting them by signature
+        int[][] keys = new int[tableCount][];
+        int[][] offsets = new int[tableCount][];
+        int[][] items = new int[tableCount][];
+        for (int t = 0; t < tableCount; t++) {
+            long[] entries = packed[t];
+            Arrays.sort(entries, 0, nhashed);
+            IntArrayList tkeys = new IntArrayList();
+            IntArrayList toffsets = new IntArrayList();
+            int[] titems = new int[nhashed];
+            for (int k = 0; k < nhashed; k++) {
+                int sig = (int) (entries[k] >>> 32);
+                if (tkeys.isEmpty() || tkeys.getInt(tkeys.size() - 1) != sig) {
+                    tkeys.add(sig);
+                    toffsets.add(k);
+                }
+                titems[k] = (int) entries[k];
+            }
+            toffsets.add(nhashed);
+            keys[t] = tkeys.toIntArray();
+            offsets[t] = toffsets.toIntArray();
+            items[t] = titems;
+        }
+
+        logger.info("built LSH index with {} tables of {} bits ({} probes) over {} items in {}",
+                    tableCount, bitCount, probeCount, nhashed, timer.stop());
+        return new TFIDFLSHIndex(nitems, tableCount, bitCount, probeCount, planes, keys, offsets, items);
+    }
+}
@@ -0,0 +1,95 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.ResultList;
+import org.lenskit.basic.AbstractItemRecommender;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.results.ResultAccumulator;
+import org.lenskit.results.Results;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Arrays;
+
+/**
+ * Recommend items with the TF-IDF cosine, retrieving candidates from the full catalog with an
+ * {@linkplain TFIDFLSHIndex LSH index} instead of scoring every item.
+ *
+ * <p>When no candidate set is given, the candidates are the items in the LSH buckets of the user's profile; they
+ * are then scored exactly with the same cosine as {@link TFIDFItemScorer}, and the top items returned.  Items
+ * the LSH index misses are not recommended, so this trades some recall for time that does not grow with the
+ * catalog.  Explicit candidate sets are scored exactly.  By default, items the user has rated are excluded.</p>
+ */
+public class TFIDFLSHItemRecommender extends AbstractItemRecommender {
+    private static final Logger logger = LoggerFactory.getLogger(TFIDFLSHItemRecommender.class);
+
+    private final DataAccessObject dao;
+    private final TFIDFModel model;
+    private final TFIDFLSHIndex index;
+    private final UserProfileCache profiles;
+
+    /**
+     * Construct a new recommender.
+     *
+     * @param dao The data access object, for looking up the items users have rated.
+     * @param m The precomputed model containing the item tag vectors.
+     * @param idx The LSH index over the model's item vectors.
+     * @param upc The cache of user tag profiles.
+     */
+    @Inject
+    public TFIDFLSHItemRecommender(DataAccessObject dao, TFIDFModel m, TFIDFLSHIndex idx, UserProfileCache upc) {
+        this.dao = dao;
+        model = m;
+        index = idx;
+        profiles = upc;
+    }
+
+    @Override
+    protected ResultList recommendWithDetails(long user, int n, @Nullable LongSet candidates,
+                                              @Nullable LongSet exclude) {
+        TagVector query = profiles.getProfileVector(user);
+        double userNorm = query.getNorm();
+        if (userNorm == 0) {
+            return Results.newResultList();
+        }
+
+        if (exclude == null) {
+            exclude = dao.query(Rating.class)
+                         .withAttribute(CommonAttributes.USER_ID, user)
+                         .valueSet(CommonAttributes.ITEM_ID);
+        }
+
+        SortedKeyIndex items = model.getItemIndex();
+        int[] cands;
+        if (candidates == null) {
+            cands = index.findCandidates(query);
+            logger.debug("LSH found {} of {} items as candidates for user {}", cands.length, items.size(), user);
+        } else {
+            cands = new int[candidates.size()];
+            int k = 0;
+            for (long item: candidates) {
+                int idx = items.tryGetIndex(item);
+                if (idx >= 0) {
+                    cands[k++] = idx;
+                }
+            }
+            cands = Arrays.copyOf(cands, k);
+        }
+
+        ResultAccumulator acc = ResultAccumulator.create(n);
+        for (int idx: cands) {
+            long item = items.getKey(idx);
+            double itemNorm = model.getItemNorm(idx);
+            if (itemNorm == 0 || exclude.contains(item)) {
+                continue;
+            }
+            acc.add(item, query.dot(model.getTagVectorAt(idx)) / (itemNorm * userNorm));
+        }
+        return acc.finish();
+    }
+}
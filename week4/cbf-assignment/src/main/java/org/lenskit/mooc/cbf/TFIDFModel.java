@@ -1,17 +1,27 @@
 package org.lenskit.mooc.cbf;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Preconditions;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.SortedKeyIndex;
 
 import java.io.Serializable;
-import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * The model for a TF-IDF recommender.  The model just remembers the normalized tag vector for each
  * item.
  *
+ * <p>Tags are interned in a {@link TagDictionary}, and each item's vector is stored as a {@link TagVector} of
+ * sorted tag IDs and float weights, so the model holds no per-tag strings or boxed values.  For scoring, the
+ * model also keeps an {@linkplain TagInvertedIndex inverted index} from tags to items, so scores for a user
+ * profile can be computed for all items at once without looking at the tags of each candidate item.</p>
+ *
  * @see TFIDFModelProvider
  */
 // LensKit models are annotated with @Shareable so they can be serialized and reused
@@ -19,39 +29,217 @@ import java.util.Map;
 // This model class will be built by the model builder
 @DefaultProvider(TFIDFModelProvider.class)
 public class TFIDFModel implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final Map<Long, Map<String, Double>> itemVectors;
+    private final TagDictionary dictionary;
+    private final SortedKeyIndex itemIndex;
+    private final TagVector[] itemVectors;
+    private final TagInvertedIndex tagIndex;
 
     /**
      * Constructor for the model.  This is package-private; the only way to build a model is with
      * the {@linkplain TFIDFModelProvider model builder}.
      *
-     * @param itemVectors A map of item IDs to tag vectors.
+     * @param dict The tag dictionary.
+     * @param items The item index.
+     * @param vectors The item tag vectors, indexed by item index.
      */
-    TFIDFModel(Map<Long, Map<String, Double>> itemVectors) {
-        ImmutableMap.Builder<Long,Map<String,Double>> bld = ImmutableMap.builder();
-        for (Map.Entry<Long,Map<String,Double>> e: itemVectors.entrySet()) {
-            bld.put(e.getKey(), ImmutableMap.copyOf(e.getValue()));
-        }
-        this.itemVectors = bld.build();
+    TFIDFModel(TagDictionary dict, SortedKeyIndex items, TagVector[] vectors) {
+        Preconditions.checkArgument(items.size() == vectors.length, "item count mismatch");
+        dictionary = dict;
+        itemIndex = items;
+        itemVectors = vectors;
+        tagIndex = TagInvertedIndex.build(dict.size(), vectors);
     }
 
     /**
      * Get the normalized tag vector for a particular item.
      *
+     * <p>This is a read-only view of the item's {@linkplain #getItemTagVector(long) tag vector}; code that
+     * does not need tag strings should use that instead.</p>
+     *
      * @param item The item.
      * @return The item's tag vector.  If the item is not known to the model, then this vector is
      *         empty.
      */
     public Map<String, Double> getItemVector(long item) {
-        // Look up the item
-        Map<String, Double> vec = itemVectors.get(item);
-        if (vec == null) {
-            // We don't know the item! Return an empty vector
-            return Collections.emptyMap();
-        } else {
-            return vec;
+        return new TagVectorMap(getItemTagVector(item));
+    }
+
+    /**
+     * Get the normalized tag vector for a particular item, over the model's tag IDs.
+     *
+     * @param item The item.
+     * @return The item's tag vector.  If the item is not known to the model, then this vector is
+     *         empty.
+     */
+    public TagVector getItemTagVector(long item) {
+        int idx = itemIndex.tryGetIndex(item);
+        return idx >= 0 ? itemVectors[idx] : TagVector.empty();
+    }
+
+    /**
+     * Get the tag vector of the item at an index.
+     * @param idx The item index.
+     * @return The item's tag vector.
+     */
+    TagVector getTagVectorAt(int idx) {
+        return itemVectors[idx];
+    }
+
+    /**
+     * Get the dictionary of tags used by this model's tag vectors.
+     * @return The tag dictionary.
+     */
+    public TagDictionary getTagDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the index of items in this model.  Item indexes used by the other scoring methods are positions
+     * in this index.
+     * @return The item index.
+     */
+    SortedKeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the Euclidean norm of an item's tag vector.
+     * @param idx The item index.
+     * @return The norm of the item's vector; 1 for items with unit-normalized tags, 0 for items with no tags.
+     */
+    double getItemNorm(int idx) {
+        return itemVectors[idx].getNorm();
+    }
+
+    /**
+     * Compute the dot product of a tag vector with every item's tag vector.
+     * @param vector The tag vector (typically a user profile).
+     * @param acc The accumulator, indexed by item index, to which the dot products are added.
+     */
+    void accumulateDotProducts(TagVector vector, float[] acc) {
+        for (int i = 0, n = vector.size(); i < n; i++) {
+            float w = vector.getWeight(i);
+            if (w != 0) {
+                tagIndex.accumulate(vector.getTagId(i), w, acc);
+            }
+        }
+    }
+
+    /**
+     * Reset the entries of an accumulator that {@link #accumulateDotProducts(TagVector, float[])} adds to for a
+     * tag vector, so the accumulator can be reused without clearing all of it.
+     * @param vector The tag vector whose dot products were accumulated.
+     * @param acc The accumulator, indexed by item index.
+     */
+    void clearDotProducts(TagVector vector, float[] acc) {
+        for (int i = 0, n = vector.size(); i < n; i++) {
+            if (vector.getWeight(i) != 0) {
+                tagIndex.clear(vector.getTagId(i), acc);
+            }
+        }
+    }
+
+    /**
+     * Add a weighted tag's postings to an accumulator.
+     * @param tagId The tag ID.
+     * @param weight The tag's weight.
+     * @param acc The accumulator, indexed by item index.  {@code acc[i]} is increased by {@code weight} times
+     *            the tag's weight in item {@code i}.
+     */
+    void accumulateTag(int tagId, float weight, float[] acc) {
+        tagIndex.accumulate(tagId, weight, acc);
+    }
+
+    /**
+     * Reset the entries of an accumulator that {@link #accumulateTag(int, float, float[])} adds to for a tag.
+     * @param tagId The tag ID.
+     * @param acc The accumulator, indexed by item index.
+     */
+    void clearTag(int tagId, float[] acc) {
+        tagIndex.clear(tagId, acc);
+    }
+
+    /**
+     * Get a read-only map view of a tag vector.
+     * @param vector A vector over this model's tag dictionary.
+     * @return A map of the vector's tags to their weights.
+     */
+    Map<String, Double> asTagMap(TagVector vector) {
+        return new TagVectorMap(vector);
+    }
+
+    /**
+     * Read-only map view of a tag vector.
+     */
+    private class TagVectorMap extends AbstractMap<String, Double> {
+        private final TagVector vector;
+
+        TagVectorMap(TagVector v) {
+            vector = v;
+        }
+
+        @Override
+        public int size() {
+            return vector.size();
+        }
+
+        private int find(Object key) {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+            int id = dictionary.getId((String) key);
+            return id >= 0 ? vector.find(id) : -1;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public Double get(Object key) {
+            int pos = find(key);
+            return pos >= 0 ? (double) vector.getWeight(pos) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            return new AbstractSet<Entry<String, Double>>() {
+                @Override
+                public int size() {
+                    return vector.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Double>> iterator() {
+                    return new Iterator<Entry<String, Double>>() {
+                        private int pos = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return pos < vector.size();
+                        }
+
+                        @Override
+                        public Entry<String, Double> next() {
+                            if (pos >= vector.size()) {
+                                throw new NoSuchElementException();
+                            }
+                            String tag = dictionary.getTag(vector.getTagId(pos));
+                            double weight = vector.getWeight(pos);
+                            pos += 1;
+                            return new SimpleImmutableEntry<>(tag, weight);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
         }
     }
 }
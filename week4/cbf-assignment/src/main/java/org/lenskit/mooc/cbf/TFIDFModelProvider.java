@@ -1,38 +1,74 @@
 package org.lenskit.mooc.cbf;
 
+import com.google.common.base.Stopwatch;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.data.entities.Entity;
 import org.lenskit.inject.Transient;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Builder for computing {@linkplain TFIDFModel TF-IDF models} from item tag data.  Each item is
  * represented by a normalized TF-IDF vector.
  *
+ * <p>The builder streams the tag applications once, grouped by item.  Tags are interned to integer IDs as
+ * they are seen, and term and document frequencies are counted in arrays over those IDs.  Once all tags have
+ * been seen, the IDs are remapped to the sorted {@link TagDictionary} IDs.</p>
+ *
+ * <p>With more than one {@linkplain BuildThreadCount build thread}, the grouped tag applications are split
+ * into contiguous ranges of items, and each thread counts its range with its own provisional tag IDs and
+ * document frequencies.  The per-thread counts are merged into the sorted dictionary, and each thread then
+ * weights and normalizes its own items.  Document frequencies are integer counts and each vector is computed
+ * in dictionary order, so the model is bit-identical to the one built serially.</p>
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class TFIDFModelProvider implements Provider<TFIDFModel> {
     private static final Logger logger = LoggerFactory.getLogger(TFIDFModelProvider.class);
 
     private final DataAccessObject dao;
+    private final int threadCount;
+
+    /**
+     * Construct a model builder that builds on the calling thread.
+     *
+     * @param dao The data access object.
+     */
+    public TFIDFModelProvider(DataAccessObject dao) {
+        this(dao, 1);
+    }
 
     /**
      * Construct a model builder.  The {@link Inject} annotation on this constructor tells LensKit
      * that it can be used to build the model builder.
      *
      * @param dao The data access object.
+     * @param nthreads The number of threads to build with.
      */
     @Inject
-    public TFIDFModelProvider(@Transient DataAccessObject dao) {
+    public TFIDFModelProvider(@Transient DataAccessObject dao, @BuildThreadCount int nthreads) {
         this.dao = dao;
+        threadCount = nthreads;
     }
 
     /**
@@ -42,82 +78,312 @@ public class TFIDFModelProvider implements Provider<TFIDFModel> {
     @Override
     public TFIDFModel get() {
         logger.info("Building TF-IDF model");
+        Stopwatch timer = Stopwatch.createStarted();
 
-        // Create a map to accumulate document frequencies for the IDF computation
-        Map<String, Double> docFreq = new HashMap<>();
+        LongSet items = dao.getEntityIds(CommonTypes.ITEM);
 
         // We now proceed in 2 stages. First, we build a TF vector for each item.
         // While we do this, we also build the DF vector.
         // We will then apply the IDF to each TF vector and normalize it to a unit vector.
+        ExecutorService pool = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+        TFIDFModel model;
+        long napps = 0;
+        try {
+            List<TermCounts> chunks = pool == null ? countSerial(items) : countParallel(items, pool);
+            for (TermCounts counts: chunks) {
+                napps += counts.applications;
+            }
+            model = buildModel(items.size(), chunks, pool);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted building TF-IDF model", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("error building TF-IDF model", e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
 
-        // Create a map to store the item TF vectors.
-        Map<Long, Map<String, Double>> itemVectors = new HashMap<>();
+        timer.stop();
+        double secs = timer.elapsed(TimeUnit.NANOSECONDS) / 1.0e9;
+        logger.info("built TF-IDF model for {} items and {} tags from {} tag applications in {} ({} applications/sec)",
+                    model.getItemIndex().size(), model.getTagDictionary().size(), napps, timer,
+                    String.format("%.0f", napps / secs));
 
-        // Iterate over the items to compute each item's vector.
-        LongSet items = dao.getEntityIds(CommonTypes.ITEM);
-        for (long item : items) {
-            // Create a work vector to accumulate this item's tag vector.
-            Map<String, Double> work = new HashMap<>();
-
-            for (Entity tagApplication : dao.query(TagData.ITEM_TAG_TYPE)
-                                            .withAttribute(TagData.ITEM_ID, item)
-                                            .get()) {
-                String tag = tagApplication.get(TagData.TAG);
-                // Count this tag application in the term frequency vector
-                if( ! work.containsKey(tag)){
-                    work.put(tag, 1.0d);
-                }else{
-                    work.put(tag, work.get(tag) +1.0d);
+        return model;
+    }
+
+    private ObjectStream<IdBox<List<Entity>>> queryTagGroups() {
+        return dao.query(TagData.ITEM_TAG_TYPE)
+                  .groupBy(TagData.ITEM_ID)
+                  .stream();
+    }
+
+    /**
+     * Count term frequencies on the calling thread, streaming the tag applications.
+     * @param items The item IDs.
+     * @return The term counts for all items.
+     */
+    private List<TermCounts> countSerial(LongSet items) {
+        TermCounts counts = new TermCounts();
+        try (ObjectStream<IdBox<List<Entity>>> groups = queryTagGroups()) {
+            for (IdBox<List<Entity>> group: groups) {
+                if (items.contains(group.getId())) {
+                    counts.addItem(group.getId(), group.getValue());
                 }
-                // Also count it in the document frequency vector when needed
-                if(! docFreq.containsKey(tag)){
-                    docFreq.put(tag, 0d);
+            }
+        }
+        return Collections.singletonList(counts);
+    }
+
+    /**
+     * Count term frequencies in parallel.  The items are split into contiguous ranges, one per thread, and
+     * each range is counted with its own counters.
+     * @param items The item IDs.
+     * @param pool The thread pool.
+     * @return The term counts for each range of items.
+     */
+    private List<TermCounts> countParallel(LongSet items, ExecutorService pool)
+            throws InterruptedException, ExecutionException {
+        List<IdBox<List<Entity>>> groups = new ArrayList<>();
+        try (ObjectStream<IdBox<List<Entity>>> stream = queryTagGroups()) {
+            for (IdBox<List<Entity>> group: stream) {
+                if (items.contains(group.getId())) {
+                    groups.add(group);
                 }
-                if( work.get(tag) <= 1d){
-                    docFreq.put(tag, docFreq.get(tag) + 1d);
+            }
+        }
+
+        int nchunks = Math.max(1, Math.min(threadCount, groups.size()));
+        List<Callable<TermCounts>> tasks = new ArrayList<>(nchunks);
+        for (int c = 0; c < nchunks; c++) {
+            final List<IdBox<List<Entity>>> chunk =
+                    groups.subList(groups.size() * c / nchunks, groups.size() * (c + 1) / nchunks);
+            tasks.add(new Callable<TermCounts>() {
+                @Override
+                public TermCounts call() {
+                    TermCounts counts = new TermCounts();
+                    for (IdBox<List<Entity>> group: chunk) {
+                        counts.addItem(group.getId(), group.getValue());
+                    }
+                    return counts;
                 }
+            });
+        }
+        List<TermCounts> chunkCounts = new ArrayList<>(nchunks);
+        for (Future<TermCounts> f: pool.invokeAll(tasks)) {
+            chunkCounts.add(f.get());
+        }
+        return chunkCounts;
+    }
+
+    /**
+     * Merge term counts and build the model.
+     *
+     * @param nitems The total number of items, for computing IDF.
+     * @param chunks The term counts, each covering a distinct set of items.
+     * @param pool The thread pool to normalize the chunks' vectors in, or {@code null} to normalize them on the
+     *             calling thread.
+     * @return The model.
+     */
+    private TFIDFModel buildModel(int nitems, List<TermCounts> chunks, ExecutorService pool)
+            throws InterruptedException, ExecutionException {
+        // Now we've seen all the items, so we have each item's TF vector and a global vector
+        // of document frequencies.  Intern the tags in sorted order, and compute the log-IDF
+        // vector over the final tag IDs.
+        List<String> allTags = new ArrayList<>();
+        LongArrayList itemIds = new LongArrayList();
+        for (TermCounts counts: chunks) {
+            allTags.addAll(counts.tags);
+            itemIds.addAll(counts.itemIds);
+        }
+        logger.info("Computed TF vectors for {} items", itemIds.size());
+
+        TagDictionary dict = TagDictionary.create(allTags);
+        int ntags = dict.size();
+        int[] docFreq = new int[ntags];
+        int[][] remaps = new int[chunks.size()][];
+        for (int c = 0; c < chunks.size(); c++) {
+            TermCounts counts = chunks.get(c);
+            int[] remap = new int[counts.tags.size()];
+            for (int p = 0; p < remap.length; p++) {
+                remap[p] = dict.getId(counts.tags.get(p));
+                docFreq[remap[p]] += counts.docFreq[p];
             }
+            remaps[c] = remap;
+        }
+
+        final double logN = Math.log(nitems);
+        final double[] idf = new double[ntags];
+        for (int t = 0; t < ntags; t++) {
+            idf[t] = logN - Math.log(docFreq[t]);
+        }
 
-            itemVectors.put(item, work);
+        // Now we can apply the IDF to each item vector to put it in the final model.
+        final SortedKeyIndex itemIndex = SortedKeyIndex.fromCollection(itemIds);
+        final TagVector[] modelData = new TagVector[itemIndex.size()];
+        if (pool == null) {
+            for (int c = 0; c < chunks.size(); c++) {
+                makeVectors(chunks.get(c), remaps[c], idf, itemIndex, modelData);
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(chunks.size());
+            for (int c = 0; c < chunks.size(); c++) {
+                final TermCounts counts = chunks.get(c);
+                final int[] remap = remaps[c];
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        makeVectors(counts, remap, idf, itemIndex, modelData);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> f: pool.invokeAll(tasks)) {
+                f.get();
+            }
         }
 
-        logger.info("Computed TF vectors for {} items", itemVectors.size());
+        // We don't need the IDF vector anymore, as long as as we have no new tags
+        return new TFIDFModel(dict, itemIndex, modelData);
+    }
 
-        // Now we've seen all the items, so we have each item's TF vector and a global vector
-        // of document frequencies.
-        // Invert and log the document frequency.  We can do this in-place.
-        final double logN = Math.log(items.size());
-        for (Map.Entry<String, Double> e : docFreq.entrySet()) {
-            e.setValue(logN - Math.log(e.getValue()));
-        }
-
-        // Now docFreq is a log-IDF vector.  Its values can therefore be multiplied by TF values.
-        // So we can use it to apply IDF to each item vector to put it in the final model.
-        // Create a map to store the final model data.
-        Map<Long, Map<String, Double>> modelData = new HashMap<>();
-        for (Map.Entry<Long, Map<String, Double>> entry : itemVectors.entrySet()) {
-            Map<String, Double> tv = new HashMap<>(entry.getValue());
-
-
-            double length = 0d;
-            // TODO Convert this vector to a TF-IDF vector
-            for(Map.Entry<String, Double> e : tv.entrySet()){
-                double value = e.getValue() * docFreq.get(e.getKey());
-                e.setValue(value);
-                length += Math.pow(value,2);
+    /**
+     * Convert the term frequencies of a set of items to TF-IDF vectors.
+     *
+     * @param counts The items' term counts.
+     * @param remap The mapping from the counts' provisional tag IDs to dictionary IDs.
+     * @param idf The log-IDF of each tag, by dictionary ID.
+     * @param itemIndex The model's item index.
+     * @param vectors The array of item vectors to fill in.
+     */
+    static void makeVectors(TermCounts counts, int[] remap, double[] idf,
+                            SortedKeyIndex itemIndex, TagVector[] vectors) {
+        for (int i = 0; i < counts.itemIds.size(); i++) {
+            vectors[itemIndex.getIndex(counts.itemIds.getLong(i))] =
+                    makeVector(counts.itemTags.get(i), counts.itemFreqs.get(i), remap, idf);
+        }
+    }
+
+    /**
+     * Convert an item's term frequencies to a unit-normalized TF-IDF vector.
+     *
+     * @param tags The item's provisional tag IDs.
+     * @param freqs The term frequency of each tag.
+     * @param remap The mapping from provisional tag IDs to dictionary IDs.
+     * @param idf The log-IDF of each tag, by dictionary ID.
+     * @return The item's tag vector.
+     */
+    static TagVector makeVector(int[] tags, int[] freqs, int[] remap, double[] idf) {
+        int n = tags.length;
+        // sort the tags by dictionary ID, carrying their frequencies along in the low bits
+        long[] packed = new long[n];
+        for (int k = 0; k < n; k++) {
+            packed[k] = ((long) remap[tags[k]] << 32) | freqs[k];
+        }
+        Arrays.sort(packed);
+
+        int[] ids = new int[n];
+        double[] values = new double[n];
+        double length = 0;
+        for (int k = 0; k < n; k++) {
+            ids[k] = (int) (packed[k] >>> 32);
+            values[k] = (int) packed[k] * idf[ids[k]];
+            length += values[k] * values[k];
+        }
+        length = Math.sqrt(length);
+
+        // Normalize it by dividing each element by its Euclidean norm, which is the
+        // square root of the sum of the squares of the values.
+        float[] weights = new float[n];
+        for (int k = 0; k < n; k++) {
+            weights[k] = (float) (values[k] / length);
+        }
+        return new TagVector(ids, weights);
+    }
+
+    /**
+     * Term and document frequency counters over provisional tag IDs, for a set of items.  Tags are counted
+     * one item at a time; the item's term frequencies are kept in a dense scratch array, with a list of the
+     * tags it touched so the array can be cleared cheaply, and then saved with the item.
+     */
+    static class TermCounts {
+        final Object2IntOpenHashMap<String> tagIds = new Object2IntOpenHashMap<>();
+        final List<String> tags = new ArrayList<>();
+        final LongArrayList itemIds = new LongArrayList();
+        final List<int[]> itemTags = new ArrayList<>();
+        final List<int[]> itemFreqs = new ArrayList<>();
+        long applications;
+        int[] docFreq = new int[64];
+        private int[] termFreq = new int[64];
+        private int[] touched = new int[64];
+        private int ntouched;
+
+        TermCounts() {
+            tagIds.defaultReturnValue(-1);
+        }
+
+        /**
+         * Count an item's tag applications and save its term frequencies.
+         * @param item The item ID.
+         * @param tagApplications The item's tag applications.
+         */
+        void addItem(long item, List<Entity> tagApplications) {
+            for (Entity tagApplication: tagApplications) {
+                count(tagApplication.get(TagData.TAG));
+            }
+            applications += tagApplications.size();
+            itemIds.add(item);
+            itemTags.add(getItemTags());
+            itemFreqs.add(finishItem());
+        }
+
+        /**
+         * Count an application of a tag to the current item.
+         * @param tag The tag.
+         */
+        private void count(String tag) {
+            int t = tagIds.getInt(tag);
+            if (t < 0) {
+                t = tags.size();
+                tagIds.put(tag, t);
+                tags.add(tag);
+                if (t >= docFreq.length) {
+                    int cap = docFreq.length * 2;
+                    docFreq = Arrays.copyOf(docFreq, cap);
+                    termFreq = Arrays.copyOf(termFreq, cap);
+                    touched = Arrays.copyOf(touched, cap);
+                }
             }
-            length = Math.sqrt(length);
-            // TODO Normalize the TF-IDF vector to be a unit vector
-            // Normalize it by dividing each element by its Euclidean norm, which is the
-            // square root of the sum of the squares of the values.
-            for(Map.Entry<String, Double> e : tv.entrySet()){
-                e.setValue(e.getValue()/length);
+            if (termFreq[t] == 0) {
+                // first time we've seen this tag on this item
+                touched[ntouched++] = t;
+                docFreq[t] += 1;
             }
+            termFreq[t] += 1;
+        }
 
-            modelData.put(entry.getKey(), tv);
+        /**
+         * Get the tags applied to the current item.
+         * @return The provisional IDs of the current item's tags.
+         */
+        private int[] getItemTags() {
+            return Arrays.copyOf(touched, ntouched);
         }
 
-        // We don't need the IDF vector anymore, as long as as we have no new tags
-        return new TFIDFModel(modelData);
+        /**
+         * Finish the current item, returning its term frequencies and clearing them for the next item.
+         * @return The term frequency of each of the item's tags, in the order of {@link #getItemTags()}.
+         */
+        private int[] finishItem() {
+            int[] freqs = new int[ntouched];
+            for (int k = 0; k < ntouched; k++) {
+                freqs[k] = termFreq[touched[k]];
+                termFreq[touched[k]] = 0;
+            }
+            ntouched = 0;
+            return freqs;
+        }
     }
 }
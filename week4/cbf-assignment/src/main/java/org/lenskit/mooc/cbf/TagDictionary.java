@@ -0,0 +1,74 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A dictionary of tags, mapping each distinct tag string to a dense integer ID.
+ *
+ * <p>IDs are assigned in sorted order of the tag strings, so a dictionary built from the same set of tags
+ * always assigns the same IDs, and sorting tag IDs also sorts the tags.</p>
+ */
+@Immutable
+public final class TagDictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] tags;
+    private final Object2IntOpenHashMap<String> tagIds;
+
+    private TagDictionary(String[] tags) {
+        this.tags = tags;
+        tagIds = new Object2IntOpenHashMap<>(tags.length);
+        tagIds.defaultReturnValue(-1);
+        for (int i = 0; i < tags.length; i++) {
+            tagIds.put(tags[i], i);
+        }
+    }
+
+    /**
+     * Create a tag dictionary.
+     * @param tags The tags.  Duplicates are ignored.
+     * @return The dictionary.
+     */
+    public static TagDictionary create(Collection<String> tags) {
+        String[] sorted = tags.toArray(new String[tags.size()]);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return new TagDictionary(Arrays.copyOf(sorted, n));
+    }
+
+    /**
+     * Get the number of tags in the dictionary.
+     * @return The number of tags.
+     */
+    public int size() {
+        return tags.length;
+    }
+
+    /**
+     * Get the ID of a tag.
+     * @param tag The tag.
+     * @return The tag's ID, or -1 if the tag is not in the dictionary.
+     */
+    public int getId(String tag) {
+        return tagIds.getInt(tag);
+    }
+
+    /**
+     * Get the tag with an ID.
+     * @param id The tag ID.
+     * @return The tag.
+     */
+    public String getTag(int id) {
+        return tags[id];
+    }
+}
@@ -0,0 +1,85 @@
+package org.lenskit.mooc.cbf;
+
+import java.io.Serializable;
+
+/**
+ * An inverted index from tags to the items that have them.
+ *
+ * <p>Each tag has a posting list of (item index, weight) pairs, where item indexes are positions in the model's
+ * item index.  The posting lists are stored in compressed sparse row form: the postings of tag ID {@code t} are
+ * at positions {@code offsets[t]} up to {@code offsets[t+1]} of the item and weight arrays.  Scoring a user
+ * profile then only touches the postings of the profile's tags, instead of every tag of every candidate item.</p>
+ */
+class TagInvertedIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] offsets;
+    private final int[] postingItems;
+    private final float[] postingWeights;
+
+    private TagInvertedIndex(int[] offs, int[] pitems, float[] pweights) {
+        offsets = offs;
+        postingItems = pitems;
+        postingWeights = pweights;
+    }
+
+    /**
+     * Build an inverted index from item tag vectors.
+     * @param ntags The number of tags in the dictionary.
+     * @param vectors The item tag vectors, indexed by item index.
+     * @return The inverted index.
+     */
+    static TagInvertedIndex build(int ntags, TagVector[] vectors) {
+        // first pass: count each tag's postings
+        int[] offsets = new int[ntags + 1];
+        for (TagVector v: vectors) {
+            for (int k = 0, n = v.size(); k < n; k++) {
+                offsets[v.getTagId(k) + 1] += 1;
+            }
+        }
+        for (int t = 0; t < ntags; t++) {
+            offsets[t + 1] += offsets[t];
+        }
+
+        // second pass: fill in the postings; items are visited in order, so each list is sorted by item
+        int[] next = new int[ntags];
+        System.arraycopy(offsets, 0, next, 0, ntags);
+        int[] pitems = new int[offsets[ntags]];
+        float[] pweights = new float[offsets[ntags]];
+        for (int i = 0; i < vectors.length; i++) {
+            TagVector v = vectors[i];
+            for (int k = 0, n = v.size(); k < n; k++) {
+                int pos = next[v.getTagId(k)]++;
+                pitems[pos] = i;
+                pweights[pos] = v.getWeight(k);
+            }
+        }
+
+        return new TagInvertedIndex(offsets, pitems, pweights);
+    }
+
+    /**
+     * Add a weighted tag's postings to an accumulator.
+     * @param tagId The tag ID.
+     * @param weight The tag's weight (typically its value in a user profile).
+     * @param acc The accumulator, indexed by item index.  {@code acc[i]} is increased by {@code weight} times
+     *            the tag's weight in item {@code i}.
+     */
+    void accumulate(int tagId, float weight, float[] acc) {
+        for (int i = offsets[tagId], end = offsets[tagId + 1]; i < end; i++) {
+            acc[postingItems[i]] += weight * postingWeights[i];
+        }
+    }
+
+    /**
+     * Reset the entries of an accumulator that a tag's postings add to.
+     * @param tagId The tag ID.
+     * @param acc The accumulator, indexed by item index.  {@code acc[i]} is set to 0 for each item {@code i}
+     *            with the tag.
+     */
+    void clear(int tagId, float[] acc) {
+        for (int i = offsets[tagId], end = offsets[tagId + 1]; i < end; i++) {
+            acc[postingItems[i]] = 0;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.lenskit.mooc.cbf;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A mutable, reusable buffer for a user profile over the tags of a {@link TagDictionary}.
+ *
+ * <p>Weights are stored in a dense {@code double} array over the dictionary's tag IDs, together with the list of
+ * tags that have been set since the profile was last cleared.  Adding to a tag is an array update, and
+ * {@link #clear()} only resets the tags that were set, so one buffer can be filled for user after user without
+ * allocating.  The set tags are kept in the order they were first set.</p>
+ *
+ * <p>Weights for tags that are not in the dictionary cannot be stored, but they still count towards the
+ * profile's {@linkplain #getNorm() norm}, so cosines with the profile are the same as with the full profile.</p>
+ *
+ * @see TagProfileBuilder
+ */
+@NotThreadSafe
+public final class TagProfile {
+    private final TagDictionary dictionary;
+    private final double[] weights;
+    private final boolean[] present;
+    private final int[] tagIds;
+    private int size;
+    private double outsideSquares;
+
+    /**
+     * Create an empty profile.
+     * @param dict The tag dictionary the profile is over.
+     */
+    public TagProfile(TagDictionary dict) {
+        dictionary = dict;
+        int n = dict.size();
+        weights = new double[n];
+        present = new boolean[n];
+        tagIds = new int[n];
+    }
+
+    /**
+     * Get the dictionary this profile is over.
+     * @return The tag dictionary.
+     */
+    public TagDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Remove all tags from the profile.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            int t = tagIds[i];
+            weights[t] = 0;
+            present[t] = false;
+        }
+        size = 0;
+        outsideSquares = 0;
+    }
+
+    /**
+     * Get the number of tags that have been set in the profile.
+     * @return The number of tags set since the profile was cleared, including tags whose weight is 0.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a tag ID in this profile.
+     * @param i The position, between 0 and {@link #size()}.
+     * @return The {@code i}-th tag ID set in the profile.
+     */
+    public int getTagId(int i) {
+        return tagIds[i];
+    }
+
+    /**
+     * Get a tag's weight.
+     * @param tagId The tag ID.
+     * @return The tag's weight, or 0 if it is not set.
+     */
+    public double get(int tagId) {
+        return weights[tagId];
+    }
+
+    /**
+     * Set a tag's weight.
+     * @param tagId The tag ID.
+     * @param weight The new weight.
+     */
+    public void set(int tagId, double weight) {
+        mark(tagId);
+        weights[tagId] = weight;
+    }
+
+    /**
+     * Add to a tag's weight.
+     * @param tagId The tag ID.
+     * @param weight The amount to add.
+     */
+    public void add(int tagId, double weight) {
+        mark(tagId);
+        weights[tagId] += weight;
+    }
+
+    /**
+     * Add a scaled tag vector to the profile.
+     * @param vector The vector, over this profile's dictionary.
+     * @param scale The value to multiply the vector's weights by.
+     */
+    public void add(TagVector vector, double scale) {
+        for (int i = 0, n = vector.size(); i < n; i++) {
+            add(vector.getTagId(i), vector.getWeight(i) * scale);
+        }
+    }
+
+    /**
+     * Add the weights of a map of tags to the profile.  Tags that are not in the dictionary are only counted in
+     * the profile's norm.
+     * @param values The tag weights.
+     */
+    public void add(Map<String, Double> values) {
+        for (Map.Entry<String, Double> e: values.entrySet()) {
+            int t = dictionary.getId(e.getKey());
+            double v = e.getValue();
+            if (t >= 0) {
+                add(t, v);
+            } else {
+                outsideSquares += v * v;
+            }
+        }
+    }
+
+    private void mark(int tagId) {
+        if (!present[tagId]) {
+            present[tagId] = true;
+            tagIds[size++] = tagId;
+        }
+    }
+
+    /**
+     * Get the Euclidean norm of the profile.
+     * @return The norm of the profile's weights, including weights added for tags outside the dictionary.
+     */
+    public double getNorm() {
+        double ss = outsideSquares;
+        for (int i = 0; i < size; i++) {
+            double w = weights[tagIds[i]];
+            ss += w * w;
+        }
+        return Math.sqrt(ss);
+    }
+
+    /**
+     * Copy the profile into an immutable tag vector.
+     * @return A tag vector with the profile's tags and weights, whose norm is the {@linkplain #getNorm() profile's
+     *         norm}.
+     */
+    public TagVector toTagVector() {
+        int[] ids = Arrays.copyOf(tagIds, size);
+        Arrays.sort(ids);
+        float[] ws = new float[size];
+        for (int i = 0; i < size; i++) {
+            ws[i] = (float) weights[ids[i]];
+        }
+        return new TagVector(ids, ws, getNorm());
+    }
+
+    /**
+     * Copy the profile into a map of tag strings.
+     * @return A map of each tag set in the profile to its weight.
+     */
+    public Map<String, Double> toTagMap() {
+        Map<String, Double> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            int t = tagIds[i];
+            map.put(dictionary.getTag(t), weights[t]);
+        }
+        return map;
+    }
+}
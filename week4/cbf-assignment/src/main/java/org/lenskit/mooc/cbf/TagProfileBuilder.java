@@ -0,0 +1,23 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * A user profile builder that writes profiles into a caller-supplied {@link TagProfile} instead of returning a
+ * new map.  Callers that build many profiles can reuse one buffer, so building a profile allocates nothing.
+ *
+ * <p>Implementations should usually extend {@link AbstractTagProfileBuilder}, which provides
+ * {@link #makeUserProfile(List)} in terms of this method.</p>
+ */
+public interface TagProfileBuilder extends UserProfileBuilder {
+    /**
+     * Build a user profile into a buffer.
+     *
+     * @param ratings The user's history (their ratings).
+     * @param profile The buffer to receive the profile.  It is cleared first.
+     */
+    void buildTagProfile(@Nonnull List<Rating> ratings, @Nonnull TagProfile profile);
+}
@@ -0,0 +1,151 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A sparse vector over tags, stored as sorted tag IDs from a {@link TagDictionary} with parallel weights.
+ */
+@Immutable
+public final class TagVector implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final TagVector EMPTY = new TagVector(new int[0], new float[0]);
+
+    private final int[] tagIds;
+    private final float[] weights;
+    private final double norm;
+
+    /**
+     * Create a tag vector.
+     * @param ids The tag IDs, in increasing order.
+     * @param ws The weight of each tag.
+     */
+    TagVector(int[] ids, float[] ws) {
+        this(ids, ws, computeNorm(ws));
+    }
+
+    /**
+     * Create a tag vector with a known norm.  This is for user profiles, whose norm also counts tags that are not
+     * in the dictionary.
+     * @param ids The tag IDs, in increasing order.
+     * @param ws The weight of each tag.
+     * @param norm The vector's norm.
+     */
+    TagVector(int[] ids, float[] ws, double norm) {
+        Preconditions.checkArgument(ids.length == ws.length, "array length mismatch");
+        tagIds = ids;
+        weights = ws;
+        this.norm = norm;
+    }
+
+    private static double computeNorm(float[] ws) {
+        double ss = 0;
+        for (float w: ws) {
+            ss += w * w;
+        }
+        return Math.sqrt(ss);
+    }
+
+    /**
+     * Get the empty tag vector.
+     * @return A vector with no tags.
+     */
+    public static TagVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a tag vector from a map of tags.
+     * @param dict The tag dictionary.  It must contain every tag in the map.
+     * @param values The tag values.
+     * @return The tag vector.
+     */
+    static TagVector fromMap(TagDictionary dict, Map<String, Double> values) {
+        int n = values.size();
+        int[] ids = new int[n];
+        int i = 0;
+        for (String tag: values.keySet()) {
+            int id = dict.getId(tag);
+            Preconditions.checkArgument(id >= 0, "tag %s not in dictionary", tag);
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+        float[] ws = new float[n];
+        for (i = 0; i < n; i++) {
+            ws[i] = values.get(dict.getTag(ids[i])).floatValue();
+        }
+        return new TagVector(ids, ws);
+    }
+
+    /**
+     * Get the number of tags in this vector.
+     * @return The number of tags with weights.
+     */
+    public int size() {
+        return tagIds.length;
+    }
+
+    /**
+     * Get a tag ID in this vector.
+     * @param i The position, between 0 and {@link #size()}.
+     * @return The {@code i}-th tag ID, in increasing order.
+     */
+    public int getTagId(int i) {
+        return tagIds[i];
+    }
+
+    /**
+     * Get a tag weight in this vector.
+     * @param i The position, between 0 and {@link #size()}.
+     * @return The weight of the {@code i}-th tag.
+     */
+    public float getWeight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * Find a tag in this vector.
+     * @param tagId The tag ID.
+     * @return The tag's position, or a negative value if the vector has no weight for the tag.
+     */
+    public int find(int tagId) {
+        return Arrays.binarySearch(tagIds, tagId);
+    }
+
+    /**
+     * Get the Euclidean norm of this vector.
+     * @return The vector's norm.
+     */
+    public double getNorm() {
+        return norm;
+    }
+
+    /**
+     * Compute the dot product of this vector with another vector over the same dictionary.
+     * @param other The other vector.
+     * @return The dot product, computed by merging the two sorted tag lists.
+     */
+    public double dot(TagVector other) {
+        int[] oids = other.tagIds;
+        float[] ows = other.weights;
+        double sum = 0;
+        int i = 0, j = 0;
+        while (i < tagIds.length && j < oids.length) {
+            int a = tagIds[i], b = oids[j];
+            if (a == b) {
+                sum += weights[i] * ows[j];
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+}
@@ -1,55 +1,69 @@
 package org.lenskit.mooc.cbf;
 
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import org.lenskit.data.ratings.Rating;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Build a user profile from all positive ratings.
+ *
+ * <p>The profile is the sum of the vectors of the items the user rated positively, so it can be updated
+ * incrementally.</p>
  */
-public class ThresholdUserProfileBuilder implements UserProfileBuilder {
+public class ThresholdUserProfileBuilder extends AbstractTagProfileBuilder implements IncrementalUserProfileBuilder {
     /**
      * The lowest rating that will be considered in the user's profile.
      */
     private static final double RATING_THRESHOLD = 3.5;
 
-    /**
-     * The tag model, to get item tag vectors.
-     */
-    private final TFIDFModel model;
-
     @Inject
     public ThresholdUserProfileBuilder(TFIDFModel m) {
-        model = m;
+        super(m);
     }
 
     @Override
-    public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
-        // Create a new vector over tags to accumulate the user profile
-        Map<String,Double> profile = new HashMap<>();
+    public void buildTagProfile(@Nonnull List<Rating> ratings, @Nonnull TagProfile profile) {
+        profile.clear();
 
         // Iterate over the user's ratings to build their profile
         for (Rating r: ratings) {
             if (r.getValue() >= RATING_THRESHOLD) {
+                // Get this item's vector and add it to the user's profile
+                profile.add(model.getItemTagVector(r.getItemId()), 1);
+            }
+        }
+    }
 
+    @Override
+    public UserProfileAccumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    private class Accumulator implements UserProfileAccumulator {
+        // A vector over tag IDs to accumulate the user profile
+        private final Int2DoubleOpenHashMap profile = new Int2DoubleOpenHashMap();
+
+        @Override
+        public void addRating(@Nonnull Rating r) {
+            if (r.getValue() >= RATING_THRESHOLD) {
                 // Get this item's vector and add it to the user's profile
-                Map<String, Double> itemVector = model.getItemVector(r.getItemId());
-                for(Map.Entry<String, Double> entry : itemVector.entrySet()){
-                    String tag = entry.getKey();
-                    if(! profile.containsKey(tag)){
-                        profile.put(tag, entry.getValue());
-                    }else{
-                        profile.put(tag, entry.getValue()+profile.get(tag));
-                    }
+                TagVector itemVector = model.getItemTagVector(r.getItemId());
+                for (int i = 0, n = itemVector.size(); i < n; i++) {
+                    profile.addTo(itemVector.getTagId(i), itemVector.getWeight(i));
                 }
             }
         }
 
-        // The profile is accumulated, return it.
-        return profile;
+        @Override
+        public void getProfile(@Nonnull TagProfile into) {
+            into.clear();
+            for (Int2DoubleMap.Entry e: profile.int2DoubleEntrySet()) {
+                into.set(e.getIntKey(), e.getDoubleValue());
+            }
+        }
     }
 }
@@ -0,0 +1,31 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Accumulates a user profile one rating at a time.  Profile builders whose profiles are sums over the user's
+ * ratings provide accumulators, so that a profile can be updated when a new rating arrives instead of being
+ * rebuilt from all of the user's ratings.
+ *
+ * <p>Accumulators are not thread-safe.</p>
+ *
+ * @see IncrementalUserProfileBuilder
+ */
+public interface UserProfileAccumulator {
+    /**
+     * Add a rating to the profile.
+     * @param rating The new rating.  It must not already be in the profile; changed ratings cannot be
+     *               applied incrementally.
+     */
+    void addRating(@Nonnull Rating rating);
+
+    /**
+     * Get the current profile.
+     * @param profile The buffer to receive the profile, as it would be built by
+     *                {@link TagProfileBuilder#buildTagProfile(java.util.List, TagProfile)} for the ratings added
+     *                so far.  It is cleared first.
+     */
+    void getProfile(@Nonnull TagProfile profile);
+}
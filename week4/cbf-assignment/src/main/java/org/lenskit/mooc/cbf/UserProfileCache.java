@@ -0,0 +1,227 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of user profiles, in front of the {@link UserProfileBuilder}.
+ *
+ * <p>On a miss, the user's ratings are loaded from the DAO and the profile is built into a per-thread
+ * {@link TagProfile} buffer, then stored as a compact {@link TagVector}.  Profiles are evicted when
+ * the cache exceeds its {@linkplain ProfileCacheSize size}, and when they are older than the
+ * {@linkplain ProfileCacheExpiry expiry time}.  Hit and miss counts are available from {@link #getStats()}.</p>
+ *
+ * <p>When a new rating arrives, {@link #addRating(Rating)} updates the user's cached profile in place if the
+ * builder is an {@link IncrementalUserProfileBuilder}, and otherwise drops it so it is rebuilt on the next
+ * request.  A rating that arrives while the user's profile is being loaded may be missed by the load's DAO read,
+ * so the loaded profile is dropped once the load finishes, and rebuilt on the next request.</p>
+ *
+ * <p>The cache lives as long as the recommender that contains it, so a server should keep its recommender
+ * around rather than build a new one per request.</p>
+ */
+@ThreadSafe
+public class UserProfileCache {
+    private static final Logger logger = LoggerFactory.getLogger(UserProfileCache.class);
+
+    private final DataAccessObject dao;
+    private final TFIDFModel model;
+    private final UserProfileBuilder builder;
+    private final Cache<Long, CachedProfile> cache;
+    /**
+     * Users whose profiles are being loaded, mapped to whether a rating has arrived during the load.
+     */
+    private final ConcurrentMap<Long, Boolean> loads = new ConcurrentHashMap<>();
+    private final ThreadLocal<TagProfile> buffers = new ThreadLocal<TagProfile>() {
+        @Override
+        protected TagProfile initialValue() {
+            return new TagProfile(model.getTagDictionary());
+        }
+    };
+
+    /**
+     * Construct a new profile cache.
+     * @param dao The data access object, for looking up users' ratings.
+     * @param m The tag model.
+     * @param upb The user profile builder.
+     * @param size The maximum number of profiles to cache.
+     * @param expiry The number of seconds to keep a profile after it was built or last updated.
+     */
+    @Inject
+    public UserProfileCache(DataAccessObject dao, TFIDFModel m, UserProfileBuilder upb,
+                            @ProfileCacheSize int size, @ProfileCacheExpiry int expiry) {
+        this.dao = dao;
+        model = m;
+        builder = upb;
+        cache = CacheBuilder.newBuilder()
+                            .maximumSize(size)
+                            .expireAfterWrite(expiry, TimeUnit.SECONDS)
+                            .recordStats()
+                            .build();
+    }
+
+    /**
+     * Get a user's profile, building it if it is not cached.
+     * @param user The user ID.
+     * @return The user's profile, as a vector over the model's tag dictionary.  Tags of the profile that are not
+     *         in the dictionary are dropped.
+     */
+    public TagVector getProfileVector(final long user) {
+        // the cache runs the loader on this thread, if it runs it at all
+        final boolean[] loaded = new boolean[1];
+        CachedProfile profile;
+        try {
+            profile = cache.get(user, new Callable<CachedProfile>() {
+                @Override
+                public CachedProfile call() {
+                    loaded[0] = true;
+                    loads.put(user, Boolean.FALSE);
+                    return buildProfile(user);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("error building profile for user " + user, e.getCause());
+        } finally {
+            if (loaded[0] && Boolean.TRUE.equals(loads.remove(user))) {
+                logger.debug("rating for user {} arrived while loading profile, dropping it", user);
+                cache.invalidate(user);
+            }
+        }
+        return profile.getVector(buffers.get());
+    }
+
+    /**
+     * Get a user's profile as a map of tags, building it if it is not cached.
+     * @param user The user ID.
+     * @return A read-only view of the user's {@linkplain #getProfileVector(long) profile vector}.
+     */
+    public Map<String, Double> getProfile(long user) {
+        return model.asTagMap(getProfileVector(user));
+    }
+
+    /**
+     * Update a user's cached profile with a new rating.  If the user's profile is not cached, this does nothing;
+     * the profile will include the rating when it is next built from the DAO.  If the profile is being loaded, the
+     * loaded profile is dropped when the load finishes.
+     *
+     * @param rating The new rating.  It must not be in the ratings the cached profile was built from.  A changed
+     *               rating should be handled with {@link #invalidate(long)} instead.
+     */
+    public void addRating(@Nonnull Rating rating) {
+        long user = rating.getUserId();
+        // look up through the map view, which leaves the hit and miss counts alone
+        CachedProfile profile = cache.asMap().get(user);
+        if (profile == null) {
+            // a loading profile is not present yet, so mark the load stale
+            if (loads.replace(user, Boolean.FALSE, Boolean.TRUE) || loads.containsKey(user)) {
+                return;
+            }
+            // a load inserts its profile before it finishes, so look again for one that finished in between
+            profile = cache.asMap().get(user);
+            if (profile == null) {
+                return;
+            }
+        }
+        if (profile.addRating(rating)) {
+            // re-insert to restart the profile's expiry time
+            cache.put(user, profile);
+        } else {
+            cache.invalidate(user);
+        }
+    }
+
+    /**
+     * Drop a user's cached profile, so it is rebuilt on the next request.
+     * @param user The user ID.
+     */
+    public void invalidate(long user) {
+        cache.invalidate(user);
+    }
+
+    /**
+     * Get the cache's statistics.
+     * @return The hit, miss and eviction counts of the cache.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private CachedProfile buildProfile(long user) {
+        List<Rating> ratings = dao.query(Rating.class)
+                                  .withAttribute(CommonAttributes.USER_ID, user)
+                                  .get();
+        logger.debug("building profile for user {} from {} ratings", user, ratings.size());
+        TagProfile buffer = buffers.get();
+        if (builder instanceof IncrementalUserProfileBuilder) {
+            UserProfileAccumulator acc = ((IncrementalUserProfileBuilder) builder).newAccumulator();
+            for (Rating r: ratings) {
+                acc.addRating(r);
+            }
+            acc.getProfile(buffer);
+            return new CachedProfile(acc, buffer.toTagVector());
+        } else if (builder instanceof TagProfileBuilder) {
+            ((TagProfileBuilder) builder).buildTagProfile(ratings, buffer);
+            return new CachedProfile(null, buffer.toTagVector());
+        } else {
+            buffer.clear();
+            buffer.add(builder.makeUserProfile(ratings));
+            return new CachedProfile(null, buffer.toTagVector());
+        }
+    }
+
+    /**
+     * A cached profile, with the accumulator to update it if the builder supports that.
+     */
+    private static class CachedProfile {
+        private final UserProfileAccumulator accumulator;
+        private TagVector vector;
+
+        CachedProfile(UserProfileAccumulator acc, TagVector vec) {
+            accumulator = acc;
+            vector = vec;
+        }
+
+        /**
+         * Get the profile vector, rebuilding it from the accumulator if it has been updated.
+         * @param buffer A scratch buffer to rebuild the profile in.
+         */
+        synchronized TagVector getVector(TagProfile buffer) {
+            if (vector == null) {
+                accumulator.getProfile(buffer);
+                vector = buffer.toTagVector();
+            }
+            return vector;
+        }
+
+        /**
+         * Add a rating to the profile.
+         * @return {@code true} if the profile was updated, {@code false} if it cannot be updated incrementally.
+         */
+        synchronized boolean addRating(Rating rating) {
+            if (accumulator == null) {
+                return false;
+            }
+            accumulator.addRating(rating);
+            // the profile vector is rebuilt on the next request
+            vector = null;
+            return true;
+        }
+    }
+}
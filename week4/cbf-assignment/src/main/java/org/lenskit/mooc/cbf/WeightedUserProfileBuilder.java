@@ -1,55 +1,80 @@
 package org.lenskit.mooc.cbf;
 
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import org.lenskit.data.ratings.Rating;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Build a user profile from all positive ratings.
+ *
+ * <p>The profile is the sum of the item vectors weighted by {@code r - avg}, which is the same as
+ * {@code sum(r * v) - avg * sum(v)}.  The accumulator keeps those two sums and the user's rating sum and
+ * count, so the profile can be updated incrementally even though each new rating changes the average.</p>
  */
-public class WeightedUserProfileBuilder implements UserProfileBuilder {
-    /**
-     * The tag model, to get item tag vectors.
-     */
-    private final TFIDFModel model;
-
+public class WeightedUserProfileBuilder extends AbstractTagProfileBuilder implements IncrementalUserProfileBuilder {
     @Inject
     public WeightedUserProfileBuilder(TFIDFModel m) {
-        model = m;
+        super(m);
     }
 
     @Override
-    public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
-        // Create a new vector over tags to accumulate the user profile
-        Map<String, Double> profile = new HashMap<>();
+    public void buildTagProfile(@Nonnull List<Rating> ratings, @Nonnull TagProfile profile) {
+        profile.clear();
+        if (ratings.isEmpty()) {
+            return;
+        }
 
         // Normalize the user's ratings
-        // Build the user's weighted profile
+        double ratingSum = 0;
+        for (Rating r: ratings) {
+            ratingSum += r.getValue();
+        }
+        double avgRating = ratingSum / ratings.size();
 
-        double avgRating = 0d;
-        for(Rating r : ratings){
-            avgRating += r.getValue();
+        // Build the user's weighted profile
+        for (Rating r: ratings) {
+            profile.add(model.getItemTagVector(r.getItemId()), r.getValue() - avgRating);
         }
+    }
 
-        avgRating = avgRating/ratings.size();
-        for (Rating r : ratings) {
-            // Get this item's vector and add it to the user's profile
-            Map<String, Double> itemVector = model.getItemVector(r.getItemId());
-            for (Map.Entry<String, Double> entry : itemVector.entrySet()) {
-                String tag = entry.getKey();
-                if (!profile.containsKey(tag)) {
-                    profile.put(tag, entry.getValue()*(r.getValue()-avgRating));
-                } else {
-                    profile.put(tag, entry.getValue()*(r.getValue()-avgRating) + profile.get(tag));
-                }
+    @Override
+    public UserProfileAccumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    private class Accumulator implements UserProfileAccumulator {
+        // Rating-weighted and unweighted sums of the item vectors, over tag IDs
+        private final Int2DoubleOpenHashMap weightedSum = new Int2DoubleOpenHashMap();
+        private final Int2DoubleOpenHashMap vectorSum = new Int2DoubleOpenHashMap();
+        private double ratingSum;
+        private int ratingCount;
+
+        @Override
+        public void addRating(@Nonnull Rating r) {
+            ratingSum += r.getValue();
+            ratingCount += 1;
+            // Get this item's vector and add it to the sums
+            TagVector itemVector = model.getItemTagVector(r.getItemId());
+            for (int i = 0, n = itemVector.size(); i < n; i++) {
+                int tag = itemVector.getTagId(i);
+                float w = itemVector.getWeight(i);
+                weightedSum.addTo(tag, w * r.getValue());
+                vectorSum.addTo(tag, w);
             }
         }
 
-        // The profile is accumulated, return it.
-        return profile;
+        @Override
+        public void getProfile(@Nonnull TagProfile into) {
+            into.clear();
+            double avgRating = ratingSum / ratingCount;
+            for (Int2DoubleMap.Entry e: weightedSum.int2DoubleEntrySet()) {
+                int tag = e.getIntKey();
+                into.set(tag, e.getDoubleValue() - avgRating * vectorSum.get(tag));
+            }
+        }
     }
 }
@@ -0,0 +1,168 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.lenskit.api.ResultList;
+import org.lenskit.results.ResultAccumulator;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare top-K retrieval through the {@linkplain TFIDFLSHIndex LSH index} against exact scoring of every
+ * item, on a synthetic catalog with a skewed tag distribution.  Queries are profiles summed from a few random
+ * items, like a threshold profile.
+ *
+ * <p>JMH measures the time per query; at the end of each trial, the recall@K of the LSH results against the
+ * exact top K, and the mean number of candidates scored, are printed for the same queries.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LSHRecallBenchmark {
+    private static final int TAG_COUNT = 2000;
+    private static final int QUERY_COUNT = 200;
+
+    @Param({"10000", "50000"})
+    public int itemCount;
+
+    @Param({"8"})
+    public int tableCount;
+
+    @Param({"6", "10"})
+    public int bitCount;
+
+    @Param({"0", "1", "2"})
+    public int probeCount;
+
+    @Param({"10"})
+    public int k;
+
+    private TFIDFModel model;
+    private TFIDFLSHIndex index;
+    private TagVector[] queries;
+    private int nextQuery;
+
+    @Setup
+    public void createModel() {
+        Random rng = new Random(42);
+        List<String> tags = new ArrayList<>();
+        for (int t = 0; t < TAG_COUNT; t++) {
+            tags.add("tag" + t);
+        }
+        TagDictionary dict = TagDictionary.create(tags);
+
+        long[] ids = new long[itemCount];
+        TagVector[] vectors = new TagVector[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            ids[i] = i;
+            vectors[i] = randomVector(rng, 5 + rng.nextInt(25));
+        }
+        model = new TFIDFModel(dict, SortedKeyIndex.create(ids), vectors);
+        index = new TFIDFLSHIndexProvider(model, tableCount, bitCount, probeCount).get();
+
+        queries = new TagVector[QUERY_COUNT];
+        for (int q = 0; q < QUERY_COUNT; q++) {
+            float[] sum = new float[TAG_COUNT];
+            for (int j = 0; j < 5; j++) {
+                TagVector v = vectors[rng.nextInt(itemCount)];
+                for (int x = 0; x < v.size(); x++) {
+                    sum[v.getTagId(x)] += v.getWeight(x);
+                }
+            }
+            queries[q] = denseToVector(sum);
+        }
+    }
+
+    /**
+     * Make a random unit vector.  Low tag IDs are much more common than high ones.
+     */
+    private static TagVector randomVector(Random rng, int ntags) {
+        float[] dense = new float[TAG_COUNT];
+        for (int j = 0; j < ntags; j++) {
+            dense[rng.nextInt(rng.nextInt(TAG_COUNT) + 1)] += rng.nextFloat();
+        }
+        double norm = 0;
+        for (float w: dense) {
+            norm += w * w;
+        }
+        norm = Math.sqrt(norm);
+        for (int t = 0; t < TAG_COUNT; t++) {
+            dense[t] /= norm;
+        }
+        return denseToVector(dense);
+    }
+
+    private static TagVector denseToVector(float[] dense) {
+        int n = 0;
+        int[] ids = new int[dense.length];
+        float[] ws = new float[dense.length];
+        for (int t = 0; t < dense.length; t++) {
+            if (dense[t] != 0) {
+                ids[n] = t;
+                ws[n] = dense[t];
+                n++;
+            }
+        }
+        return new TagVector(Arrays.copyOf(ids, n), Arrays.copyOf(ws, n));
+    }
+
+    private TagVector nextQuery() {
+        TagVector q = queries[nextQuery];
+        nextQuery = (nextQuery + 1) % QUERY_COUNT;
+        return q;
+    }
+
+    private ResultList exactTopK(TagVector query) {
+        ResultAccumulator acc = ResultAccumulator.create(k);
+        for (int i = 0; i < itemCount; i++) {
+            acc.add(i, query.dot(model.getTagVectorAt(i)));
+        }
+        return acc.finish();
+    }
+
+    private ResultList lshTopK(TagVector query) {
+        ResultAccumulator acc = ResultAccumulator.create(k);
+        for (int i: index.findCandidates(query)) {
+            acc.add(i, query.dot(model.getTagVectorAt(i)));
+        }
+        return acc.finish();
+    }
+
+    @Benchmark
+    public ResultList exact() {
+        return exactTopK(nextQuery());
+    }
+
+    @Benchmark
+    public ResultList lsh() {
+        return lshTopK(nextQuery());
+    }
+
+    @TearDown
+    public void reportRecall() {
+        long hits = 0;
+        long candidates = 0;
+        for (TagVector query: queries) {
+            IntOpenHashSet found = new IntOpenHashSet();
+            for (long item: lshTopK(query).idList()) {
+                found.add((int) item);
+            }
+            for (long item: exactTopK(query).idList()) {
+                if (found.contains((int) item)) {
+                    hits++;
+                }
+            }
+            candidates += index.findCandidates(query).length;
+        }
+        System.out.format("%nrecall@%d = %.3f, mean candidates = %.0f of %d items%n",
+                          k, hits / (double) (k * QUERY_COUNT), candidates / (double) QUERY_COUNT, itemCount);
+    }
+}
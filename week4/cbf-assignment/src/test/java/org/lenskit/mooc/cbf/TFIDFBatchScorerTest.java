@@ -0,0 +1,83 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+public class TFIDFBatchScorerTest {
+    private EntityFactory factory = new EntityFactory();
+    private TFIDFModel model;
+    private DataAccessObject dao;
+
+    @Before
+    public void createData() {
+        model = TFIDFModelProviderTest.createModel();
+        List<Rating> ratings = new ArrayList<>();
+        for (long user = 1; user <= 600; user++) {
+            ratings.add(factory.rating(user, 1 + user % 3, 1 + user % 5));
+            ratings.add(factory.rating(user, 1 + (user / 3) % 3, 1 + (user / 5) % 5));
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        dao = data.get();
+    }
+
+    @Test
+    public void testBatchMatchesScorer() {
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        checkBatch(builder, new TFIDFBatchScorer(dao, model, builder, 4));
+    }
+
+    @Test
+    public void testSerialBatchReusesBuffers() {
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        TFIDFBatchScorer batch = new TFIDFBatchScorer(dao, model, builder, 1);
+        // the second run reuses the first run's scratch buffers on this thread
+        checkBatch(builder, batch);
+        checkBatch(builder, batch);
+    }
+
+    private void checkBatch(WeightedUserProfileBuilder builder, TFIDFBatchScorer batch) {
+        TFIDFItemScorer scorer = new TFIDFItemScorer(model, new UserProfileCache(dao, model, builder, 0, 60));
+
+        final ConcurrentMap<String, Double> scores = new ConcurrentHashMap<>();
+        LongArrayList users = new LongArrayList();
+        for (long user = 1; user <= 600; user++) {
+            users.add(user);
+        }
+        LongArrayList items = LongArrayList.wrap(new long[]{1, 2, 3, 4});
+        batch.score(users, items, new BatchScoreConsumer() {
+            @Override
+            public void score(long user, long item, double score) {
+                scores.put(user + ":" + item, score);
+            }
+        });
+
+        int expected = 0;
+        for (long user: users) {
+            ResultMap results = scorer.scoreWithDetails(user, items);
+            for (Result r: results) {
+                expected += 1;
+                assertThat(scores.get(user + ":" + r.getId()), closeTo(r.getScore(), 1.0e-6));
+            }
+        }
+        assertThat(expected, greaterThan(0));
+        assertThat(scores.size(), equalTo(expected));
+    }
+}
@@ -0,0 +1,88 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TFIDFItemScorerTest {
+    private EntityFactory factory = new EntityFactory();
+    private TFIDFModel model;
+    private TFIDFItemScorer scorer;
+    private Map<String, Double> profile = ImmutableMap.of("walrus", 0.8, "hamster", -0.3, "unicorn", 1.0);
+
+    @Before
+    public void createScorer() {
+        model = TFIDFModelProviderTest.createModel();
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(Collections.singletonList(factory.rating(42, 1, 4.0)));
+        UserProfileBuilder upb = new UserProfileBuilder() {
+            @Override
+            public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
+                return profile;
+            }
+        };
+        scorer = new TFIDFItemScorer(model, new UserProfileCache(data.get(), model, upb, 100, 60));
+    }
+
+    /**
+     * Compute the cosine between the profile and an item by walking the item's tags.
+     */
+    private double cosine(long item) {
+        double dot = 0, inorm = 0, unorm = 0;
+        for (Map.Entry<String, Double> e: model.getItemVector(item).entrySet()) {
+            Double u = profile.get(e.getKey());
+            if (u != null) {
+                dot += u * e.getValue();
+            }
+            inorm += e.getValue() * e.getValue();
+        }
+        for (double u: profile.values()) {
+            unorm += u * u;
+        }
+        return dot / (Math.sqrt(inorm) * Math.sqrt(unorm));
+    }
+
+    @Test
+    public void testScoresMatchCosine() {
+        ResultMap scores = scorer.scoreWithDetails(42, Arrays.asList(1L, 2L, 3L));
+        assertThat(scores.size(), equalTo(3));
+        for (Result r: scores) {
+            assertThat(r.getScore(), closeTo(cosine(r.getId()), 1.0e-6));
+        }
+        // item 3 shares no tags with the profile
+        assertThat(scores.getScore(3), closeTo(0, 1.0e-6));
+    }
+
+    @Test
+    public void testRepeatedScoresReuseAccumulator() {
+        // the accumulator is reused, so leftovers from the first request would change the second
+        ResultMap first = scorer.scoreWithDetails(42, Arrays.asList(1L, 2L, 3L));
+        ResultMap second = scorer.scoreWithDetails(42, Arrays.asList(1L, 2L, 3L));
+        for (Result r: first) {
+            assertThat(second.getScore(r.getId()), equalTo(r.getScore()));
+        }
+    }
+
+    @Test
+    public void testUnknownItem() {
+        ResultMap scores = scorer.scoreWithDetails(42, Arrays.asList(1L, 17L));
+        assertThat(scores.size(), equalTo(1));
+        assertThat(scores.get(17L), nullValue());
+    }
+}
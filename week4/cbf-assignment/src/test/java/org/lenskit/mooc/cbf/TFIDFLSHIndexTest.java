@@ -0,0 +1,177 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.Test;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TFIDFLSHIndexTest {
+    @Test
+    public void testItemFindsItself() {
+        TFIDFModel model = TFIDFModelProviderTest.createModel();
+        TFIDFLSHIndex index = new TFIDFLSHIndexProvider(model, 4, 6, 1).get();
+        assertThat(index.getTableCount(), equalTo(4));
+        for (long item = 1; item <= 3; item++) {
+            int idx = model.getItemIndex().getIndex(item);
+            int[] cands = index.findCandidates(model.getItemTagVector(item));
+            Arrays.sort(cands);
+            assertThat(Arrays.binarySearch(cands, idx), greaterThan(-1));
+        }
+    }
+
+    @Test
+    public void testBucketsAreSmallerThanCatalog() {
+        int n = 2000;
+        long[] ids = new long[n];
+        TagVector[] vectors = new TagVector[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+            // each item has a single tag, so items with different tags are orthogonal
+            vectors[i] = new TagVector(new int[]{i % 100}, new float[]{1});
+        }
+        TFIDFModel model = new TFIDFModel(tagsDictionary(100), SortedKeyIndex.create(ids), vectors);
+        TFIDFLSHIndex index = new TFIDFLSHIndexProvider(model, 2, 12, 1).get();
+        int[] cands = index.findCandidates(vectors[5]);
+        assertThat(cands.length, greaterThan(19));
+        assertThat(cands.length, lessThan(n / 10));
+    }
+
+    @Test
+    public void testExactBucketIsSubsetOfProbes() {
+        TFIDFModel model = clusteredModel(2000, 200, 100);
+        TFIDFLSHIndex exact = new TFIDFLSHIndexProvider(model, 8, 8, 0).get();
+        TFIDFLSHIndex probed = new TFIDFLSHIndexProvider(model, 8, 8, 1).get();
+        assertThat(exact.getProbeCount(), equalTo(0));
+        long nexact = 0, nprobed = 0;
+        for (int i = 0; i < 2000; i += 10) {
+            TagVector v = model.getTagVectorAt(i);
+            int[] ecands = exact.findCandidates(v);
+            int[] pcands = probed.findCandidates(v);
+            Arrays.sort(pcands);
+            // an item always lands in its own exact bucket
+            assertThat(Arrays.binarySearch(pcands, i), greaterThan(-1));
+            assertThat(ecands.length, greaterThan(0));
+            for (int c: ecands) {
+                assertThat(Arrays.binarySearch(pcands, c), greaterThan(-1));
+            }
+            nexact += ecands.length;
+            nprobed += pcands.length;
+        }
+        assertThat(nexact, lessThan(nprobed));
+    }
+
+    /**
+     * With the default table, bit, and probe counts, the index must find most of each query's true neighbors
+     * while scoring under a third of the catalog.  Uniform hashing would give at most a quarter; clustered items
+     * share buckets, so they come in a little above that.
+     */
+    @Test
+    public void testDefaultsBoundCandidatesAndKeepRecall() {
+        int n = 2000;
+        TFIDFModel model = clusteredModel(n, 200, 100);
+        TFIDFLSHIndex index = new TFIDFLSHIndexProvider(model, 32, 8, 1).get();
+
+        int nqueries = 0;
+        double recall = 0;
+        double fraction = 0;
+        for (int q = 0; q < n; q += 10) {
+            TagVector query = model.getTagVectorAt(q);
+            IntSet cands = new IntOpenHashSet(index.findCandidates(query));
+            int[] truth = topNeighbors(model, query, 10);
+            int found = 0;
+            for (int i: truth) {
+                if (cands.contains(i)) {
+                    found++;
+                }
+            }
+            recall += found / 10.0;
+            fraction += cands.size() / (double) n;
+            nqueries++;
+        }
+        assertThat(recall / nqueries, greaterThanOrEqualTo(0.8));
+        assertThat(fraction / nqueries, lessThan(1 / 3.0));
+    }
+
+    /**
+     * Create a model whose items are noisy copies of random cluster centers, so each item has close neighbors.
+     */
+    private static TFIDFModel clusteredModel(int nitems, int ntags, int nclusters) {
+        Random rng = new Random(42);
+        TagVector[] centers = new TagVector[nclusters];
+        for (int c = 0; c < nclusters; c++) {
+            centers[c] = randomVector(rng, ntags, 8, null);
+        }
+        long[] ids = new long[nitems];
+        TagVector[] vectors = new TagVector[nitems];
+        for (int i = 0; i < nitems; i++) {
+            ids[i] = i;
+            vectors[i] = randomVector(rng, ntags, 2, centers[rng.nextInt(nclusters)]);
+        }
+        return new TFIDFModel(tagsDictionary(ntags), SortedKeyIndex.create(ids), vectors);
+    }
+
+    private static TagVector randomVector(Random rng, int ntags, int nextra, TagVector base) {
+        float[] dense = new float[ntags];
+        if (base != null) {
+            for (int j = 0; j < base.size(); j++) {
+                dense[base.getTagId(j)] = base.getWeight(j) * (0.75f + 0.5f * rng.nextFloat());
+            }
+        }
+        for (int j = 0; j < nextra; j++) {
+            dense[rng.nextInt(ntags)] += rng.nextFloat() * (base == null ? 1 : 0.5f);
+        }
+        int size = 0;
+        for (float w: dense) {
+            if (w > 0) {
+                size++;
+            }
+        }
+        int[] tags = new int[size];
+        float[] ws = new float[size];
+        size = 0;
+        for (int t = 0; t < ntags; t++) {
+            if (dense[t] > 0) {
+                tags[size] = t;
+                ws[size++] = dense[t];
+            }
+        }
+        return new TagVector(tags, ws);
+    }
+
+    private static int[] topNeighbors(TFIDFModel model, TagVector query, int k) {
+        int n = model.getItemIndex().size();
+        final double[] sims = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            TagVector v = model.getTagVectorAt(i);
+            sims[i] = query.dot(v) / (query.getNorm() * v.getNorm());
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(sims[b], sims[a]);
+            }
+        });
+        int[] top = new int[k];
+        for (int i = 0; i < k; i++) {
+            top[i] = order[i];
+        }
+        return top;
+    }
+
+    private static TagDictionary tagsDictionary(int ntags) {
+        String[] tags = new String[ntags];
+        for (int t = 0; t < ntags; t++) {
+            tags[t] = String.format("tag%03d", t);
+        }
+        return TagDictionary.create(Arrays.asList(tags));
+    }
+}
@@ -10,9 +10,13 @@ import org.lenskit.data.entities.Entity;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -80,4 +84,54 @@ public class TFIDFModelProviderTest {
         assertThat(v3.keySet(),
                    contains("jubjub bird"));
     }
+
+    @Test
+    public void testTagVectors() {
+        TagDictionary dict = model.getTagDictionary();
+        assertThat(dict.size(), equalTo(3));
+        // tag IDs are assigned in sorted order
+        assertThat(dict.getTag(0), equalTo("hamster"));
+        assertThat(dict.getId("walrus"), equalTo(2));
+        assertThat(dict.getId("unicorn"), equalTo(-1));
+
+        TagVector v2 = model.getItemTagVector(2);
+        Map<String, Double> m2 = model.getItemVector(2);
+        assertThat(v2.size(), equalTo(2));
+        assertThat(v2.getTagId(0), lessThan(v2.getTagId(1)));
+        for (int i = 0; i < v2.size(); i++) {
+            String tag = dict.getTag(v2.getTagId(i));
+            assertThat(m2.get(tag), closeTo(v2.getWeight(i), 1.0e-6));
+        }
+        assertThat(v2.getNorm(), closeTo(1.0, 1.0e-6));
+        assertThat(model.getItemTagVector(42).size(), equalTo(0));
+    }
+
+    @Test
+    public void testParallelBuildMatchesSerial() {
+        Random rng = new Random(42);
+        StaticDataSource data = new StaticDataSource("test");
+        List<Entity> tags = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                             .setId(i)
+                             .setAttribute(TagData.ITEM_ID, (long) rng.nextInt(300))
+                             .setAttribute(TagData.TAG, "tag" + rng.nextInt(80))
+                             .build());
+        }
+        data.addSource(tags);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+
+        TFIDFModel serial = new TFIDFModelProvider(data.get(), 1).get();
+        TFIDFModel parallel = new TFIDFModelProvider(data.get(), 4).get();
+        assertThat(parallel.getTagDictionary().size(), equalTo(serial.getTagDictionary().size()));
+        for (long item = 0; item < 300; item++) {
+            TagVector sv = serial.getItemTagVector(item);
+            TagVector pv = parallel.getItemTagVector(item);
+            assertThat(pv.size(), equalTo(sv.size()));
+            for (int i = 0; i < sv.size(); i++) {
+                assertThat(pv.getTagId(i), equalTo(sv.getTagId(i)));
+                assertThat(Float.floatToIntBits(pv.getWeight(i)), equalTo(Float.floatToIntBits(sv.getWeight(i))));
+            }
+        }
+    }
 }
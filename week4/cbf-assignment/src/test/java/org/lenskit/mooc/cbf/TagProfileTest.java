@@ -0,0 +1,70 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TagProfileTest {
+    private EntityFactory factory = new EntityFactory();
+    private TagDictionary dict = TagDictionary.create(Arrays.asList("hamster", "walrus", "zebra"));
+
+    @Test
+    public void testAddAndClear() {
+        TagProfile profile = new TagProfile(dict);
+        profile.add(2, 1.5);
+        profile.add(0, 0.5);
+        profile.add(2, 1.0);
+        assertThat(profile.size(), equalTo(2));
+        assertThat(profile.get(2), closeTo(2.5, 1.0e-9));
+        assertThat(profile.getNorm(), closeTo(Math.sqrt(6.5), 1.0e-9));
+
+        TagVector vec = profile.toTagVector();
+        assertThat(vec.size(), equalTo(2));
+        assertThat(vec.getTagId(0), equalTo(0));
+        assertThat(vec.getTagId(1), equalTo(2));
+
+        profile.clear();
+        assertThat(profile.size(), equalTo(0));
+        assertThat(profile.get(2), equalTo(0.0));
+        profile.set(1, -1);
+        assertThat(profile.toTagMap(), equalTo((Map<String, Double>) ImmutableMap.of("walrus", -1.0)));
+    }
+
+    @Test
+    public void testUnknownTagsCountInNorm() {
+        TagProfile profile = new TagProfile(dict);
+        profile.add(ImmutableMap.of("walrus", 3.0, "unicorn", 4.0));
+        assertThat(profile.size(), equalTo(1));
+        assertThat(profile.getNorm(), closeTo(5, 1.0e-9));
+        assertThat(profile.toTagVector().getNorm(), closeTo(5, 1.0e-9));
+        profile.clear();
+        assertThat(profile.getNorm(), equalTo(0.0));
+    }
+
+    @Test
+    public void testBufferMatchesMap() {
+        TFIDFModel model = TFIDFModelProviderTest.createModel();
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        List<Rating> ratings = Arrays.asList(factory.rating(42, 1, 4.0), factory.rating(42, 2, 2.5));
+        Map<String, Double> expected = builder.makeUserProfile(ratings);
+
+        TagProfile profile = new TagProfile(model.getTagDictionary());
+        // reuse a dirty buffer, as the scorers do
+        profile.add(0, 10);
+        builder.buildTagProfile(ratings, profile);
+        assertThat(profile.size(), equalTo(expected.size()));
+        for (Map.Entry<String, Double> e: expected.entrySet()) {
+            int t = model.getTagDictionary().getId(e.getKey());
+            assertThat(profile.get(t), closeTo(e.getValue(), 1.0e-9));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.lenskit.mooc.cbf;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class UserProfileCacheTest {
+    private EntityFactory factory = new EntityFactory();
+    private TFIDFModel model;
+    private DataAccessObject dao;
+
+    @Before
+    public void createData() {
+        model = TFIDFModelProviderTest.createModel();
+        List<Rating> ratings = new ArrayList<>();
+        ratings.add(factory.rating(42, 1, 4.0));
+        ratings.add(factory.rating(42, 3, 2.0));
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        dao = data.get();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        UserProfileCache cache = new UserProfileCache(dao, model, new WeightedUserProfileBuilder(model), 10, 60);
+        Map<String, Double> p1 = cache.getProfile(42);
+        Map<String, Double> p2 = cache.getProfile(42);
+        assertThat(p2, equalTo(p1));
+        assertThat(cache.getStats().missCount(), equalTo(1L));
+        assertThat(cache.getStats().hitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testIncrementalWeightedUpdate() {
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        UserProfileCache cache = new UserProfileCache(dao, model, builder, 10, 60);
+        cache.getProfile(42);
+        Rating added = factory.rating(42, 2, 5.0);
+        cache.addRating(added);
+
+        Map<String, Double> updated = cache.getProfile(42);
+        Map<String, Double> rebuilt = builder.makeUserProfile(withRating(dao.query(Rating.class).get(), added));
+        assertThat(updated.keySet(), equalTo(rebuilt.keySet()));
+        for (Map.Entry<String, Double> e: rebuilt.entrySet()) {
+            assertThat(updated.get(e.getKey()), closeTo(e.getValue(), 1.0e-6));
+        }
+        assertThat(cache.getStats().missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testNonIncrementalBuilderInvalidates() {
+        UserProfileBuilder builder = new UserProfileBuilder() {
+            @Override
+            public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
+                return Collections.singletonMap("walrus", (double) ratings.size());
+            }
+        };
+        UserProfileCache cache = new UserProfileCache(dao, model, builder, 10, 60);
+        cache.getProfile(42);
+        cache.addRating(factory.rating(42, 2, 5.0));
+        cache.getProfile(42);
+        assertThat(cache.getStats().missCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testRatingDuringLoadInvalidates() {
+        final UserProfileCache[] holder = new UserProfileCache[1];
+        UserProfileBuilder builder = new UserProfileBuilder() {
+            boolean first = true;
+
+            @Override
+            public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
+                if (first) {
+                    // the rating arrives after the DAO read, before the profile is cached
+                    holder[0].addRating(factory.rating(42, 2, 5.0));
+                    first = false;
+                }
+                return Collections.singletonMap("walrus", (double) ratings.size());
+            }
+        };
+        UserProfileCache cache = new UserProfileCache(dao, model, builder, 10, 60);
+        holder[0] = cache;
+        cache.getProfile(42);
+        cache.getProfile(42);
+        cache.getProfile(42);
+        assertThat(cache.getStats().missCount(), equalTo(2L));
+        assertThat(cache.getStats().hitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testRatingAfterLoadUpdates() {
+        UserProfileCache cache = new UserProfileCache(dao, model, new WeightedUserProfileBuilder(model), 10, 60);
+        // no load in flight, and nothing cached
+        cache.addRating(factory.rating(42, 2, 5.0));
+        cache.getProfile(42);
+        cache.getProfile(42);
+        assertThat(cache.getStats().missCount(), equalTo(1L));
+        assertThat(cache.getStats().hitCount(), equalTo(1L));
+    }
+
+    private static List<Rating> withRating(List<Rating> ratings, Rating r) {
+        List<Rating> all = new ArrayList<>(ratings);
+        all.add(r);
+        return all;
+    }
+}
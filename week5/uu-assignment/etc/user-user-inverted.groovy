@@ -0,0 +1,9 @@
+import org.lenskit.api.ItemScorer
+import org.lenskit.mooc.uu.InvertedIndexSimilarityEngine
+import org.lenskit.mooc.uu.SimpleUserUserItemScorer
+import org.lenskit.mooc.uu.UserSimilarityEngine
+
+// use our item scorer
+bind ItemScorer to SimpleUserUserItemScorer
+// compute similarities from the item inverted index
+bind UserSimilarityEngine to InvertedIndexSimilarityEngine
@@ -0,0 +1,7 @@
+import org.lenskit.api.ItemScorer
+import org.lenskit.mooc.uu.BuildThreadCount
+import org.lenskit.mooc.uu.NeighborhoodUserUserItemScorer
+
+// score from precomputed neighborhoods
+bind ItemScorer to NeighborhoodUserUserItemScorer
+set BuildThreadCount to 4
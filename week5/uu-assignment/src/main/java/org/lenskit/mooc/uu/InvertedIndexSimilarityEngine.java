@@ -0,0 +1,108 @@
+package org.lenskit.mooc.uu;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+
+/**
+ * Compute a target user's similarities to all other users at once, as a sparse matrix-vector product: for each
+ * item the target rated, the postings of the {@linkplain ItemRaterIndex item's raters} are added, weighted by
+ * the target's centered rating, into a dense per-thread accumulator over users.  Only users who co-rated an item
+ * with the target do any work: the pass records the users it touches, their similarities are copied out in
+ * order of user index, and only their accumulator entries are reset.  The target is not counted as one of its
+ * own co-raters.
+ *
+ * <p>This costs one pass over the postings of the target's items per request, regardless of how many
+ * similarities are then used, so it pays off when the candidate items have many raters in common.  Looking up
+ * a similarity is a binary search over the co-raters.</p>
+ */
+public class InvertedIndexSimilarityEngine implements UserSimilarityEngine {
+    private final UserVectorModel model;
+    private final ItemRaterIndex index;
+    private final ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>() {
+        @Override
+        protected Accumulator initialValue() {
+            return new Accumulator(model.getUserIndex().size());
+        }
+    };
+
+    /**
+     * Construct a new similarity engine.
+     * @param model The mean-centered user rating vectors.
+     * @param index The item-rater index over the same vectors.
+     */
+    @Inject
+    public InvertedIndexSimilarityEngine(UserVectorModel model, ItemRaterIndex index) {
+        this.model = model;
+        this.index = index;
+    }
+
+    @Override
+    public TargetSimilarities forTarget(int u) {
+        Accumulator acc = accumulators.get();
+        int ntouched = 0;
+        for (int pos = model.getRowStart(u), end = model.getRowEnd(u); pos < end; pos++) {
+            int i = index.getItemIndex().tryGetIndex(model.getItemId(pos));
+            if (i < 0) {
+                continue;
+            }
+            double w = model.getValue(pos);
+            for (int k = index.getPostingStart(i), kend = index.getPostingEnd(i); k < kend; k++) {
+                int v = index.getPostingUser(k);
+                if (!acc.seen[v]) {
+                    acc.seen[v] = true;
+                    acc.touched[ntouched++] = v;
+                }
+                acc.dots[v] += w * index.getPostingValue(k);
+            }
+        }
+
+        // copy out the touched users' similarities, and reset only their accumulator entries
+        Arrays.sort(acc.touched, 0, ntouched);
+        final int[] users = Arrays.copyOf(acc.touched, ntouched);
+        final double[] sims = new double[ntouched];
+        double uNorm = model.getNorm(u);
+        for (int t = 0; t < ntouched; t++) {
+            int v = users[t];
+            sims[t] = acc.dots[v] / (uNorm * model.getNorm(v));
+            acc.dots[v] = 0;
+            acc.seen[v] = false;
+        }
+        // the target touches itself, but is not one of its own co-raters
+        final int count = Arrays.binarySearch(users, u) >= 0 ? ntouched - 1 : ntouched;
+
+        return new TargetSimilarities() {
+            @Override
+            public double get(int v) {
+                int k = Arrays.binarySearch(users, v);
+                // users who share no items with the target have no dot product
+                return k >= 0 ? sims[k] : 0;
+            }
+
+            @Override
+            public int getComputationCount() {
+                return count;
+            }
+
+            @Override
+            public TargetSimilarities forWorker() {
+                // the similarities are only read, so workers can share them
+                return this;
+            }
+        };
+    }
+
+    /**
+     * Scratch space for accumulating one target's dot products on one thread.
+     */
+    private static class Accumulator {
+        private final double[] dots;
+        private final boolean[] seen;
+        private final int[] touched;
+
+        Accumulator(int nusers) {
+            dots = new double[nusers];
+            seen = new boolean[nusers];
+            touched = new int[nusers];
+        }
+    }
+}
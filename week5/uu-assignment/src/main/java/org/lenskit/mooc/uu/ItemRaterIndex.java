@@ -0,0 +1,102 @@
+package org.lenskit.mooc.uu;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An inverted index from items to the users who rated them, with the users' mean-centered ratings.  This is the
+ * transpose of a {@link UserVectorModel}.
+ *
+ * <p>Postings are stored in compressed sparse row form over a {@link SortedKeyIndex} of items, and users are
+ * identified by their index in the user vector model, so similarities can be accumulated into dense arrays over
+ * users.</p>
+ *
+ * @see ItemRaterIndexProvider
+ */
+@Shareable
+@Immutable
+@DefaultProvider(ItemRaterIndexProvider.class)
+public class ItemRaterIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedKeyIndex itemIndex;
+    private final int[] itemOffsets;
+    private final int[] users;
+    private final double[] values;
+
+    /**
+     * Create a new inverted index.
+     * @param items The item index.
+     * @param offsets The posting offsets, of length {@code items.size() + 1}.
+     * @param us The user index of each posting.
+     * @param vals The mean-centered rating of each posting.
+     */
+    ItemRaterIndex(SortedKeyIndex items, int[] offsets, int[] us, double[] vals) {
+        Preconditions.checkArgument(offsets.length == items.size() + 1, "offset count mismatch");
+        Preconditions.checkArgument(us.length == vals.length, "value count mismatch");
+        itemIndex = items;
+        itemOffsets = offsets;
+        users = us;
+        values = vals;
+    }
+
+    /**
+     * Get the index of items in this index.
+     * @return The item index.
+     */
+    public SortedKeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the start of an item's postings.  Postings are sorted by user index.
+     * @param i The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return The position of the item's first posting.
+     */
+    int getPostingStart(int i) {
+        return itemOffsets[i];
+    }
+
+    /**
+     * Get the end of an item's postings.
+     * @param i The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return The position after the item's last posting.
+     */
+    int getPostingEnd(int i) {
+        return itemOffsets[i + 1];
+    }
+
+    /**
+     * Get the user of a posting.
+     * @param k The posting's position.
+     * @return The user index.
+     */
+    int getPostingUser(int k) {
+        return users[k];
+    }
+
+    /**
+     * Get the value of a posting.
+     * @param k The posting's position.
+     * @return The user's mean-centered rating for the item.
+     */
+    double getPostingValue(int k) {
+        return values[k];
+    }
+
+    /**
+     * Find a user's posting for an item.
+     * @param i The item's position in the {@linkplain #getItemIndex() item index}.
+     * @param user The user index.
+     * @return The position of the user's posting, or a negative value if the user did not rate the item.
+     */
+    int findPosting(int i, int user) {
+        return Arrays.binarySearch(users, itemOffsets[i], itemOffsets[i + 1], user);
+    }
+}
@@ -0,0 +1,64 @@
+package org.lenskit.mooc.uu;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Build an {@link ItemRaterIndex} by transposing the {@link UserVectorModel}.
+ */
+public class ItemRaterIndexProvider implements Provider<ItemRaterIndex> {
+    private static final Logger logger = LoggerFactory.getLogger(ItemRaterIndexProvider.class);
+
+    private final UserVectorModel model;
+
+    /**
+     * Construct the index provider.
+     * @param model The user vector model to index.
+     */
+    @Inject
+    public ItemRaterIndexProvider(UserVectorModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public ItemRaterIndex get() {
+        int nusers = model.getUserIndex().size();
+        int nratings = nusers > 0 ? model.getRowEnd(nusers - 1) : 0;
+
+        LongOpenHashSet itemSet = new LongOpenHashSet();
+        for (int pos = 0; pos < nratings; pos++) {
+            itemSet.add(model.getItemId(pos));
+        }
+        SortedKeyIndex items = SortedKeyIndex.fromCollection(itemSet);
+        int nitems = items.size();
+
+        // count the postings of each item, then fill them in user order
+        int[] offsets = new int[nitems + 1];
+        for (int pos = 0; pos < nratings; pos++) {
+            offsets[items.getIndex(model.getItemId(pos)) + 1] += 1;
+        }
+        for (int i = 0; i < nitems; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = new int[nitems];
+        int[] users = new int[nratings];
+        double[] values = new double[nratings];
+        for (int u = 0; u < nusers; u++) {
+            for (int pos = model.getRowStart(u), end = model.getRowEnd(u); pos < end; pos++) {
+                int i = items.getIndex(model.getItemId(pos));
+                int k = offsets[i] + fill[i];
+                fill[i] += 1;
+                users[k] = u;
+                values[k] = model.getValue(pos);
+            }
+        }
+
+        logger.info("indexed {} ratings of {} items", nratings, nitems);
+        return new ItemRaterIndex(items, offsets, users, values);
+    }
+}
@@ -0,0 +1,20 @@
+package org.lenskit.mooc.uu;
+
+import org.grouplens.grapht.annotation.DefaultDouble;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The similarity a user must exceed to be stored as a neighbor in the {@link UserNeighborhoodModel}.  The
+ * default of 0 keeps only positively similar neighbors, as the user-user scorers use.
+ */
+@Documented
+@Qualifier
+@Parameter(Double.class)
+@DefaultDouble(0)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MinNeighborSimilarity {
+}
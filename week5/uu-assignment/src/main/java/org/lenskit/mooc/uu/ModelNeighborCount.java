@@ -0,0 +1,20 @@
+package org.lenskit.mooc.uu;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of neighbors to store for each user in the {@link UserNeighborhoodModel}.  Items are scored from
+ * the raters among these neighbors, so this should be well above the 30 neighbors used for each item.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(250)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ModelNeighborCount {
+}
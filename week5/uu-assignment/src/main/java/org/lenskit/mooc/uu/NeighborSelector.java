@@ -0,0 +1,142 @@
+package org.lenskit.mooc.uu;
+
+/**
+ * Select the most similar neighbors from a stream of candidate neighbors, keeping only those with positive
+ * similarity.
+ *
+ * <p>The selector keeps a bounded min-heap in parallel arrays of user IDs, similarities and the neighbors'
+ * mean-centered ratings, with the least similar retained neighbor at the top.  Candidates with non-positive
+ * similarity are rejected before they reach the heap.  Adding a neighbor costs O(log k) and allocates nothing,
+ * so one selector can be {@linkplain #clear() cleared} and reused for every item in a request.  Neighbors with
+ * equal similarity are ranked by user ID, so the selection does not depend on the order neighbors are added
+ * in.</p>
+ *
+ * <p>Retained neighbors are available by position, in no particular order.</p>
+ */
+public final class NeighborSelector {
+    private final long[] users;
+    private final double[] similarities;
+    private final double[] values;
+    private int size;
+
+    /**
+     * Create a new selector.
+     * @param k The maximum number of neighbors to retain.
+     */
+    public NeighborSelector(int k) {
+        users = new long[k];
+        similarities = new double[k];
+        values = new double[k];
+    }
+
+    /**
+     * Remove all neighbors from the selector.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get the number of neighbors currently retained.
+     * @return The number of retained neighbors.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Offer a neighbor to the selector.
+     * @param user The neighbor's user ID.
+     * @param similarity The neighbor's similarity to the target user.  Neighbors whose similarity is not positive
+     *                   (including {@link Double#NaN}) are ignored.
+     * @param value The neighbor's mean-centered rating for the item.
+     */
+    public void add(long user, double similarity, double value) {
+        if (!(similarity > 0)) {
+            return;
+        }
+        if (size < users.length) {
+            siftUp(size, user, similarity, value);
+            size++;
+        } else if (size > 0 && ranksBefore(user, similarity, users[0], similarities[0])) {
+            siftDown(user, similarity, value);
+        }
+    }
+
+    /**
+     * Get a retained neighbor's user ID.
+     * @param i The position, between 0 and {@link #size()}.
+     * @return The neighbor's user ID.
+     */
+    public long getUser(int i) {
+        return users[i];
+    }
+
+    /**
+     * Get a retained neighbor's similarity.
+     * @param i The position, between 0 and {@link #size()}.
+     * @return The neighbor's similarity to the target user.
+     */
+    public double getSimilarity(int i) {
+        return similarities[i];
+    }
+
+    /**
+     * Get a retained neighbor's mean-centered rating.
+     * @param i The position, between 0 and {@link #size()}.
+     * @return The neighbor's rating, minus their mean.
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    private static boolean ranksBefore(long u1, double s1, long u2, double s2) {
+        return s1 > s2 || (s1 == s2 && u1 < u2);
+    }
+
+    /**
+     * Move a neighbor up from a position until its parent does not rank before it.
+     */
+    private void siftUp(int pos, long user, double sim, double value) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!ranksBefore(users[parent], similarities[parent], user, sim)) {
+                break;
+            }
+            users[pos] = users[parent];
+            similarities[pos] = similarities[parent];
+            values[pos] = values[parent];
+            pos = parent;
+        }
+        users[pos] = user;
+        similarities[pos] = sim;
+        values[pos] = value;
+    }
+
+    /**
+     * Replace the top of the heap with a neighbor and move it down to its place.
+     */
+    private void siftDown(long user, double sim, double value) {
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksBefore(users[child], similarities[child],
+                                                users[child + 1], similarities[child + 1])) {
+                child++;
+            }
+            if (!ranksBefore(user, sim, users[child], similarities[child])) {
+                break;
+            }
+            users[pos] = users[child];
+            similarities[pos] = similarities[child];
+            values[pos] = values[child];
+            pos = child;
+        }
+        users[pos] = user;
+        similarities[pos] = sim;
+        values[pos] = value;
+    }
+}
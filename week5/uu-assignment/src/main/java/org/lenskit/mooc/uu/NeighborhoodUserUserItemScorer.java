@@ -0,0 +1,128 @@
+package org.lenskit.mooc.uu;
+
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.basic.AbstractItemScorer;
+import org.lenskit.results.Results;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * User-user item scorer using precomputed neighborhoods.
+ *
+ * <p>This scores like {@link SimpleUserUserItemScorer}, from the 30 most similar positively-similar users who
+ * rated each item, but it looks for them only among the user's stored neighbors in the
+ * {@link UserNeighborhoodModel} instead of computing similarities at request time.  Each item's raters are found
+ * by intersecting the user's sorted neighbor list with the item's postings in the {@link ItemRaterIndex}, so
+ * scoring does no similarity computation and no DAO queries.  Neighbors outside the stored top
+ * {@linkplain ModelNeighborCount M} are not used, so scores can differ from the on-the-fly scorer for items that
+ * few of the user's nearest neighbors rated.</p>
+ */
+public class NeighborhoodUserUserItemScorer extends AbstractItemScorer {
+    private static final int MAX_NEIGHBOR_NUM = 30;
+    /**
+     * Binary-search the postings when an item has this many times more raters than the user has neighbors.
+     */
+    private static final int SEARCH_RATIO = 8;
+
+    private final UserNeighborhoodModel model;
+    private final ItemRaterIndex index;
+    private final int searchRatio;
+
+    /**
+     * Construct a new item scorer.
+     * @param model The precomputed user neighborhoods.
+     * @param index The item-rater index.
+     */
+    @Inject
+    public NeighborhoodUserUserItemScorer(UserNeighborhoodModel model, ItemRaterIndex index) {
+        this(model, index, SEARCH_RATIO);
+    }
+
+    /**
+     * Construct an item scorer with a different switch between merging and searching the postings.
+     * @param model The precomputed user neighborhoods.
+     * @param index The item-rater index.
+     * @param ratio The number of times more raters than neighbors an item needs to have its postings searched;
+     *              0 always searches, and {@link Integer#MAX_VALUE} always merges.
+     */
+    NeighborhoodUserUserItemScorer(UserNeighborhoodModel model, ItemRaterIndex index, int ratio) {
+        this.model = model;
+        this.index = index;
+        searchRatio = ratio;
+    }
+
+    @Nonnull
+    @Override
+    public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
+        SortedKeyIndex users = model.getUserIndex();
+        int u = users.tryGetIndex(user);
+        if (u < 0 || model.getNeighborCount(u) < 2) {
+            return Results.newResultMap();
+        }
+        double uMean = model.getMean(u);
+        int nstart = model.getRowStart(u);
+        int nend = model.getRowEnd(u);
+
+        NeighborSelector neighbors = new NeighborSelector(MAX_NEIGHBOR_NUM);
+        List<Result> results = new ArrayList<>();
+        for (long item: items) {
+            int i = index.getItemIndex().tryGetIndex(item);
+            if (i < 0) {
+                continue;
+            }
+            neighbors.clear();
+            int pstart = index.getPostingStart(i);
+            int pend = index.getPostingEnd(i);
+            if (pend - pstart > (long) searchRatio * (nend - nstart)) {
+                // popular item: look each neighbor up in its postings
+                for (int n = nstart; n < nend; n++) {
+                    int k = index.findPosting(i, model.getNeighbor(n));
+                    if (k >= 0) {
+                        addNeighbor(neighbors, users, n, k);
+                    }
+                }
+            } else {
+                // merge the two sorted lists of user indexes
+                int n = nstart, k = pstart;
+                while (n < nend && k < pend) {
+                    int nv = model.getNeighbor(n);
+                    int kv = index.getPostingUser(k);
+                    if (nv == kv) {
+                        addNeighbor(neighbors, users, n, k);
+                        n++;
+                        k++;
+                    } else if (nv < kv) {
+                        n++;
+                    } else {
+                        k++;
+                    }
+                }
+            }
+            // Refuse to score items if there are not at least 2 neighbors to contribute to the item's score
+            if (neighbors.size() < 2) {
+                continue;
+            }
+
+            double numerator = 0;
+            double denominator = 0;
+            for (int j = 0; j < neighbors.size(); j++) {
+                double cos = neighbors.getSimilarity(j);
+                numerator += cos * neighbors.getValue(j);
+                denominator += Math.abs(cos);
+            }
+            results.add(Results.create(item, uMean + numerator / denominator));
+        }
+
+        return Results.newResultMap(results);
+    }
+
+    private void addNeighbor(NeighborSelector neighbors, SortedKeyIndex users, int n, int k) {
+        neighbors.add(users.getKey(model.getNeighbor(n)), model.getSimilarity(n), index.getPostingValue(k));
+    }
+}
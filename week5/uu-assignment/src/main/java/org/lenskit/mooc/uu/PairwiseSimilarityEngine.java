@@ -0,0 +1,73 @@
+package org.lenskit.mooc.uu;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+
+import javax.inject.Inject;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compute similarities one pair at a time, by merging the two users' rating vectors, as they are asked for.
+ * Each target's similarities are kept in a map from user index to similarity, so no pair is computed twice in
+ * a request.
+ *
+ * <p>Threads working on the same request in parallel each get a {@linkplain TargetSimilarities#forWorker() worker
+ * view} with its own unlocked map, and only their computation counts are merged.  Views do not see each other's
+ * similarities, so callers give each worker a disjoint set of users to keep every pair computed once.</p>
+ */
+public class PairwiseSimilarityEngine implements UserSimilarityEngine {
+    private final UserVectorModel model;
+
+    /**
+     * Construct a new similarity engine.
+     * @param model The mean-centered user rating vectors.
+     */
+    @Inject
+    public PairwiseSimilarityEngine(UserVectorModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public TargetSimilarities forTarget(int u) {
+        return new MemoizedSimilarities(u, new AtomicInteger());
+    }
+
+    /**
+     * One thread's memo of a target's similarities.
+     */
+    private class MemoizedSimilarities implements TargetSimilarities {
+        private final int target;
+        private final Int2DoubleOpenHashMap similarities = new Int2DoubleOpenHashMap();
+        private final AtomicInteger computationCount;
+
+        /**
+         * Create a memo.
+         * @param u The target user index.
+         * @param count The computation count shared by all the request's memos.
+         */
+        MemoizedSimilarities(int u, AtomicInteger count) {
+            target = u;
+            computationCount = count;
+        }
+
+        @Override
+        public double get(int v) {
+            if (similarities.containsKey(v)) {
+                return similarities.get(v);
+            }
+            double cos = model.cosine(target, v);
+            similarities.put(v, cos);
+            computationCount.incrementAndGet();
+            return cos;
+        }
+
+        @Override
+        public int getComputationCount() {
+            return computationCount.get();
+        }
+
+        @Override
+        public TargetSimilarities forWorker() {
+            return new MemoizedSimilarities(target, computationCount);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.lenskit.mooc.uu;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of candidate items a request must have to be scored in parallel.  Smaller requests are scored on
+ * the calling thread, where they are cheaper than handing work to the {@linkplain ScoringThreadCount scoring
+ * threads}.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(256)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ParallelScoringThreshold {
+}
@@ -0,0 +1,82 @@
+package org.lenskit.mooc.uu;
+
+import com.google.common.base.Preconditions;
+import org.lenskit.inject.Shareable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A bounded thread pool for scoring the candidates of large requests in parallel.
+ *
+ * <p>This component is shareable, so a recommender engine creates one and every recommender built from the
+ * engine uses it; the number of scoring threads is bounded by the {@linkplain ScoringThreadCount thread count}
+ * however many recommenders are open.  The pool's workers are daemon threads that exit when idle, so the pool
+ * does not need to be shut down.  With one thread or fewer there is no pool, and callers score on their own
+ * thread.</p>
+ */
+@Shareable
+@ThreadSafe
+public class ScoringExecutor implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int threadCount;
+    private transient ExecutorService pool;
+
+    /**
+     * Create a scoring executor.
+     * @param nthreads The number of scoring threads.
+     */
+    @Inject
+    public ScoringExecutor(@ScoringThreadCount int nthreads) {
+        threadCount = nthreads;
+        pool = createPool(nthreads);
+    }
+
+    private static ExecutorService createPool(int nthreads) {
+        return nthreads > 1 ? new ForkJoinPool(nthreads) : null;
+    }
+
+    /**
+     * Query whether this executor scores in parallel.
+     * @return {@code true} if there is a pool with more than one thread.
+     */
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Get the number of scoring threads.
+     * @return The number of threads in the pool, or 1 if there is no pool.
+     */
+    public int getThreadCount() {
+        return isParallel() ? threadCount : 1;
+    }
+
+    /**
+     * Run tasks on the pool and wait for them to finish.
+     * @param tasks The tasks to run.
+     * @param <T> The tasks' result type.
+     * @return The tasks' futures, in the order of the tasks; all are done.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     * @throws IllegalStateException if this executor is not {@linkplain #isParallel() parallel}.
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        Preconditions.checkState(pool != null, "no scoring pool with %s threads", threadCount);
+        return pool.invokeAll(tasks);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        pool = createPool(threadCount);
+    }
+}
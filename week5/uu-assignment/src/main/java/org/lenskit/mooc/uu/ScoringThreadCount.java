@@ -0,0 +1,20 @@
+package org.lenskit.mooc.uu;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * The number of threads in the {@linkplain ScoringExecutor scoring pool} that the user-user scorer uses to score
+ * the candidates of large requests.  If this is 1 or less, candidates are always scored on the calling thread.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(1)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ScoringThreadCount {
+}
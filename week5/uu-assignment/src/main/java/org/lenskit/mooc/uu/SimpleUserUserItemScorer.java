@@ -3,6 +3,7 @@ package org.lenskit.mooc.uu;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Maps;
 import it.unimi.dsi.fastutil.PriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleSortedMap;
@@ -17,132 +18,326 @@ import org.lenskit.util.IdBox;
 import org.lenskit.util.ScoredIdAccumulator;
 import org.lenskit.util.TopNScoredIdAccumulator;
 import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.lenskit.util.math.Scalars;
 import org.lenskit.util.math.Vectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 
 /**
  * User-user item scorer.
+ *
+ * <p>Similarities between the target user and the users who rated each candidate item come from a
+ * {@link UserSimilarityEngine}, which computes each similarity at most once per request, either pair by
+ * pair ({@link PairwiseSimilarityEngine}, the default) or all at once from an item inverted index
+ * ({@link InvertedIndexSimilarityEngine}).  The number of similarities computed is logged for each request, and
+ * running totals are available from {@link #getRequestCount()} and {@link #getSimilarityCount()}.</p>
+ *
+ * <p>Candidates are scored independently.  If {@linkplain ScoringThreadCount scoring threads} are configured,
+ * requests with at least {@linkplain ParallelScoringThreshold a threshold} of candidates are scored on the
+ * {@link ScoringExecutor} shared by every recommender from the same engine, in three steps: chunks of candidates
+ * fetch their ratings and collect their raters; the distinct raters are split evenly over the threads, each with
+ * its own {@linkplain UserSimilarityEngine.TargetSimilarities#forWorker() view} of the similarities, so each
+ * similarity is still computed once; and the chunks are scored from those similarities, each worker reusing its
+ * own neighbor selector.  Smaller requests stay on the calling thread.</p>
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class SimpleUserUserItemScorer extends AbstractItemScorer {
+    private static final Logger logger = LoggerFactory.getLogger(SimpleUserUserItemScorer.class);
+    private static final int CHUNKS_PER_THREAD = 4;
+
     private final DataAccessObject dao;
+    private final UserVectorModel model;
+    private final UserSimilarityEngine similarityEngine;
     private final int neighborhoodSize;
-
+    private final int parallelThreshold;
+    private final ScoringExecutor executor;
+    private final ThreadLocal<NeighborSelector> selectors = new ThreadLocal<NeighborSelector>() {
+        @Override
+        protected NeighborSelector initialValue() {
+            return new NeighborSelector(MAX_NEIGHBOR_NUM);
+        }
+    };
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong similarityCount = new AtomicLong();
 
     private final static int MAX_NEIGHBOR_NUM = 30;
     /**
      * Instantiate a new user-user item scorer.
      * @param dao The data access object.
+     * @param model The mean-centered user rating vectors.
+     * @param sims The engine for computing user similarities.
+     * @param executor The pool to score large requests with.
+     * @param threshold The number of candidates a request needs to be scored in parallel.
      */
     @Inject
-    public SimpleUserUserItemScorer(DataAccessObject dao) {
+    public SimpleUserUserItemScorer(DataAccessObject dao, UserVectorModel model, UserSimilarityEngine sims,
+                                    ScoringExecutor executor, @ParallelScoringThreshold int threshold) {
         this.dao = dao;
+        this.model = model;
+        similarityEngine = sims;
         neighborhoodSize = 30;
+        this.executor = executor;
+        parallelThreshold = threshold;
     }
 
     @Nonnull
     @Override
-    public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
+    public ResultMap scoreWithDetails(final long user, @Nonnull Collection<Long> items) {
         // TODO Score the items for the user with user-user CF
 
-        Long2DoubleOpenHashMap u = getUserRatingVector(user);
-        double uMean = Vectors.mean(u);
-        for(Long i : u.keySet()){
-            u.addTo(i, -uMean);
+        requestCount.incrementAndGet();
+
+        // The user's centered vector, mean and norm are precomputed in the model
+        int u = model.getUserIndex().tryGetIndex(user);
+        if (u < 0 || model.getNorm(u) == 0) {
+            // without ratings that vary, the user has no defined similarity to anyone
+            return Results.newResultMap();
         }
-        double uEuclideanNorm = Vectors.euclideanNorm(u);
+        final double uMean = model.getMean(u);
 
-        //Long2DoubleOpenHashMap uItemPrediction = new Long2DoubleOpenHashMap(items.size());
-        List<Result> results = new ArrayList<>();
-        for(long item : items) {
-            List<Rating> history = dao.query(Rating.class)
-                    .withAttribute(CommonAttributes.ITEM_ID, item).get();
+        // Similarities to the other users, computed at most once each
+        final UserSimilarityEngine.TargetSimilarities similarities = similarityEngine.forTarget(u);
 
-            if(history.size()<2) continue;  //Refuse to score items if there are not at least 2 neighbors to contribute to the item’s score
+        final long[] candidates = LongUtils.asLongCollection(items).toLongArray();
+        List<Result> results;
+        if (!executor.isParallel() || candidates.length < parallelThreshold) {
+            results = scoreItems(user, uMean, similarities, candidates, 0,
+                                 fetchHistories(candidates, 0, candidates.length));
+        } else {
+            results = scoreInParallel(user, uMean, similarities, candidates);
+        }
 
-            ArrayList<UserCos> list = new ArrayList<>();
-            for(Rating r : history) {
-                if(r.getUserId() == user) continue;
-                Long2DoubleOpenHashMap v = getUserRatingVector(r.getUserId());
-                // Use mean-centering to normalize ratings for scoring
-                double userMean = Vectors.mean(v);
-                for(Long i : v.keySet()){
-                    v.addTo(i, -userMean);
-                }
-                double cos = Vectors.dotProduct(u,v)/(uEuclideanNorm * Vectors.euclideanNorm(v));
-                list.add(new UserCos(r.getUserId(), r.getValue(), userMean, cos));
-            }
+        int computed = similarities.getComputationCount();
+        similarityCount.addAndGet(computed);
+        logger.debug("scored {} of {} items for user {} with {} similarity computations",
+                     results.size(), candidates.length, user, computed);
+        return Results.newResultMap(results);
+    }
 
-            /*For each item’s score, use the 30 most similar users who have rated the item and
-              whose similarity to the target user is positive*/
-            Collections.sort(list, new Comparator<UserCos>() {
+    /**
+     * Score candidates on the pool.  The chunks of candidates first fetch their rating histories and collect their
+     * raters; the distinct raters' similarities are then computed once each, split evenly over the threads; and
+     * finally the chunks are scored from those similarities.
+     */
+    private List<Result> scoreInParallel(final long user, final double uMean,
+                                         UserSimilarityEngine.TargetSimilarities similarities,
+                                         final long[] candidates) {
+        int nchunks = executor.getThreadCount() * CHUNKS_PER_THREAD;
+        int chunkSize = (candidates.length + nchunks - 1) / nchunks;
+        List<Callable<List<List<Rating>>>> fetches = new ArrayList<>();
+        for (int start = 0; start < candidates.length; start += chunkSize) {
+            final int cstart = start;
+            final int cend = Math.min(candidates.length, start + chunkSize);
+            fetches.add(new Callable<List<List<Rating>>>() {
                 @Override
-                public int compare(UserCos o1, UserCos o2) {
-                    if(o1.cos-o2.cos > 0) return -1;
-                    else if(o1.cos-o2.cos<0) return 1;
-                    else return 0;
+                public List<List<Rating>> call() {
+                    return fetchHistories(candidates, cstart, cend);
                 }
             });
-            int endIndex = 0;
-            for(;endIndex < list.size() && endIndex < MAX_NEIGHBOR_NUM; endIndex++){
-                if(list.get(endIndex).cos <= 0){
-                    break;
+        }
+        final List<List<List<Rating>>> histories = invokeAll(fetches, user);
+
+        // the raters whose similarities the scoring will ask for
+        IntOpenHashSet raterSet = new IntOpenHashSet();
+        for (List<List<Rating>> chunk: histories) {
+            for (List<Rating> history: chunk) {
+                if (history.size() < 2) {
+                    continue;
+                }
+                for (Rating r: history) {
+                    int v = neighborIndex(user, r.getUserId());
+                    if (v >= 0) {
+                        raterSet.add(v);
+                    }
                 }
             }
-            if(endIndex < 2) continue;      //Refuse to score items if there are not at least 2 neighbors to contribute to the item’s score
-            List<UserCos> top30 = list.subList(0, endIndex);
+        }
+        final int[] raters = raterSet.toIntArray();
+        Arrays.sort(raters);
+        final double[] sims = new double[raters.length];
+        int nthreads = executor.getThreadCount();
+        int raterChunk = (raters.length + nthreads - 1) / nthreads;
+        List<Callable<Void>> computations = new ArrayList<>();
+        for (int start = 0; start < raters.length; start += raterChunk) {
+            final int rstart = start;
+            final int rend = Math.min(raters.length, start + raterChunk);
+            // each rater is in one range, so no similarity is computed twice and no memo is shared
+            final UserSimilarityEngine.TargetSimilarities worker = similarities.forWorker();
+            computations.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int k = rstart; k < rend; k++) {
+                        sims[k] = worker.get(raters[k]);
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(computations, user);
 
-            //cosine similarity
-            double numerator = 0;
-            double denominator = 0;
-            for(UserCos v : top30){
-                numerator += v.cos*(v.rating-v.mean);
-                denominator += Math.abs(v.cos);
+        final UserSimilarityEngine.TargetSimilarities computed = new UserSimilarityEngine.TargetSimilarities() {
+            @Override
+            public double get(int v) {
+                return sims[Arrays.binarySearch(raters, v)];
             }
-            //uItemPrediction.put(item, uMean + numerator/denominator);
-            results.add(Results.create(item, uMean + numerator/denominator));
+
+            @Override
+            public int getComputationCount() {
+                return 0;
+            }
+
+            @Override
+            public UserSimilarityEngine.TargetSimilarities forWorker() {
+                return this;
+            }
+        };
+        List<Callable<List<Result>>> scorings = new ArrayList<>();
+        int c = 0;
+        for (List<List<Rating>> chunk: histories) {
+            final int cstart = c;
+            final List<List<Rating>> chunkHistories = chunk;
+            scorings.add(new Callable<List<Result>>() {
+                @Override
+                public List<Result> call() {
+                    return scoreItems(user, uMean, computed, candidates, cstart, chunkHistories);
+                }
+            });
+            c += chunk.size();
         }
+        List<Result> results = new ArrayList<>();
+        for (List<Result> chunk: invokeAll(scorings, user)) {
+            results.addAll(chunk);
+        }
+        return results;
+    }
 
-        return Results.newResultMap(results);
+    /**
+     * Run tasks on the scoring pool.
+     * @param tasks The tasks.
+     * @param user The user being scored, for error messages.
+     * @return The results of the tasks, in order.
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks, long user) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> f: executor.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted scoring items for user " + user, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("error scoring items for user " + user, e.getCause());
+        }
+        return results;
     }
 
-    static class UserCos{
-        long user;
-        double rating;
-        double cos;
-        double mean;
-
-        public UserCos(long user, double rating, double mean, double cos) {
-            this.user = user;
-            this.rating = rating;
-            this.mean = mean;
-            this.cos = cos;
+    /**
+     * Fetch the rating histories of a range of candidate items.
+     * @param items The candidate items.
+     * @param start The start of the range in {@code items}.
+     * @param end The end of the range in {@code items}.
+     * @return The ratings of each item in the range.
+     */
+    private List<List<Rating>> fetchHistories(long[] items, int start, int end) {
+        List<List<Rating>> histories = new ArrayList<>(end - start);
+        for (int c = start; c < end; c++) {
+            histories.add(dao.query(Rating.class)
+                             .withAttribute(CommonAttributes.ITEM_ID, items[c]).get());
         }
+        return histories;
     }
 
+    /**
+     * Get the index of a rater who can be a neighbor of the user.
+     * @param user The user being scored.
+     * @param rater The rater's user ID.
+     * @return The rater's user index, or -1 if the rater is the user, is not in the model, or has no defined
+     *         similarity.
+     */
+    private int neighborIndex(long user, long rater) {
+        if (rater == user) {
+            return -1;
+        }
+        int v = model.getUserIndex().tryGetIndex(rater);
+        // Skip raters the model does not know, and raters whose similarity is undefined
+        return v < 0 || model.getNorm(v) == 0 ? -1 : v;
+    }
 
     /**
-     * Get a user's rating vector.
+     * Score a range of candidate items.
+     *
      * @param user The user ID.
-     * @return The rating vector, mapping item IDs to the user's rating
-     *         for that item.
+     * @param uMean The user's mean rating.
+     * @param similarities The user's similarities to other users.
+     * @param items The candidate items.
+     * @param start The start of the range in {@code items}.
+     * @param histories The ratings of each item in the range, which ends at {@code start + histories.size()}.
+     * @return The scores of the items in the range that could be scored.
      */
-    private Long2DoubleOpenHashMap getUserRatingVector(long user) {
-        List<Rating> history = dao.query(Rating.class)
-                                  .withAttribute(CommonAttributes.USER_ID, user)
-                                  .get();
-
-        Long2DoubleOpenHashMap ratings = new Long2DoubleOpenHashMap();
-        for (Rating r: history) {
-            ratings.put(r.getItemId(), r.getValue());
+    private List<Result> scoreItems(long user, double uMean, UserSimilarityEngine.TargetSimilarities similarities,
+                                    long[] items, int start, List<List<Rating>> histories) {
+        // The most similar positive neighbors of each item; each thread reuses one selector
+        NeighborSelector neighbors = selectors.get();
+
+        //Long2DoubleOpenHashMap uItemPrediction = new Long2DoubleOpenHashMap(items.size());
+        List<Result> results = new ArrayList<>(histories.size());
+        for (int c = 0; c < histories.size(); c++) {
+            long item = items[start + c];
+            List<Rating> history = histories.get(c);
+
+            if(history.size()<2) continue;  //Refuse to score items if there are not at least 2 neighbors to contribute to the item’s score
+
+            /*For each item’s score, use the 30 most similar users who have rated the item and
+              whose similarity to the target user is positive*/
+            neighbors.clear();
+            for(Rating r : history) {
+                int v = neighborIndex(user, r.getUserId());
+                if (v < 0) continue;
+                // Use mean-centering to normalize ratings for scoring
+                neighbors.add(r.getUserId(), similarities.get(v), r.getValue() - model.getMean(v));
+            }
+            if(neighbors.size() < 2) continue;      //Refuse to score items if there are not at least 2 neighbors to contribute to the item’s score
+
+            //cosine similarity
+            double numerator = 0;
+            double denominator = 0;
+            for (int i = 0; i < neighbors.size(); i++) {
+                double cos = neighbors.getSimilarity(i);
+                numerator += cos * neighbors.getValue(i);
+                denominator += Math.abs(cos);
+            }
+            //uItemPrediction.put(item, uMean + numerator/denominator);
+            results.add(Results.create(item, uMean + numerator/denominator));
         }
+        return results;
+    }
 
-        return ratings;
+    /**
+     * Get the number of scoring requests this scorer has served.
+     * @return The number of calls to {@link #scoreWithDetails(long, Collection)}.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
     }
 
+    /**
+     * Get the number of user-user similarities this scorer has computed.  Divided by the
+     * {@linkplain #getRequestCount() request count}, this is the mean number of similarities per request.
+     * @return The total number of similarity computations.
+     */
+    public long getSimilarityCount() {
+        return similarityCount.get();
+    }
 }
@@ -0,0 +1,114 @@
+package org.lenskit.mooc.uu;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+
+/**
+ * Precomputed user neighborhoods: for each user, their most similar other users and the similarities.
+ *
+ * <p>Users are numbered by the same {@link SortedKeyIndex} as the {@link UserVectorModel} the neighborhoods were
+ * computed from.  Neighbor lists are stored in compressed sparse row form, as parallel arrays of neighbor user
+ * indexes, sorted in increasing order so they can be merged with an item's {@linkplain ItemRaterIndex raters},
+ * and float similarities.  Each user's mean rating is stored alongside.</p>
+ *
+ * @see UserNeighborhoodModelProvider
+ */
+@Shareable
+@Immutable
+@DefaultProvider(UserNeighborhoodModelProvider.class)
+public class UserNeighborhoodModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedKeyIndex userIndex;
+    private final int[] rowOffsets;
+    private final int[] neighbors;
+    private final float[] similarities;
+    private final double[] means;
+
+    /**
+     * Create a new neighborhood model.
+     *
+     * @param users The user index.
+     * @param offsets The row offsets, of length {@code users.size() + 1}.
+     * @param nbrs The neighbor user indexes of each row, sorted within the row.
+     * @param sims The neighbor similarities, parallel to {@code nbrs}.
+     * @param ms The mean rating of each user.
+     */
+    UserNeighborhoodModel(SortedKeyIndex users, int[] offsets, int[] nbrs, float[] sims, double[] ms) {
+        Preconditions.checkArgument(offsets.length == users.size() + 1, "offset count mismatch");
+        Preconditions.checkArgument(nbrs.length == sims.length, "similarity count mismatch");
+        Preconditions.checkArgument(ms.length == users.size(), "user count mismatch");
+        userIndex = users;
+        rowOffsets = offsets;
+        neighbors = nbrs;
+        similarities = sims;
+        means = ms;
+    }
+
+    /**
+     * Get the index of users in this model.
+     * @return The user index.
+     */
+    public SortedKeyIndex getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Get a user's mean rating.
+     * @param u The user index.
+     * @return The user's mean rating.
+     */
+    public double getMean(int u) {
+        return means[u];
+    }
+
+    /**
+     * Get the number of neighbors stored for a user.
+     * @param u The user index.
+     * @return The number of neighbors.
+     */
+    public int getNeighborCount(int u) {
+        return rowOffsets[u + 1] - rowOffsets[u];
+    }
+
+    /**
+     * Get the start of a user's neighbor list.
+     * @param u The user index.
+     * @return The position of the user's first neighbor.
+     */
+    int getRowStart(int u) {
+        return rowOffsets[u];
+    }
+
+    /**
+     * Get the end of a user's neighbor list.
+     * @param u The user index.
+     * @return The position after the user's last neighbor.
+     */
+    int getRowEnd(int u) {
+        return rowOffsets[u + 1];
+    }
+
+    /**
+     * Get a neighbor.
+     * @param pos The neighbor's position, within some user's row.
+     * @return The neighbor's user index.
+     */
+    int getNeighbor(int pos) {
+        return neighbors[pos];
+    }
+
+    /**
+     * Get a neighbor's similarity.
+     * @param pos The neighbor's position, within some user's row.
+     * @return The neighbor's similarity to the row's user.
+     */
+    float getSimilarity(int pos) {
+        return similarities[pos];
+    }
+}
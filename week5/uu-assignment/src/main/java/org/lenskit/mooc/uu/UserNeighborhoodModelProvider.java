@@ -0,0 +1,198 @@
+package org.lenskit.mooc.uu;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Build a {@link UserNeighborhoodModel} by computing every user's similarities to all other users.
+ *
+ * <p>Each user's dot products with the other users are accumulated in one pass over the
+ * {@linkplain ItemRaterIndex postings} of the items they rated, into a dense array over users; the users that
+ * pass touches are then turned into cosines and the top {@linkplain ModelNeighborCount M} with similarity above
+ * the {@linkplain MinNeighborSimilarity minimum} are kept.  Users are split into contiguous chunks, which are
+ * processed on several {@linkplain BuildThreadCount threads}.</p>
+ */
+public class UserNeighborhoodModelProvider implements Provider<UserNeighborhoodModel> {
+    private static final Logger logger = LoggerFactory.getLogger(UserNeighborhoodModelProvider.class);
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final UserVectorModel vectors;
+    private final ItemRaterIndex index;
+    private final int neighborCount;
+    private final double minSimilarity;
+    private final int threadCount;
+
+    /**
+     * Construct the model provider.
+     *
+     * @param uvm The mean-centered user rating vectors.
+     * @param idx The item-rater index over the user vectors.
+     * @param nnbrs The number of neighbors to keep for each user.
+     * @param minSim The similarity a neighbor must exceed.  Only positive similarities are kept in any case.
+     * @param nthreads The number of threads to build with.
+     */
+    @Inject
+    public UserNeighborhoodModelProvider(UserVectorModel uvm, ItemRaterIndex idx,
+                                         @ModelNeighborCount int nnbrs,
+                                         @MinNeighborSimilarity double minSim,
+                                         @BuildThreadCount int nthreads) {
+        vectors = uvm;
+        index = idx;
+        neighborCount = nnbrs;
+        minSimilarity = minSim;
+        threadCount = nthreads;
+    }
+
+    /**
+     * Construct the neighborhood model.
+     *
+     * @return The neighborhood model.
+     */
+    @Override
+    public UserNeighborhoodModel get() {
+        Stopwatch timer = Stopwatch.createStarted();
+        final int nusers = vectors.getUserIndex().size();
+        final int[][] rowNeighbors = new int[nusers][];
+        final float[][] rowSims = new float[nusers][];
+
+        if (threadCount <= 1) {
+            new NeighborFinder().findNeighbors(0, nusers, rowNeighbors, rowSims);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+            try {
+                int nchunks = threadCount * CHUNKS_PER_THREAD;
+                int chunkSize = (nusers + nchunks - 1) / nchunks;
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (int start = 0; start < nusers; start += chunkSize) {
+                    final int cstart = start;
+                    final int cend = Math.min(nusers, start + chunkSize);
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            new NeighborFinder().findNeighbors(cstart, cend, rowNeighbors, rowSims);
+                            return null;
+                        }
+                    });
+                }
+                for (Future<Void> f: pool.invokeAll(tasks)) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted building neighborhoods", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("error building neighborhoods", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        int[] offsets = new int[nusers + 1];
+        for (int u = 0; u < nusers; u++) {
+            offsets[u + 1] = offsets[u] + rowNeighbors[u].length;
+        }
+        int[] neighbors = new int[offsets[nusers]];
+        float[] sims = new float[offsets[nusers]];
+        double[] means = new double[nusers];
+        for (int u = 0; u < nusers; u++) {
+            System.arraycopy(rowNeighbors[u], 0, neighbors, offsets[u], rowNeighbors[u].length);
+            System.arraycopy(rowSims[u], 0, sims, offsets[u], rowSims[u].length);
+            means[u] = vectors.getMean(u);
+        }
+
+        logger.info("found {} neighbors for {} users with {} threads in {}",
+                    neighbors.length, nusers, Math.max(threadCount, 1), timer.stop());
+        return new UserNeighborhoodModel(vectors.getUserIndex(), offsets, neighbors, sims, means);
+    }
+
+    /**
+     * Scratch space for finding neighbors on one thread.
+     */
+    private class NeighborFinder {
+        private final int nusers = vectors.getUserIndex().size();
+        private final double[] dots = new double[nusers];
+        private final boolean[] seen = new boolean[nusers];
+        private final int[] touched = new int[nusers];
+        private final NeighborSelector selector = new NeighborSelector(neighborCount);
+
+        /**
+         * Find the neighbors of a range of users.
+         * @param start The first user index.
+         * @param end The end of the range of user indexes.
+         * @param rowNeighbors The array to receive each user's neighbor indexes.
+         * @param rowSims The array to receive each user's neighbor similarities.
+         */
+        void findNeighbors(int start, int end, int[][] rowNeighbors, float[][] rowSims) {
+            for (int u = start; u < end; u++) {
+                findNeighbors(u);
+                int n = selector.size();
+                // sort the neighbors by user index, packing each similarity in with its neighbor
+                long[] packed = new long[n];
+                for (int i = 0; i < n; i++) {
+                    float sim = (float) selector.getSimilarity(i);
+                    packed[i] = (selector.getUser(i) << 32) | (Float.floatToIntBits(sim) & 0xFFFFFFFFL);
+                }
+                Arrays.sort(packed);
+                int[] nbrs = new int[n];
+                float[] sims = new float[n];
+                for (int i = 0; i < n; i++) {
+                    nbrs[i] = (int) (packed[i] >>> 32);
+                    sims[i] = Float.intBitsToFloat((int) packed[i]);
+                }
+                rowNeighbors[u] = nbrs;
+                rowSims[u] = sims;
+            }
+        }
+
+        /**
+         * Find a user's neighbors into the selector.
+         */
+        private void findNeighbors(int u) {
+            selector.clear();
+            double uNorm = vectors.getNorm(u);
+            if (uNorm == 0) {
+                return;
+            }
+
+            // accumulate dot products with every user who shares an item with u
+            int ntouched = 0;
+            for (int pos = vectors.getRowStart(u), rend = vectors.getRowEnd(u); pos < rend; pos++) {
+                int i = index.getItemIndex().tryGetIndex(vectors.getItemId(pos));
+                double w = vectors.getValue(pos);
+                for (int k = index.getPostingStart(i), kend = index.getPostingEnd(i); k < kend; k++) {
+                    int v = index.getPostingUser(k);
+                    if (!seen[v]) {
+                        seen[v] = true;
+                        touched[ntouched++] = v;
+                    }
+                    dots[v] += w * index.getPostingValue(k);
+                }
+            }
+
+            for (int t = 0; t < ntouched; t++) {
+                int v = touched[t];
+                double vNorm = vectors.getNorm(v);
+                if (v != u && vNorm > 0) {
+                    double sim = dots[v] / (uNorm * vNorm);
+                    if (sim > minSimilarity) {
+                        selector.add(v, sim, 0);
+                    }
+                }
+                dots[v] = 0;
+                seen[v] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.lenskit.mooc.uu;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Computes cosine similarities between a target user and other users, over the mean-centered vectors of a
+ * {@link UserVectorModel}.  Users are identified by their index in the model's
+ * {@linkplain UserVectorModel#getUserIndex() user index}.
+ */
+@DefaultImplementation(PairwiseSimilarityEngine.class)
+public interface UserSimilarityEngine {
+    /**
+     * Start computing similarities for a target user.  Implementations may compute similarities eagerly, or as
+     * they are asked for.
+     *
+     * @param u The index of the target user.  Their vector must have a non-zero norm.
+     * @return The target user's similarities to other users, for a single request.  It may only be used by one
+     *         thread at a time; threads working on the request in parallel each use a
+     *         {@linkplain TargetSimilarities#forWorker() worker view}.
+     */
+    TargetSimilarities forTarget(int u);
+
+    /**
+     * The similarities of one target user to other users.
+     */
+    interface TargetSimilarities {
+        /**
+         * Get the similarity of the target user to another user.
+         * @param v The index of the other user.  Their vector must have a non-zero norm.
+         * @return The cosine similarity between the two users; 0 if they have no items in common.
+         */
+        double get(int v);
+
+        /**
+         * Get the number of users whose similarity to the target has been computed so far.  Engines that compute
+         * all similarities at once count the users who rated an item in common with the target.
+         * @return The number of similarity computations.
+         */
+        int getComputationCount();
+
+        /**
+         * Get a view of these similarities for one of several threads working on the same request.  Each view
+         * may be used by one thread at the same time as the others; engines that memoize similarities give each
+         * view its own memo, so the threads never wait on each other.
+         * @return A view of the same similarities, whose computations are included in this object's
+         *         {@linkplain #getComputationCount() computation count}.
+         */
+        TargetSimilarities forWorker();
+    }
+}
@@ -0,0 +1,169 @@
+package org.lenskit.mooc.uu;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+
+/**
+ * A snapshot of every user's mean-centered rating vector, for computing user-user similarities without going
+ * back to the DAO.
+ *
+ * <p>Users are numbered by a {@link SortedKeyIndex}, and their vectors are stored in compressed sparse row
+ * form: the ratings of the user with index {@code u} are at positions {@code rowOffsets[u]} (inclusive) to
+ * {@code rowOffsets[u+1]} (exclusive) of parallel arrays of item IDs, sorted in increasing order, and
+ * mean-centered ratings.  Each user's mean rating and the Euclidean norm of their centered vector are stored
+ * alongside, so the cosine between two users is a single merge of their rows.</p>
+ *
+ * @see UserVectorModelProvider
+ */
+@Shareable
+@Immutable
+@DefaultProvider(UserVectorModelProvider.class)
+public class UserVectorModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedKeyIndex userIndex;
+    private final int[] rowOffsets;
+    private final long[] itemIds;
+    private final double[] values;
+    private final double[] means;
+    private final double[] norms;
+
+    /**
+     * Create a new user vector model.
+     *
+     * @param users The user index.
+     * @param offsets The row offsets, of length {@code users.size() + 1}.
+     * @param items The item IDs of each row, sorted within the row.
+     * @param vals The mean-centered ratings, parallel to {@code items}.
+     * @param ms The mean rating of each user.
+     * @param ns The norm of each user's mean-centered vector.
+     */
+    UserVectorModel(SortedKeyIndex users, int[] offsets, long[] items, double[] vals, double[] ms, double[] ns) {
+        Preconditions.checkArgument(offsets.length == users.size() + 1, "offset count mismatch");
+        Preconditions.checkArgument(items.length == vals.length, "value count mismatch");
+        Preconditions.checkArgument(ms.length == users.size() && ns.length == users.size(),
+                                    "user count mismatch");
+        userIndex = users;
+        rowOffsets = offsets;
+        itemIds = items;
+        values = vals;
+        means = ms;
+        norms = ns;
+    }
+
+    /**
+     * Get the index of users in this model.  The user indexes taken by the other methods are positions in this
+     * index.
+     * @return The user index.
+     */
+    public SortedKeyIndex getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Get a user's mean rating.
+     * @param u The user index.
+     * @return The user's mean rating.
+     */
+    public double getMean(int u) {
+        return means[u];
+    }
+
+    /**
+     * Get the norm of a user's mean-centered rating vector.
+     * @param u The user index.
+     * @return The Euclidean norm of the user's centered ratings.
+     */
+    public double getNorm(int u) {
+        return norms[u];
+    }
+
+    /**
+     * Get the number of items a user has rated.
+     * @param u The user index.
+     * @return The number of ratings in the user's vector.
+     */
+    public int getRatingCount(int u) {
+        return rowOffsets[u + 1] - rowOffsets[u];
+    }
+
+    /**
+     * Get the start of a user's row.
+     * @param u The user index.
+     * @return The position of the user's first rating.
+     */
+    int getRowStart(int u) {
+        return rowOffsets[u];
+    }
+
+    /**
+     * Get the end of a user's row.
+     * @param u The user index.
+     * @return The position after the user's last rating.
+     */
+    int getRowEnd(int u) {
+        return rowOffsets[u + 1];
+    }
+
+    /**
+     * Get the item of a rating.
+     * @param pos The rating's position, within some user's row.
+     * @return The item ID.
+     */
+    long getItemId(int pos) {
+        return itemIds[pos];
+    }
+
+    /**
+     * Get the mean-centered value of a rating.
+     * @param pos The rating's position, within some user's row.
+     * @return The rating minus the user's mean.
+     */
+    double getValue(int pos) {
+        return values[pos];
+    }
+
+    /**
+     * Compute the dot product of two users' mean-centered rating vectors.
+     * @param u The index of the first user.
+     * @param v The index of the second user.
+     * @return The dot product, computed by merging the two users' sorted item lists.
+     */
+    public double dot(int u, int v) {
+        int i = rowOffsets[u], iend = rowOffsets[u + 1];
+        int j = rowOffsets[v], jend = rowOffsets[v + 1];
+        double sum = 0;
+        while (i < iend && j < jend) {
+            long a = itemIds[i], b = itemIds[j];
+            if (a == b) {
+                sum += values[i] * values[j];
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Compute the cosine similarity of two users' mean-centered rating vectors.
+     * @param u The index of the first user.
+     * @param v The index of the second user.
+     * @return The cosine similarity, or {@link Double#NaN} if either vector has zero norm.
+     */
+    public double cosine(int u, int v) {
+        double denom = norms[u] * norms[v];
+        if (denom == 0) {
+            return Double.NaN;
+        }
+        return dot(u, v) / denom;
+    }
+}
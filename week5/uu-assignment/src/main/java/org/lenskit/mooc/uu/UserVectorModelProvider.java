@@ -0,0 +1,120 @@
+package org.lenskit.mooc.uu;
+
+import com.google.common.base.Stopwatch;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.data.ratings.Ratings;
+import org.lenskit.inject.Transient;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.List;
+
+/**
+ * Build a {@link UserVectorModel} from the ratings in the DAO, in a single scan grouped by user.
+ */
+public class UserVectorModelProvider implements Provider<UserVectorModel> {
+    private static final Logger logger = LoggerFactory.getLogger(UserVectorModelProvider.class);
+
+    private final DataAccessObject dao;
+
+    /**
+     * Construct the model provider.
+     *
+     * @param dao The data access object.
+     */
+    @Inject
+    public UserVectorModelProvider(@Transient DataAccessObject dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Construct the user vector model.
+     *
+     * @return The user vector model.
+     */
+    @Override
+    public UserVectorModel get() {
+        Stopwatch timer = Stopwatch.createStarted();
+
+        // rows are appended in the order the DAO groups them, and put in user ID order afterwards
+        LongArrayList scanUsers = new LongArrayList();
+        IntArrayList scanOffsets = new IntArrayList();
+        LongArrayList scanItems = new LongArrayList();
+        DoubleArrayList scanValues = new DoubleArrayList();
+        DoubleArrayList scanMeans = new DoubleArrayList();
+        DoubleArrayList scanNorms = new DoubleArrayList();
+
+        try (ObjectStream<IdBox<List<Rating>>> stream = dao.query(Rating.class)
+                                                           .groupBy(CommonAttributes.USER_ID)
+                                                           .stream()) {
+            for (IdBox<List<Rating>> user: stream) {
+                // a sorted map, so the row's items are in increasing order
+                Long2DoubleMap ratings = LongUtils.frozenMap(Ratings.userRatingVector(user.getValue()));
+                if (ratings.isEmpty()) {
+                    continue;
+                }
+
+                double sum = 0;
+                for (Long2DoubleMap.Entry e: ratings.long2DoubleEntrySet()) {
+                    sum += e.getDoubleValue();
+                }
+                double mean = sum / ratings.size();
+
+                scanUsers.add(user.getId());
+                scanOffsets.add(scanItems.size());
+                double ss = 0;
+                for (Long2DoubleMap.Entry e: ratings.long2DoubleEntrySet()) {
+                    double v = e.getDoubleValue() - mean;
+                    scanItems.add(e.getLongKey());
+                    scanValues.add(v);
+                    ss += v * v;
+                }
+                scanMeans.add(mean);
+                scanNorms.add(Math.sqrt(ss));
+            }
+        }
+        scanOffsets.add(scanItems.size());
+
+        SortedKeyIndex users = SortedKeyIndex.fromCollection(scanUsers);
+        int nusers = users.size();
+        int[] offsets = new int[nusers + 1];
+        long[] items = new long[scanItems.size()];
+        double[] values = new double[scanValues.size()];
+        double[] means = new double[nusers];
+        double[] norms = new double[nusers];
+
+        // position of each user's row in the scan, in user index order
+        int[] scanRow = new int[nusers];
+        for (int r = 0; r < nusers; r++) {
+            scanRow[users.getIndex(scanUsers.getLong(r))] = r;
+        }
+        int pos = 0;
+        for (int u = 0; u < nusers; u++) {
+            int r = scanRow[u];
+            int start = scanOffsets.getInt(r);
+            int len = scanOffsets.getInt(r + 1) - start;
+            scanItems.getElements(start, items, pos, len);
+            scanValues.getElements(start, values, pos, len);
+            offsets[u] = pos;
+            means[u] = scanMeans.getDouble(r);
+            norms[u] = scanNorms.getDouble(r);
+            pos += len;
+        }
+        offsets[nusers] = pos;
+
+        logger.info("built vectors for {} users with {} ratings in {}", nusers, items.length, timer.stop());
+        return new UserVectorModel(users, offsets, items, values, means, norms);
+    }
+}
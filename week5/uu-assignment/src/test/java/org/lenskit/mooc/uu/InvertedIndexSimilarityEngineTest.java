@@ -0,0 +1,91 @@
+package org.lenskit.mooc.uu;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+public class InvertedIndexSimilarityEngineTest {
+    private UserVectorModel model;
+    private ItemRaterIndex index;
+
+    @Before
+    public void createModel() {
+        model = new UserVectorModelProvider(RatingFixtures.randomRatings(42, 60, 40)).get();
+        index = new ItemRaterIndexProvider(model).get();
+    }
+
+    @Test
+    public void testMatchesPairwise() {
+        UserSimilarityEngine inverted = new InvertedIndexSimilarityEngine(model, index);
+        UserSimilarityEngine pairwise = new PairwiseSimilarityEngine(model);
+        int n = model.getUserIndex().size();
+        int ncompared = 0;
+        for (int u = 0; u < n; u++) {
+            if (model.getNorm(u) == 0) {
+                continue;
+            }
+            UserSimilarityEngine.TargetSimilarities isims = inverted.forTarget(u);
+            UserSimilarityEngine.TargetSimilarities psims = pairwise.forTarget(u);
+            int corated = 0;
+            for (int v = 0; v < n; v++) {
+                if (v != u && sharesItem(u, v)) {
+                    corated++;
+                }
+                if (model.getNorm(v) == 0) {
+                    continue;
+                }
+                double expected = psims.get(v);
+                assertThat(isims.get(v), closeTo(expected, 1.0e-10));
+                ncompared++;
+            }
+            // the target is not counted as its own co-rater
+            assertThat(isims.getComputationCount(), equalTo(corated));
+        }
+        assertThat(ncompared, greaterThan(n));
+    }
+
+    @Test
+    public void testScratchIsReset() {
+        UserSimilarityEngine engine = new InvertedIndexSimilarityEngine(model, index);
+        int u = firstUserWithNorm();
+        UserSimilarityEngine.TargetSimilarities first = engine.forTarget(u);
+        UserSimilarityEngine.TargetSimilarities again = engine.forTarget(u);
+        for (int v = 0; v < model.getUserIndex().size(); v++) {
+            if (model.getNorm(v) > 0) {
+                assertThat(again.get(v), equalTo(first.get(v)));
+            }
+        }
+        assertThat(again.getComputationCount(), equalTo(first.getComputationCount()));
+    }
+
+    @Test
+    public void testWorkerViewIsShared() {
+        UserSimilarityEngine.TargetSimilarities sims =
+                new InvertedIndexSimilarityEngine(model, index).forTarget(firstUserWithNorm());
+        assertThat(sims.forWorker().get(1), equalTo(sims.get(1)));
+        assertThat(sims.forWorker().getComputationCount(), equalTo(sims.getComputationCount()));
+    }
+
+    private int firstUserWithNorm() {
+        int u = 0;
+        while (model.getNorm(u) == 0) {
+            u++;
+        }
+        return u;
+    }
+
+    private boolean sharesItem(int u, int v) {
+        for (int i = model.getRowStart(u); i < model.getRowEnd(u); i++) {
+            for (int j = model.getRowStart(v); j < model.getRowEnd(v); j++) {
+                if (model.getItemId(i) == model.getItemId(j)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
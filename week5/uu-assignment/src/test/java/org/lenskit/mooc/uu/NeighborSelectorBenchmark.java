@@ -0,0 +1,107 @@
+package org.lenskit.mooc.uu;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare selecting each item's neighbors with a bounded heap against sorting a list of every co-rater, as the
+ * user-user scorer used to do.
+ *
+ * <p>Each operation selects neighbors for a batch of items whose rater counts follow a Zipf-like popularity
+ * skew, so a few items have close to {@code maxRaters} raters and most have only a handful.  About a third of
+ * the raters have non-positive similarity.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NeighborSelectorBenchmark {
+    private static final int ITEM_COUNT = 500;
+
+    @Param({"1000", "30000"})
+    public int maxRaters;
+
+    @Param({"30"})
+    public int k;
+
+    private long[][] raters;
+    private double[][] sims;
+    private double[][] values;
+
+    @Setup
+    public void createItems() {
+        Random rng = new Random(42);
+        raters = new long[ITEM_COUNT][];
+        sims = new double[ITEM_COUNT][];
+        values = new double[ITEM_COUNT][];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            // the item with popularity rank i has about maxRaters / (i + 1) raters
+            int n = Math.max(2, maxRaters / (i + 1));
+            raters[i] = new long[n];
+            sims[i] = new double[n];
+            values[i] = new double[n];
+            for (int j = 0; j < n; j++) {
+                raters[i][j] = rng.nextInt(1000000);
+                sims[i][j] = rng.nextDouble() * 1.5 - 0.5;
+                values[i][j] = rng.nextGaussian();
+            }
+        }
+    }
+
+    @Benchmark
+    public double sortAll() {
+        double total = 0;
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            List<Neighbor> list = new ArrayList<>();
+            for (int j = 0; j < raters[i].length; j++) {
+                list.add(new Neighbor(raters[i][j], sims[i][j], values[i][j]));
+            }
+            Collections.sort(list, new Comparator<Neighbor>() {
+                @Override
+                public int compare(Neighbor o1, Neighbor o2) {
+                    return Double.compare(o2.sim, o1.sim);
+                }
+            });
+            for (int j = 0; j < list.size() && j < k && list.get(j).sim > 0; j++) {
+                total += list.get(j).sim * list.get(j).value;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double boundedHeap() {
+        double total = 0;
+        NeighborSelector selector = new NeighborSelector(k);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            selector.clear();
+            for (int j = 0; j < raters[i].length; j++) {
+                selector.add(raters[i][j], sims[i][j], values[i][j]);
+            }
+            for (int j = 0; j < selector.size(); j++) {
+                total += selector.getSimilarity(j) * selector.getValue(j);
+            }
+        }
+        return total;
+    }
+
+    private static class Neighbor {
+        final long user;
+        final double sim;
+        final double value;
+
+        Neighbor(long u, double s, double v) {
+            user = u;
+            sim = s;
+            value = v;
+        }
+    }
+}
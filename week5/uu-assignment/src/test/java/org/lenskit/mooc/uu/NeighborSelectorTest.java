@@ -0,0 +1,144 @@
+package org.lenskit.mooc.uu;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class NeighborSelectorTest {
+    /**
+     * Get the retained neighbors' user IDs, sorted.
+     */
+    private static List<Long> users(NeighborSelector sel) {
+        List<Long> users = new ArrayList<>();
+        for (int i = 0; i < sel.size(); i++) {
+            users.add(sel.getUser(i));
+        }
+        Collections.sort(users);
+        return users;
+    }
+
+    @Test
+    public void testKeepsTopK() {
+        NeighborSelector sel = new NeighborSelector(3);
+        sel.add(1, 0.1, 1);
+        sel.add(2, 0.9, 2);
+        sel.add(3, 0.5, 3);
+        sel.add(4, 0.3, 4);
+        sel.add(5, 0.7, 5);
+        assertThat(sel.size(), equalTo(3));
+        assertThat(users(sel), contains(2L, 3L, 5L));
+    }
+
+    @Test
+    public void testFewerThanK() {
+        NeighborSelector sel = new NeighborSelector(5);
+        sel.add(1, 0.2, 1);
+        sel.add(2, 0.4, 2);
+        assertThat(users(sel), contains(1L, 2L));
+    }
+
+    @Test
+    public void testKeepsValuesWithNeighbors() {
+        NeighborSelector sel = new NeighborSelector(2);
+        sel.add(1, 0.1, -1);
+        sel.add(2, 0.8, 2.5);
+        sel.add(3, 0.6, -0.5);
+        sel.add(4, 0.2, 7);
+        for (int i = 0; i < sel.size(); i++) {
+            if (sel.getUser(i) == 2) {
+                assertThat(sel.getSimilarity(i), equalTo(0.8));
+                assertThat(sel.getValue(i), equalTo(2.5));
+            } else {
+                assertThat(sel.getUser(i), equalTo(3L));
+                assertThat(sel.getSimilarity(i), equalTo(0.6));
+                assertThat(sel.getValue(i), equalTo(-0.5));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsNonPositiveAndNaN() {
+        NeighborSelector sel = new NeighborSelector(5);
+        sel.add(1, 0, 1);
+        sel.add(2, -0.5, 1);
+        sel.add(3, Double.NaN, 1);
+        sel.add(4, -0.0, 1);
+        assertThat(sel.size(), equalTo(0));
+        sel.add(5, Double.MIN_VALUE, 1);
+        assertThat(users(sel), contains(5L));
+    }
+
+    @Test
+    public void testTiesPreferLowerUserIds() {
+        NeighborSelector forward = new NeighborSelector(2);
+        NeighborSelector backward = new NeighborSelector(2);
+        for (long u = 1; u <= 5; u++) {
+            forward.add(u, 0.5, u);
+            backward.add(6 - u, 0.5, 6 - u);
+        }
+        assertThat(users(forward), contains(1L, 2L));
+        assertThat(users(backward), contains(1L, 2L));
+    }
+
+    @Test
+    public void testHigherSimilarityBeatsLowerId() {
+        NeighborSelector sel = new NeighborSelector(2);
+        sel.add(1, 0.5, 0);
+        sel.add(2, 0.5, 0);
+        sel.add(9, 0.6, 0);
+        assertThat(users(sel), contains(1L, 9L));
+    }
+
+    @Test
+    public void testClearAndReuse() {
+        NeighborSelector sel = new NeighborSelector(2);
+        sel.add(1, 0.9, 1);
+        sel.add(2, 0.8, 1);
+        sel.clear();
+        assertThat(sel.size(), equalTo(0));
+        sel.add(3, 0.1, 1);
+        assertThat(users(sel), contains(3L));
+    }
+
+    @Test
+    public void testMatchesSorting() {
+        Random rng = new Random(42);
+        NeighborSelector sel = new NeighborSelector(30);
+        for (int round = 0; round < 20; round++) {
+            sel.clear();
+            int n = 1 + rng.nextInt(200);
+            final long[] users = new long[n];
+            final double[] sims = new double[n];
+            List<Integer> positive = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                users[i] = rng.nextInt(1000);
+                // coarse similarities, so there are plenty of ties
+                sims[i] = (rng.nextInt(20) - 5) / 10.0;
+                sel.add(users[i], sims[i], 0);
+                if (sims[i] > 0) {
+                    positive.add(i);
+                }
+            }
+            Collections.sort(positive, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int cmp = Double.compare(sims[b], sims[a]);
+                    return cmp != 0 ? cmp : Long.compare(users[a], users[b]);
+                }
+            });
+            List<Long> expected = new ArrayList<>();
+            for (int i: positive.subList(0, Math.min(30, positive.size()))) {
+                expected.add(users[i]);
+            }
+            Collections.sort(expected);
+            assertThat(users(sel), equalTo(expected));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.lenskit.mooc.uu;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.DataAccessObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class NeighborhoodUserUserItemScorerTest {
+    private DataAccessObject dao;
+    private UserVectorModel vectors;
+    private ItemRaterIndex index;
+    private List<Long> items;
+
+    @Before
+    public void createModel() {
+        dao = RatingFixtures.randomRatings(42, 80, 60);
+        vectors = new UserVectorModelProvider(dao).get();
+        index = new ItemRaterIndexProvider(vectors).get();
+        items = new ArrayList<>();
+        for (long i = 101; i <= 160; i++) {
+            items.add(i);
+        }
+    }
+
+    private static void assertSameScores(ResultMap actual, ResultMap expected, double tolerance) {
+        assertThat(actual.keySet(), equalTo(expected.keySet()));
+        for (Result r: expected) {
+            assertThat(actual.getScore(r.getId()), closeTo(r.getScore(), tolerance));
+        }
+    }
+
+    @Test
+    public void testSearchAndMergeAgree() {
+        UserNeighborhoodModel model = new UserNeighborhoodModelProvider(vectors, index, 20, 0, 1).get();
+        NeighborhoodUserUserItemScorer merge =
+                new NeighborhoodUserUserItemScorer(model, index, Integer.MAX_VALUE);
+        NeighborhoodUserUserItemScorer search = new NeighborhoodUserUserItemScorer(model, index, 0);
+        NeighborhoodUserUserItemScorer mixed = new NeighborhoodUserUserItemScorer(model, index);
+        int nscored = 0;
+        for (long user = 1; user <= 80; user++) {
+            ResultMap expected = merge.scoreWithDetails(user, items);
+            assertSameScores(search.scoreWithDetails(user, items), expected, 1.0e-10);
+            assertSameScores(mixed.scoreWithDetails(user, items), expected, 1.0e-10);
+            nscored += expected.size();
+        }
+        assertThat(nscored, greaterThan(0));
+    }
+
+    @Test
+    public void testMatchesSimpleScorerWithAllNeighbors() {
+        // with every positive neighbor stored, the model loses nothing the on-the-fly scorer would use
+        UserNeighborhoodModel model = new UserNeighborhoodModelProvider(vectors, index, 80, 0, 1).get();
+        NeighborhoodUserUserItemScorer scorer = new NeighborhoodUserUserItemScorer(model, index);
+        SimpleUserUserItemScorer simple =
+                new SimpleUserUserItemScorer(dao, vectors, new PairwiseSimilarityEngine(vectors),
+                                             new ScoringExecutor(1), 1);
+        for (long user = 1; user <= 80; user++) {
+            // stored similarities are floats
+            assertSameScores(scorer.scoreWithDetails(user, items), simple.scoreWithDetails(user, items), 1.0e-5);
+        }
+    }
+
+    @Test
+    public void testUnknownUserAndItem() {
+        UserNeighborhoodModel model = new UserNeighborhoodModelProvider(vectors, index, 20, 0, 1).get();
+        NeighborhoodUserUserItemScorer scorer = new NeighborhoodUserUserItemScorer(model, index);
+        assertThat(scorer.scoreWithDetails(999, items).size(), equalTo(0));
+        List<Long> unknown = new ArrayList<>();
+        unknown.add(999L);
+        assertThat(scorer.scoreWithDetails(1, unknown).size(), equalTo(0));
+    }
+}
@@ -0,0 +1,46 @@
+package org.lenskit.mooc.uu;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PairwiseSimilarityEngineTest {
+    private UserVectorModel model;
+    private PairwiseSimilarityEngine engine;
+
+    @Before
+    public void createEngine() {
+        model = new UserVectorModelProvider(RatingFixtures.randomRatings(42, 40, 30)).get();
+        engine = new PairwiseSimilarityEngine(model);
+    }
+
+    @Test
+    public void testMemoizes() {
+        UserSimilarityEngine.TargetSimilarities sims = engine.forTarget(0);
+        double s = sims.get(1);
+        assertThat(sims.get(1), equalTo(s));
+        sims.get(2);
+        assertThat(sims.getComputationCount(), equalTo(2));
+    }
+
+    @Test
+    public void testWorkerViewsMergeCounts() {
+        UserSimilarityEngine.TargetSimilarities sims = engine.forTarget(0);
+        UserSimilarityEngine.TargetSimilarities w1 = sims.forWorker();
+        UserSimilarityEngine.TargetSimilarities w2 = sims.forWorker();
+        sims.get(1);
+        w1.get(1);
+        w1.get(2);
+        w1.get(2);
+        w2.get(3);
+        // each view memoizes on its own, so 1 is computed twice
+        assertThat(sims.getComputationCount(), equalTo(4));
+        assertThat(w1.getComputationCount(), equalTo(4));
+        for (int v = 1; v <= 3; v++) {
+            assertThat(w2.get(v), closeTo(model.cosine(0, v), 1.0e-12));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.lenskit.mooc.uu;
+
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rating data sets for the user-user tests.
+ */
+final class RatingFixtures {
+    private RatingFixtures() {}
+
+    /**
+     * Create random ratings.  User IDs run from 1 to {@code nusers} and item IDs from 101 to
+     * {@code 100 + nitems}; each user rates about a third of the items, with ratings in half stars.
+     * @param seed The random seed.
+     * @param nusers The number of users.
+     * @param nitems The number of items.
+     * @return The data access object.
+     */
+    static DataAccessObject randomRatings(long seed, int nusers, int nitems) {
+        Random rng = new Random(seed);
+        EntityFactory factory = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        for (long u = 1; u <= nusers; u++) {
+            for (long i = 101; i <= 100 + nitems; i++) {
+                if (rng.nextInt(3) == 0) {
+                    ratings.add(factory.rating(u, i, 0.5 * (1 + rng.nextInt(10))));
+                }
+            }
+        }
+        return ratingDAO(ratings);
+    }
+
+    /**
+     * Create a data access object over some ratings.
+     * @param ratings The ratings.
+     * @return The data access object.
+     */
+    static DataAccessObject ratingDAO(List<Rating> ratings) {
+        StaticDataSource source = new StaticDataSource("test");
+        source.addSource(ratings);
+        return source.get();
+    }
+}
@@ -0,0 +1,102 @@
+package org.lenskit.mooc.uu;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimpleUserUserItemScorerTest {
+    private DataAccessObject dao;
+    private UserVectorModel model;
+    private List<Long> items;
+
+    @Before
+    public void createModel() {
+        dao = RatingFixtures.randomRatings(42, 80, 60);
+        model = new UserVectorModelProvider(dao).get();
+        items = new ArrayList<>();
+        for (long i = 101; i <= 160; i++) {
+            items.add(i);
+        }
+    }
+
+    private void checkParallelMatchesSerial(UserSimilarityEngine engine) {
+        SimpleUserUserItemScorer serial =
+                new SimpleUserUserItemScorer(dao, model, engine, new ScoringExecutor(1), 1);
+        SimpleUserUserItemScorer parallel =
+                new SimpleUserUserItemScorer(dao, model, engine, new ScoringExecutor(4), 1);
+        int nscored = 0;
+        for (long user = 1; user <= 80; user++) {
+            ResultMap expected = serial.scoreWithDetails(user, items);
+            ResultMap actual = parallel.scoreWithDetails(user, items);
+            assertThat(actual.keySet(), equalTo(expected.keySet()));
+            for (Result r: expected) {
+                assertThat(actual.getScore(r.getId()), closeTo(r.getScore(), 1.0e-10));
+            }
+            nscored += expected.size();
+        }
+        assertThat(nscored, greaterThan(0));
+        // each similarity is computed once per request, in parallel as well
+        assertThat(parallel.getSimilarityCount(), equalTo(serial.getSimilarityCount()));
+    }
+
+    @Test
+    public void testParallelPairwiseMatchesSerial() {
+        checkParallelMatchesSerial(new PairwiseSimilarityEngine(model));
+    }
+
+    @Test
+    public void testParallelInvertedIndexMatchesSerial() {
+        ItemRaterIndex index = new ItemRaterIndexProvider(model).get();
+        checkParallelMatchesSerial(new InvertedIndexSimilarityEngine(model, index));
+    }
+
+    @Test
+    public void testComputesEachSimilarityOnce() {
+        SimpleUserUserItemScorer scorer =
+                new SimpleUserUserItemScorer(dao, model, new PairwiseSimilarityEngine(model),
+                                             new ScoringExecutor(1), 1);
+        long user = 7;
+        // every other user with a defined similarity rated some item with at least 2 ratings
+        LongSet raters = new LongOpenHashSet();
+        for (long item: items) {
+            List<Rating> history = dao.query(Rating.class)
+                                      .withAttribute(CommonAttributes.ITEM_ID, item)
+                                      .get();
+            if (history.size() < 2) {
+                continue;
+            }
+            for (Rating r: history) {
+                int v = model.getUserIndex().tryGetIndex(r.getUserId());
+                if (r.getUserId() != user && model.getNorm(v) > 0) {
+                    raters.add(r.getUserId());
+                }
+            }
+        }
+        scorer.scoreWithDetails(user, items);
+        assertThat(scorer.getRequestCount(), equalTo(1L));
+        assertThat(scorer.getSimilarityCount(), equalTo((long) raters.size()));
+        scorer.scoreWithDetails(user, items);
+        assertThat(scorer.getRequestCount(), equalTo(2L));
+        assertThat(scorer.getSimilarityCount(), equalTo(2L * raters.size()));
+    }
+
+    @Test
+    public void testUnknownUser() {
+        SimpleUserUserItemScorer scorer =
+                new SimpleUserUserItemScorer(dao, model, new PairwiseSimilarityEngine(model),
+                                             new ScoringExecutor(1), 1);
+        assertThat(scorer.scoreWithDetails(999, items).size(), equalTo(0));
+    }
+}
@@ -0,0 +1,80 @@
+package org.lenskit.mooc.uu;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class UserNeighborhoodModelProviderTest {
+    private UserVectorModel vectors;
+    private ItemRaterIndex index;
+
+    @Before
+    public void createModel() {
+        vectors = new UserVectorModelProvider(RatingFixtures.randomRatings(42, 80, 60)).get();
+        index = new ItemRaterIndexProvider(vectors).get();
+    }
+
+    private UserNeighborhoodModel build(int nnbrs, double minSim, int nthreads) {
+        return new UserNeighborhoodModelProvider(vectors, index, nnbrs, minSim, nthreads).get();
+    }
+
+    @Test
+    public void testThreadsBuildSameModel() {
+        UserNeighborhoodModel serial = build(10, 0, 1);
+        UserNeighborhoodModel parallel = build(10, 0, 4);
+        int nusers = vectors.getUserIndex().size();
+        assertThat(parallel.getUserIndex().size(), equalTo(nusers));
+        for (int u = 0; u < nusers; u++) {
+            assertThat(parallel.getMean(u), equalTo(serial.getMean(u)));
+            assertThat(parallel.getRowStart(u), equalTo(serial.getRowStart(u)));
+            assertThat(parallel.getRowEnd(u), equalTo(serial.getRowEnd(u)));
+            for (int n = serial.getRowStart(u); n < serial.getRowEnd(u); n++) {
+                assertThat(parallel.getNeighbor(n), equalTo(serial.getNeighbor(n)));
+                assertThat(parallel.getSimilarity(n), equalTo(serial.getSimilarity(n)));
+            }
+        }
+    }
+
+    @Test
+    public void testNeighborsAreTopPositiveCosines() {
+        UserNeighborhoodModel model = build(10, 0, 1);
+        int nusers = vectors.getUserIndex().size();
+        int total = 0;
+        for (int u = 0; u < nusers; u++) {
+            assertThat(model.getNeighborCount(u), lessThanOrEqualTo(10));
+            NeighborSelector expected = new NeighborSelector(10);
+            if (vectors.getNorm(u) > 0) {
+                for (int v = 0; v < nusers; v++) {
+                    if (v != u && vectors.getNorm(v) > 0) {
+                        expected.add(v, vectors.cosine(u, v), 0);
+                    }
+                }
+            }
+            assertThat(model.getNeighborCount(u), equalTo(expected.size()));
+            int prev = -1;
+            for (int n = model.getRowStart(u); n < model.getRowEnd(u); n++) {
+                int v = model.getNeighbor(n);
+                // neighbors are sorted by user index
+                assertThat(v, greaterThan(prev));
+                prev = v;
+                assertThat(model.getSimilarity(n), greaterThan(0.0f));
+                assertThat((double) model.getSimilarity(n), closeTo(vectors.cosine(u, v), 1.0e-6));
+            }
+            total += model.getNeighborCount(u);
+        }
+        assertThat(total, greaterThan(0));
+    }
+
+    @Test
+    public void testMinimumSimilarity() {
+        UserNeighborhoodModel model = build(100, 0.2, 1);
+        int nusers = vectors.getUserIndex().size();
+        for (int u = 0; u < nusers; u++) {
+            for (int n = model.getRowStart(u); n < model.getRowEnd(u); n++) {
+                assertThat(model.getSimilarity(n), greaterThan(0.2f));
+            }
+        }
+    }
+}
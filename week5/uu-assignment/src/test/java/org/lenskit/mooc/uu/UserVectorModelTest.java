@@ -0,0 +1,85 @@
+package org.lenskit.mooc.uu;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class UserVectorModelTest {
+    private UserVectorModel model;
+    private SortedKeyIndex users;
+
+    @Before
+    public void createModel() {
+        EntityFactory factory = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        // user 1 is centered to {10: 1, 11: -1, 12: 0}
+        ratings.add(factory.rating(1, 12, 3));
+        ratings.add(factory.rating(1, 10, 4));
+        ratings.add(factory.rating(1, 11, 2));
+        // user 2 is centered to {10: 2, 11: 0, 13: -2}
+        ratings.add(factory.rating(2, 10, 5));
+        ratings.add(factory.rating(2, 11, 3));
+        ratings.add(factory.rating(2, 13, 1));
+        // user 3 rates everything the same, so their centered vector is 0
+        ratings.add(factory.rating(3, 10, 3));
+        ratings.add(factory.rating(3, 12, 3));
+        // user 4 shares no items with user 1
+        ratings.add(factory.rating(4, 13, 5));
+        ratings.add(factory.rating(4, 14, 1));
+        model = new UserVectorModelProvider(RatingFixtures.ratingDAO(ratings)).get();
+        users = model.getUserIndex();
+    }
+
+    @Test
+    public void testMeansAndNorms() {
+        assertThat(users.size(), equalTo(4));
+        int u1 = users.getIndex(1);
+        assertThat(model.getMean(u1), closeTo(3, 1.0e-10));
+        assertThat(model.getNorm(u1), closeTo(Math.sqrt(2), 1.0e-10));
+        assertThat(model.getRatingCount(u1), equalTo(3));
+        assertThat(model.getNorm(users.getIndex(2)), closeTo(Math.sqrt(8), 1.0e-10));
+        assertThat(model.getNorm(users.getIndex(3)), equalTo(0.0));
+    }
+
+    @Test
+    public void testRowsAreSortedAndCentered() {
+        int u1 = users.getIndex(1);
+        int pos = model.getRowStart(u1);
+        assertThat(model.getRowEnd(u1) - pos, equalTo(3));
+        assertThat(model.getItemId(pos), equalTo(10L));
+        assertThat(model.getItemId(pos + 1), equalTo(11L));
+        assertThat(model.getItemId(pos + 2), equalTo(12L));
+        assertThat(model.getValue(pos), closeTo(1, 1.0e-10));
+        assertThat(model.getValue(pos + 1), closeTo(-1, 1.0e-10));
+        assertThat(model.getValue(pos + 2), closeTo(0, 1.0e-10));
+    }
+
+    @Test
+    public void testCosine() {
+        int u1 = users.getIndex(1);
+        int u2 = users.getIndex(2);
+        // (1 * 2 + -1 * 0) / (sqrt(2) * sqrt(8)) = 2 / 4
+        assertThat(model.dot(u1, u2), closeTo(2, 1.0e-10));
+        assertThat(model.cosine(u1, u2), closeTo(0.5, 1.0e-10));
+        assertThat(model.cosine(u2, u1), closeTo(0.5, 1.0e-10));
+        assertThat(model.cosine(u1, u1), closeTo(1, 1.0e-10));
+    }
+
+    @Test
+    public void testCosineWithoutCommonItems() {
+        assertThat(model.cosine(users.getIndex(1), users.getIndex(4)), equalTo(0.0));
+    }
+
+    @Test
+    public void testCosineWithZeroNorm() {
+        assertThat(Double.isNaN(model.cosine(users.getIndex(1), users.getIndex(3))), equalTo(true));
+    }
+}
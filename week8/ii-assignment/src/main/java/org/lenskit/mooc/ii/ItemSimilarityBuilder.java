@@ -0,0 +1,260 @@
+package org.lenskit.mooc.ii;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compute the positive cosine similarities between all pairs of items.
+ *
+ * <p>Cosine similarity is symmetric, so only the upper triangle of the similarity matrix is computed: row
+ * {@code i} holds the items {@code j > i}, and a final pass mirrors each similarity into the lower triangle.
+ * Item norms are computed once, by {@link ItemVectors}.
+ *
+ * <p>Rather than taking the dot product of every pair, a row is computed as a sparse product: each of the item's
+ * raters is looked up in the user-item transpose, and their centered rating of each later item is multiplied in
+ * to a dense accumulator over items.  Only pairs of items that share a rater are ever touched, which on
+ * MovieLens-sized data is a small fraction of all pairs.</p>
+ *
+ * <p>Rows are processed in blocks on a fork-join pool, which
+ * keeps the pool busy even though the early rows of the triangle are much longer than the late ones.  Each
+ * worker thread has its own accumulator and row buffers, and copies out only the positive entries.
+ * Progress and throughput are logged periodically, since this is the slow part of building the model.</p>
+ */
+final class ItemSimilarityBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(ItemSimilarityBuilder.class);
+    private static final int ROW_BLOCK = 16;
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final ItemVectors vectors;
+    private final int threadCount;
+    private final int itemCount;
+
+    private final AtomicInteger rowsDone = new AtomicInteger();
+    private final AtomicLong pairsDone = new AtomicLong();
+    private final AtomicLong nextReport = new AtomicLong();
+    private final ThreadLocal<RowWorker> workers = new ThreadLocal<RowWorker>() {
+        @Override
+        protected RowWorker initialValue() {
+            return new RowWorker();
+        }
+    };
+    private Stopwatch timer;
+
+    /**
+     * Create a new similarity builder.
+     * @param vecs The item vectors.
+     * @param nthreads The number of threads to use.
+     */
+    ItemSimilarityBuilder(ItemVectors vecs, int nthreads) {
+        vectors = vecs;
+        threadCount = nthreads;
+        itemCount = vecs.getItemCount();
+    }
+
+    /**
+     * Compute the similarity matrix.
+     * @return The positive similarities of each item, with neighbors in increasing order of item index.
+     */
+    SimilarityRows build() {
+        timer = Stopwatch.createStarted();
+        nextReport.set(System.nanoTime() + PROGRESS_INTERVAL);
+        final int[][] upperItems = new int[itemCount][];
+        final double[][] upperSims = new double[itemCount][];
+
+        if (threadCount <= 1) {
+            workers.get().computeRows(0, itemCount, upperItems, upperSims);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threadCount);
+            try {
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (int start = 0; start < itemCount; start += ROW_BLOCK) {
+                    final int bstart = start;
+                    final int bend = Math.min(itemCount, start + ROW_BLOCK);
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            workers.get().computeRows(bstart, bend, upperItems, upperSims);
+                            return null;
+                        }
+                    });
+                }
+                for (Future<Void> f: pool.invokeAll(tasks)) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted computing item similarities", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("error computing item similarities", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        SimilarityRows rows = mirror(upperItems, upperSims);
+        // each kept pair is stored in both items' rows
+        logger.info("computed {} co-rated item pairs with {} threads in {}, keeping {} positive pairs",
+                    pairsDone.get(), Math.max(threadCount, 1), timer.stop(), rows.size() / 2);
+        return rows;
+    }
+
+    /**
+     * Mirror the upper triangle into full rows.  Each item's row is its lower-triangle entries, which are filled
+     * in increasing order of item by walking the upper rows in order, followed by its upper-triangle row.
+     */
+    private SimilarityRows mirror(int[][] upperItems, double[][] upperSims) {
+        int[] lowerCounts = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            for (int j: upperItems[i]) {
+                lowerCounts[j] += 1;
+            }
+        }
+
+        int[][] items = new int[itemCount][];
+        double[][] sims = new double[itemCount][];
+        for (int i = 0; i < itemCount; i++) {
+            int n = lowerCounts[i] + upperItems[i].length;
+            items[i] = new int[n];
+            sims[i] = new double[n];
+            System.arraycopy(upperItems[i], 0, items[i], lowerCounts[i], upperItems[i].length);
+            System.arraycopy(upperSims[i], 0, sims[i], lowerCounts[i], upperSims[i].length);
+        }
+
+        int[] fill = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            int[] row = upperItems[i];
+            double[] rowSims = upperSims[i];
+            for (int k = 0; k < row.length; k++) {
+                int j = row[k];
+                items[j][fill[j]] = i;
+                sims[j][fill[j]] = rowSims[k];
+                fill[j] += 1;
+            }
+        }
+        return new SimilarityRows(items, sims);
+    }
+
+    /**
+     * Record finished rows, and log progress if it is time to.
+     */
+    private void reportRows(int rows, long pairs) {
+        int done = rowsDone.addAndGet(rows);
+        long totalPairs = pairsDone.addAndGet(pairs);
+        long now = System.nanoTime();
+        long next = nextReport.get();
+        if (now >= next && nextReport.compareAndSet(next, now + PROGRESS_INTERVAL)) {
+            double secs = timer.elapsed(TimeUnit.NANOSECONDS) / 1.0e9;
+            logger.info("computed {} of {} rows ({} pairs, {} pairs/s)",
+                        done, itemCount, totalPairs, String.format("%.0f", totalPairs / secs));
+        }
+    }
+
+    /**
+     * Computes rows of the upper triangle, with a dense accumulator and scratch buffers for one row.
+     */
+    private class RowWorker {
+        private final double[] dots = new double[itemCount];
+        private final boolean[] touched = new boolean[itemCount];
+        private final int[] rowItems = new int[itemCount];
+        private final double[] rowSims = new double[itemCount];
+
+        void computeRows(int start, int end, int[][] upperItems, double[][] upperSims) {
+            long pairs = 0;
+            for (int i = start; i < end; i++) {
+                // accumulate dot products with the later items sharing a rater with item i
+                int n = 0;
+                for (int k = vectors.getRowStart(i), kend = vectors.getRowEnd(i); k < kend; k++) {
+                    int u = vectors.getUser(k);
+                    double a = vectors.getValue(k);
+                    // the user's items are in increasing order, so walk back until reaching item i
+                    for (int p = vectors.getUserRowEnd(u) - 1; p >= vectors.getUserRowStart(u); p--) {
+                        int j = vectors.getUserItem(p);
+                        if (j <= i) {
+                            break;
+                        }
+                        if (!touched[j]) {
+                            touched[j] = true;
+                            rowItems[n++] = j;
+                        }
+                        dots[j] += a * vectors.getUserValue(p);
+                    }
+                }
+                pairs += n;
+
+                Arrays.sort(rowItems, 0, n);
+                double ni = vectors.getNorm(i);
+                int kept = 0;
+                for (int k = 0; k < n; k++) {
+                    int j = rowItems[k];
+                    double dot = dots[j];
+                    dots[j] = 0;
+                    touched[j] = false;
+                    // Ignore nonpositive similarities
+                    if (dot > 0) {
+                        rowItems[kept] = j;
+                        rowSims[kept] = dot / (ni * vectors.getNorm(j));
+                        kept++;
+                    }
+                }
+                upperItems[i] = Arrays.copyOf(rowItems, kept);
+                upperSims[i] = Arrays.copyOf(rowSims, kept);
+            }
+            reportRows(end - start, pairs);
+        }
+    }
+
+    /**
+     * The rows of a symmetric similarity matrix.
+     */
+    static final class SimilarityRows {
+        private final int[][] items;
+        private final double[][] similarities;
+
+        SimilarityRows(int[][] items, double[][] sims) {
+            this.items = items;
+            similarities = sims;
+        }
+
+        /**
+         * Get the neighbors of an item.
+         * @param i The item index.
+         * @return The indexes of the item's neighbors, in increasing order.
+         */
+        int[] getNeighbors(int i) {
+            return items[i];
+        }
+
+        /**
+         * Get the similarities of an item.
+         * @param i The item index.
+         * @return The similarities of the item's neighbors, parallel to {@link #getNeighbors(int)}.
+         */
+        double[] getSimilarities(int i) {
+            return similarities[i];
+        }
+
+        /**
+         * Get the total number of stored similarities.
+         * @return The number of non-zero entries in the matrix.
+         */
+        long size() {
+            long n = 0;
+            for (int[] row: items) {
+                n += row.length;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.lenskit.mooc.ii;
+
+import com.google.common.base.Preconditions;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+/**
+ * Mean-centered item rating vectors in compressed sparse row form, for computing item similarities.
+ *
+ * <p>Items are numbered by a {@link SortedKeyIndex}, and users by dense indexes.  The ratings of the item with
+ * index {@code i} are at positions {@code rowOffsets[i]} (inclusive) to {@code rowOffsets[i+1]} (exclusive) of
+ * parallel arrays of user indexes, sorted in increasing order, and ratings minus the item's mean.  The norm of
+ * each item's centered vector is computed once, when the vectors are created.</p>
+ *
+ * <p>The vectors also keep the transpose: each user's ratings, as item indexes in increasing order with the
+ * same centered values.  Walking the transpose from an item's users reaches exactly the items that share a rater
+ * with it, which is how {@link ItemSimilarityBuilder} avoids the pairs of items with no raters in common.</p>
+ */
+final class ItemVectors {
+    private final SortedKeyIndex itemIndex;
+    private final int userCount;
+    private final int[] rowOffsets;
+    private final int[] users;
+    private final double[] values;
+    private final double[] norms;
+    private final int[] userOffsets;
+    private final int[] userItems;
+    private final double[] userValues;
+
+    /**
+     * Create item vectors.
+     * @param items The item index.
+     * @param nusers The number of users.
+     * @param offsets The row offsets, of length {@code items.size() + 1}.
+     * @param us The user index of each rating, sorted within each row.
+     * @param vals The mean-centered ratings, parallel to {@code us}.
+     */
+    ItemVectors(SortedKeyIndex items, int nusers, int[] offsets, int[] us, double[] vals) {
+        Preconditions.checkArgument(offsets.length == items.size() + 1, "offset count mismatch");
+        Preconditions.checkArgument(us.length == vals.length, "value count mismatch");
+        itemIndex = items;
+        userCount = nusers;
+        rowOffsets = offsets;
+        users = us;
+        values = vals;
+        norms = new double[items.size()];
+        for (int i = 0; i < norms.length; i++) {
+            double ss = 0;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                ss += vals[k] * vals[k];
+            }
+            norms[i] = Math.sqrt(ss);
+        }
+
+        // transpose by counting sort; items are visited in order, so each user's items are increasing
+        userOffsets = new int[nusers + 1];
+        for (int u: us) {
+            userOffsets[u + 1] += 1;
+        }
+        for (int u = 0; u < nusers; u++) {
+            userOffsets[u + 1] += userOffsets[u];
+        }
+        userItems = new int[us.length];
+        userValues = new double[us.length];
+        int[] fill = new int[nusers];
+        for (int i = 0; i < norms.length; i++) {
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int u = us[k];
+                int pos = userOffsets[u] + fill[u];
+                userItems[pos] = i;
+                userValues[pos] = vals[k];
+                fill[u] += 1;
+            }
+        }
+    }
+
+    /**
+     * Get the item index.
+     * @return The index numbering the items.
+     */
+    SortedKeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the number of items.
+     * @return The number of item vectors.
+     */
+    int getItemCount() {
+        return itemIndex.size();
+    }
+
+    /**
+     * Get the number of users.
+     * @return The number of user indexes.
+     */
+    int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Get the norm of an item's centered vector.
+     * @param i The item index.
+     * @return The Euclidean norm of the item's centered ratings.
+     */
+    double getNorm(int i) {
+        return norms[i];
+    }
+
+    /**
+     * Get the start of an item's row.
+     * @param i The item index.
+     * @return The position of the item's first rating.
+     */
+    int getRowStart(int i) {
+        return rowOffsets[i];
+    }
+
+    /**
+     * Get the end of an item's row.
+     * @param i The item index.
+     * @return The position after the item's last rating.
+     */
+    int getRowEnd(int i) {
+        return rowOffsets[i + 1];
+    }
+
+    /**
+     * Get the user of a rating.
+     * @param pos The rating position.
+     * @return The index of the user.
+     */
+    int getUser(int pos) {
+        return users[pos];
+    }
+
+    /**
+     * Get a centered rating.
+     * @param pos The rating position.
+     * @return The rating minus the item's mean.
+     */
+    double getValue(int pos) {
+        return values[pos];
+    }
+
+    /**
+     * Get the start of a user's row in the transpose.
+     * @param u The user index.
+     * @return The position of the user's first rating.
+     */
+    int getUserRowStart(int u) {
+        return userOffsets[u];
+    }
+
+    /**
+     * Get the end of a user's row in the transpose.
+     * @param u The user index.
+     * @return The position after the user's last rating.
+     */
+    int getUserRowEnd(int u) {
+        return userOffsets[u + 1];
+    }
+
+    /**
+     * Get the item of a rating in the transpose.
+     * @param pos The rating position in the transpose.
+     * @return The index of the item.
+     */
+    int getUserItem(int pos) {
+        return userItems[pos];
+    }
+
+    /**
+     * Get a centered rating in the transpose.
+     * @param pos The rating position in the transpose.
+     * @return The rating minus its item's mean.
+     */
+    double getUserValue(int pos) {
+        return userValues[pos];
+    }
+}
@@ -1,8 +1,13 @@
 package org.lenskit.mooc.ii;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Maps;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
 import org.lenskit.data.ratings.Rating;
@@ -11,6 +16,8 @@ import org.lenskit.inject.Transient;
 import org.lenskit.util.IdBox;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.lenskit.util.math.Vectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,21 +28,39 @@ import java.util.List;
 import java.util.Map;
 
 /**
+ * Build the item-item model.
+ *
+ * <p>The ratings are scanned once into mean-centered {@link ItemVectors}, and the similarities are computed by an
+ * {@link ItemSimilarityBuilder}, which computes each pair of items once and can use several
+ * {@linkplain BuildThreadCount threads}.</p>
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class SimpleItemItemModelProvider implements Provider<SimpleItemItemModel> {
     private static final Logger logger = LoggerFactory.getLogger(SimpleItemItemModelProvider.class);
 
     private final DataAccessObject dao;
+    private final int threadCount;
+
+    /**
+     * Construct the model provider with a single build thread.
+     *
+     * @param dao The data access object.
+     */
+    public SimpleItemItemModelProvider(DataAccessObject dao) {
+        this(dao, 1);
+    }
 
     /**
      * Construct the model provider.
      *
      * @param dao The data access object.
+     * @param nthreads The number of threads to compute similarities with.
      */
     @Inject
-    public SimpleItemItemModelProvider(@Transient DataAccessObject dao) {
+    public SimpleItemItemModelProvider(@Transient DataAccessObject dao, @BuildThreadCount int nthreads) {
         this.dao = dao;
+        threadCount = nthreads;
     }
 
     /**
@@ -45,53 +70,98 @@ public class SimpleItemItemModelProvider implements Provider<SimpleItemItemModel
      */
     @Override
     public SimpleItemItemModel get() {
-        Map<Long, Long2DoubleMap> itemVectors = Maps.newHashMap();
+        Stopwatch timer = Stopwatch.createStarted();
         Long2DoubleMap itemMeans = new Long2DoubleOpenHashMap();
+        ItemVectors vectors = buildItemVectors(itemMeans);
+        logger.info("built vectors for {} items and {} users in {}",
+                    vectors.getItemCount(), vectors.getUserCount(), timer);
+
+        ItemSimilarityBuilder.SimilarityRows rows = new ItemSimilarityBuilder(vectors, threadCount).build();
+
+        // Map items to vectors (maps) of item similarities; items with no positive similarities are left out
+        SortedKeyIndex items = vectors.getItemIndex();
+        Map<Long, Long2DoubleMap> itemSimilarities = Maps.newHashMap();
+        for (int i = 0; i < items.size(); i++) {
+            int[] nbrs = rows.getNeighbors(i);
+            if (nbrs.length == 0) {
+                continue;
+            }
+            long[] ids = new long[nbrs.length];
+            for (int k = 0; k < nbrs.length; k++) {
+                ids[k] = items.getKey(nbrs[k]);
+            }
+            itemSimilarities.put(items.getKey(i),
+                                 Long2DoubleSortedArrayMap.wrap(SortedKeyIndex.wrap(ids, ids.length),
+                                                                rows.getSimilarities(i)));
+        }
+
+        logger.info("built item-item model for {} items in {}", items.size(), timer.stop());
+        return new SimpleItemItemModel(LongUtils.frozenMap(itemMeans), itemSimilarities);
+    }
+
+    /**
+     * Scan the ratings into mean-centered item vectors.
+     *
+     * @param itemMeans The map to receive each item's mean rating.
+     * @return The item vectors.
+     */
+    private ItemVectors buildItemVectors(Long2DoubleMap itemMeans) {
+        // rows are appended in the order the DAO groups them, and put in item ID order afterwards
+        LongArrayList scanItems = new LongArrayList();
+        IntArrayList scanOffsets = new IntArrayList();
+        LongArrayList scanUsers = new LongArrayList();
+        DoubleArrayList scanValues = new DoubleArrayList();
+        LongOpenHashSet allUsers = new LongOpenHashSet();
 
         try (ObjectStream<IdBox<List<Rating>>> stream = dao.query(Rating.class)
                 .groupBy(CommonAttributes.ITEM_ID)
                 .stream()) {
             for (IdBox<List<Rating>> item : stream) {
                 long itemId = item.getId();
-                List<Rating> itemRatings = item.getValue();
-                Long2DoubleOpenHashMap ratings = new Long2DoubleOpenHashMap(Ratings.itemRatingVector(itemRatings));
+                // a sorted map, so the row's users are in increasing order
+                Long2DoubleMap ratings = LongUtils.frozenMap(Ratings.itemRatingVector(item.getValue()));
 
                 // Compute and store the item's mean.
                 double mean = Vectors.mean(ratings);
                 itemMeans.put(itemId, mean);
 
                 // Mean center the ratings.
-                for (Map.Entry<Long, Double> entry : ratings.entrySet()) {
-                    entry.setValue(entry.getValue() - mean);
+                scanItems.add(itemId);
+                scanOffsets.add(scanUsers.size());
+                for (Long2DoubleMap.Entry e : ratings.long2DoubleEntrySet()) {
+                    scanUsers.add(e.getLongKey());
+                    scanValues.add(e.getDoubleValue() - mean);
+                    allUsers.add(e.getLongKey());
                 }
-
-                itemVectors.put(itemId, LongUtils.frozenMap(ratings));
             }
         }
+        scanOffsets.add(scanUsers.size());
 
-        // Map items to vectors (maps) of item similarities.
-        Map<Long, Long2DoubleMap> itemSimilarities = Maps.newHashMap();
+        // users are indexed in ID order, so each row's user indexes are increasing too
+        SortedKeyIndex users = SortedKeyIndex.fromCollection(allUsers);
+        SortedKeyIndex items = SortedKeyIndex.fromCollection(scanItems);
+        int nitems = items.size();
+        int[] offsets = new int[nitems + 1];
+        int[] userIndexes = new int[scanUsers.size()];
+        double[] values = new double[scanValues.size()];
 
-        // Compute the similarities between each pair of items
-        for (Map.Entry<Long, Long2DoubleMap> item1 : itemVectors.entrySet()) {
-            for (Map.Entry<Long, Long2DoubleMap> item2 : itemVectors.entrySet()) {
-                long i1 = item1.getKey();
-                long i2 = item2.getKey();
-                double similarity = 0;
-                if (Long.compare(i1, i2) == 0) continue;
-                double numerator = Vectors.dotProduct(item1.getValue(), item2.getValue());
-                if (numerator <= 0) continue;   // Ignore nonpositive similarities
-                double d1 = Vectors.euclideanNorm(item1.getValue());
-                double d2 = Vectors.euclideanNorm(item2.getValue());
-                similarity = numerator / (d1 * d2);
-
-                if (!itemSimilarities.containsKey(i1)) {
-                    itemSimilarities.put(i1, new Long2DoubleOpenHashMap());
-                }
-                itemSimilarities.get(i1).put(i2, similarity);
+        // position of each item's row in the scan, in item index order
+        int[] scanRow = new int[nitems];
+        for (int r = 0; r < nitems; r++) {
+            scanRow[items.getIndex(scanItems.getLong(r))] = r;
+        }
+        int pos = 0;
+        for (int i = 0; i < nitems; i++) {
+            int r = scanRow[i];
+            offsets[i] = pos;
+            for (int k = scanOffsets.getInt(r), end = scanOffsets.getInt(r + 1); k < end; k++) {
+                userIndexes[pos] = users.getIndex(scanUsers.getLong(k));
+                values[pos] = scanValues.getDouble(k);
+                pos++;
             }
         }
+        offsets[nitems] = pos;
 
-        return new SimpleItemItemModel(LongUtils.frozenMap(itemMeans), itemSimilarities);
+        return new ItemVectors(items, users.size(), offsets, userIndexes, values);
     }
 }
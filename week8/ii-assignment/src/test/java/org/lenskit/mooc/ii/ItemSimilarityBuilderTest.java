@@ -0,0 +1,125 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ItemSimilarityBuilderTest {
+    private static final int ITEM_COUNT = 50;
+    private static final int USER_COUNT = 40;
+
+    /**
+     * Dense centered ratings, indexed by item and then user; 0 means unrated.
+     */
+    private double[][] ratings;
+    private ItemVectors vectors;
+
+    @Before
+    public void createVectors() {
+        Random rng = new Random(42);
+        ratings = new double[ITEM_COUNT][USER_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            // the last few items have no raters, or a single one
+            // ratings are whole or half numbers, so the dot products are exact
+            int nraters = i >= ITEM_COUNT - 2 ? ITEM_COUNT - 1 - i : 1 + rng.nextInt(USER_COUNT / 3);
+            for (int r = 0; r < nraters; r++) {
+                ratings[i][rng.nextInt(USER_COUNT)] = rng.nextInt(9) - 4 + 0.5;
+            }
+        }
+        vectors = createVectors(ratings);
+    }
+
+    static ItemVectors createVectors(double[][] ratings) {
+        long[] ids = new long[ratings.length];
+        int[] offsets = new int[ratings.length + 1];
+        IntArrayList users = new IntArrayList();
+        DoubleArrayList values = new DoubleArrayList();
+        for (int i = 0; i < ratings.length; i++) {
+            ids[i] = 100 + i;
+            offsets[i] = users.size();
+            for (int u = 0; u < ratings[i].length; u++) {
+                if (ratings[i][u] != 0) {
+                    users.add(u);
+                    values.add(ratings[i][u]);
+                }
+            }
+        }
+        offsets[ratings.length] = users.size();
+        return new ItemVectors(SortedKeyIndex.create(ids), ratings[0].length, offsets,
+                               users.toIntArray(), values.toDoubleArray());
+    }
+
+    /**
+     * Compute the cosine of two dense rows the straightforward way.
+     */
+    private double cosine(int i, int j) {
+        double dot = 0, ssi = 0, ssj = 0;
+        for (int u = 0; u < USER_COUNT; u++) {
+            dot += ratings[i][u] * ratings[j][u];
+            ssi += ratings[i][u] * ratings[i][u];
+            ssj += ratings[j][u] * ratings[j][u];
+        }
+        return dot / Math.sqrt(ssi * ssj);
+    }
+
+    private void checkAgainstPairwise(ItemSimilarityBuilder.SimilarityRows rows) {
+        long npositive = 0;
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            int[] nbrs = rows.getNeighbors(i);
+            double[] sims = rows.getSimilarities(i);
+            assertThat(sims.length, equalTo(nbrs.length));
+            int k = 0;
+            for (int j = 0; j < ITEM_COUNT; j++) {
+                if (j == i) {
+                    continue;
+                }
+                double cos = cosine(i, j);
+                // only positive similarities are stored, in increasing order of neighbor
+                if (cos > 0) {
+                    assertThat(k, lessThan(nbrs.length));
+                    assertThat(nbrs[k], equalTo(j));
+                    assertThat(sims[k], closeTo(cos, 1.0e-10));
+                    k++;
+                    npositive++;
+                }
+            }
+            assertThat(k, equalTo(nbrs.length));
+        }
+        assertThat(rows.size(), equalTo(npositive));
+        assertThat(npositive, greaterThan(0L));
+    }
+
+    @Test
+    public void testSerialMatchesPairwiseCosine() {
+        checkAgainstPairwise(new ItemSimilarityBuilder(vectors, 1).build());
+    }
+
+    @Test
+    public void testParallelMatchesPairwiseCosine() {
+        // more threads than row blocks, and blocks of uneven length
+        checkAgainstPairwise(new ItemSimilarityBuilder(vectors, 3).build());
+        checkAgainstPairwise(new ItemSimilarityBuilder(vectors, 8).build());
+    }
+
+    @Test
+    public void testMatrixIsSymmetric() {
+        ItemSimilarityBuilder.SimilarityRows rows = new ItemSimilarityBuilder(vectors, 2).build();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            int[] nbrs = rows.getNeighbors(i);
+            for (int k = 0; k < nbrs.length; k++) {
+                int j = nbrs[k];
+                int back = Arrays.binarySearch(rows.getNeighbors(j), i);
+                assertThat(back, greaterThanOrEqualTo(0));
+                assertThat(rows.getSimilarities(j)[back], equalTo(rows.getSimilarities(i)[k]));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.lenskit.mooc.ii;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ItemVectorsTest {
+    private ItemVectors vectors;
+
+    @Before
+    public void createVectors() {
+        vectors = ItemSimilarityBuilderTest.createVectors(new double[][]{
+                {1, 0, -1},
+                {0, 2, 0},
+                {-0.5, 0.5, 0.5}
+        });
+    }
+
+    @Test
+    public void testNorms() {
+        assertThat(vectors.getItemCount(), equalTo(3));
+        assertThat(vectors.getUserCount(), equalTo(3));
+        assertThat(vectors.getNorm(0), closeTo(Math.sqrt(2), 1.0e-10));
+        assertThat(vectors.getNorm(1), closeTo(2, 1.0e-10));
+        assertThat(vectors.getNorm(2), closeTo(Math.sqrt(0.75), 1.0e-10));
+    }
+
+    @Test
+    public void testTranspose() {
+        // user 0 rated items 0 and 2
+        int pos = vectors.getUserRowStart(0);
+        assertThat(vectors.getUserRowEnd(0) - pos, equalTo(2));
+        assertThat(vectors.getUserItem(pos), equalTo(0));
+        assertThat(vectors.getUserValue(pos), equalTo(1.0));
+        assertThat(vectors.getUserItem(pos + 1), equalTo(2));
+        assertThat(vectors.getUserValue(pos + 1), equalTo(-0.5));
+        // user 1 rated items 1 and 2
+        pos = vectors.getUserRowStart(1);
+        assertThat(vectors.getUserRowEnd(1) - pos, equalTo(2));
+        assertThat(vectors.getUserItem(pos), equalTo(1));
+        assertThat(vectors.getUserItem(pos + 1), equalTo(2));
+        assertThat(vectors.getUserValue(pos + 1), equalTo(0.5));
+    }
+
+    @Test
+    public void testTransposeMatchesRows() {
+        // every rating is in both the item rows and the user rows, with the same value
+        int count = 0;
+        for (int u = 0; u < vectors.getUserCount(); u++) {
+            int prev = -1;
+            for (int pos = vectors.getUserRowStart(u); pos < vectors.getUserRowEnd(u); pos++) {
+                int i = vectors.getUserItem(pos);
+                assertThat(i, greaterThan(prev));
+                prev = i;
+                boolean found = false;
+                for (int k = vectors.getRowStart(i); k < vectors.getRowEnd(i); k++) {
+                    if (vectors.getUser(k) == u) {
+                        assertThat(vectors.getValue(k), equalTo(vectors.getUserValue(pos)));
+                        found = true;
+                    }
+                }
+                assertThat(found, equalTo(true));
+                count++;
+            }
+        }
+        assertThat(count, equalTo(vectors.getRowEnd(2)));
+    }
+
+    @Test
+    public void testSparseProduct() {
+        ItemSimilarityBuilder.SimilarityRows rows = new ItemSimilarityBuilder(vectors, 1).build();
+        // items 0 and 1 share no raters, and items 0 and 2 are negatively similar
+        assertThat(rows.getNeighbors(0).length, equalTo(0));
+        assertThat(rows.getNeighbors(1).length, equalTo(1));
+        assertThat(rows.getNeighbors(1)[0], equalTo(2));
+        // 2 * 0.5 / (2 * sqrt(0.75))
+        assertThat(rows.getSimilarities(1)[0], closeTo(0.5 / Math.sqrt(0.75), 1.0e-10));
+        assertThat(rows.getNeighbors(2).length, equalTo(1));
+        assertThat(rows.getNeighbors(2)[0], equalTo(1));
+        assertThat(rows.size(), equalTo(2L));
+    }
+}
@@ -0,0 +1,101 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimpleItemItemModelProviderTest {
+    private static final int USER_COUNT = 30;
+    private static final int ITEM_COUNT = 25;
+
+    /**
+     * Ratings indexed by item and then user; 0 means unrated.
+     */
+    private double[][] ratings;
+    private DataAccessObject dao;
+
+    @Before
+    public void createRatings() {
+        Random rng = new Random(42);
+        EntityFactory factory = new EntityFactory();
+        List<Rating> rs = new ArrayList<>();
+        ratings = new double[ITEM_COUNT][USER_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            for (int u = 0; u < USER_COUNT; u++) {
+                if (rng.nextInt(3) == 0) {
+                    ratings[i][u] = 1 + rng.nextInt(5);
+                    rs.add(factory.rating(1000 + u, 100 + i, ratings[i][u]));
+                }
+            }
+        }
+        StaticDataSource source = new StaticDataSource("test");
+        source.addSource(rs);
+        dao = source.get();
+    }
+
+    /**
+     * Compute the cosine of two items' mean-centered ratings the straightforward way.
+     */
+    private double cosine(int i, int j) {
+        double mi = mean(i), mj = mean(j);
+        double dot = 0, ssi = 0, ssj = 0;
+        for (int u = 0; u < USER_COUNT; u++) {
+            double ri = ratings[i][u] > 0 ? ratings[i][u] - mi : 0;
+            double rj = ratings[j][u] > 0 ? ratings[j][u] - mj : 0;
+            dot += ri * rj;
+            ssi += ri * ri;
+            ssj += rj * rj;
+        }
+        return dot / Math.sqrt(ssi * ssj);
+    }
+
+    private double mean(int i) {
+        double sum = 0;
+        int n = 0;
+        for (double r: ratings[i]) {
+            if (r > 0) {
+                sum += r;
+                n++;
+            }
+        }
+        return sum / n;
+    }
+
+    private void checkModel(SimpleItemItemModel model) {
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            assertThat(model.getItemMeans().get(100L + i), closeTo(mean(i), 1.0e-10));
+            Long2DoubleMap nbrs = model.getNeighbors(100 + i);
+            int npositive = 0;
+            for (int j = 0; j < ITEM_COUNT; j++) {
+                double cos = cosine(i, j);
+                if (j != i && cos > 1.0e-10) {
+                    assertThat(nbrs.containsKey(100L + j), equalTo(true));
+                    assertThat(nbrs.get(100L + j), closeTo(cos, 1.0e-10));
+                    npositive++;
+                }
+            }
+            assertThat(nbrs.size(), equalTo(npositive));
+        }
+    }
+
+    @Test
+    public void testMatchesPairwiseCosine() {
+        checkModel(new SimpleItemItemModelProvider(dao).get());
+    }
+
+    @Test
+    public void testThreadsMatchPairwiseCosine() {
+        checkModel(new SimpleItemItemModelProvider(dao, 4).get());
+    }
+}